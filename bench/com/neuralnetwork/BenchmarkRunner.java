@@ -0,0 +1,32 @@
+package com.neuralnetwork;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks with the GC (allocation) profiler
+ * and writes the results as JSON so runs of different versions can be diffed.
+ *
+ * Usage: BenchmarkRunner [results.json [benchmark regex]]
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        final String resultFile = args.length > 0 ? args[0] : "benchmark-results.json";
+        final String include = args.length > 1 ? args[1] : "com\\.neuralnetwork\\..*Benchmark";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.ActivationFunctions;
+import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeatureMapBenchmark
+{
+    /**
+     * The input is imageSize x imageSize
+     */
+    @Param({"32", "128", "512"})
+    int imageSize;
+
+    /**
+     * The convolution kernel is kernelSize x kernelSize
+     */
+    @Param({"3", "5", "9"})
+    int kernelSize;
+
+    /**
+     * Convolve through the patch matrix instead of one window at a time
+     */
+    @Param({"false", "true"})
+    boolean im2col;
+
+    /**
+     * Number of threads the output rows are split between
+     */
+    @Param({"1", "4"})
+    int parallelism;
+
+    /**
+     * Number of images of #convolutionBatch
+     */
+    static final int BATCH_SIZE = 16;
+
+    /**
+     * Shared by all the feature maps, null for one thread
+     */
+    ForkJoinPool pool;
+    Tensor image;
+    Tensor images;
+    FeatureMap convolutionMap;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        image = new Tensor(imageSize, imageSize);
+        for(int i=0; i<imageSize; i++)
+            for(int j=0; j<imageSize; j++)
+                image.set(i, j, r.nextDouble());
+        images = new Tensor(BATCH_SIZE, imageSize, imageSize);
+        for(int i=0; i<images.data().length; i++)
+            images.data()[i] = r.nextDouble();
+
+        double[] aWeights = new double[kernelSize * kernelSize + 1];
+        for(int j=0; j<aWeights.length; j++)
+            aWeights[j] = r.nextGaussian() / kernelSize;
+        FeatureMap.MapFunction convolutionFunc = new FeatureMap.ConvolutionFunction(new Neuron(phi, aWeights)).setIm2col(im2col);
+        convolutionFunc.setReceptiveFieldSize(kernelSize * kernelSize);
+        convolutionMap = new FeatureMap(new FeatureMap.Builder()
+                .setInputSize(imageSize)
+                .setMapFunction(convolutionFunc)
+                .setPool(pool));
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public Tensor convolution()
+    {
+        return convolutionMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor convolutionBatch()
+    {
+        return convolutionMap.outputBatch(images);
+    }
+}
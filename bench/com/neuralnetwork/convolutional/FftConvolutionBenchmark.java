@@ -0,0 +1,127 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.ActivationFunctions;
+import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same convolution directly, through the patch matrix, through the Fourier transforms
+ * and with the automatic choice, over kernels on both sides of the crossover (see #Fft.isFaster)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FftConvolutionBenchmark
+{
+    /**
+     * The input is imageSize x imageSize
+     */
+    @Param({"32", "128", "512"})
+    int imageSize;
+
+    /**
+     * The convolution kernel is kernelSize x kernelSize
+     */
+    @Param({"3", "5", "9", "15", "21"})
+    int kernelSize;
+
+    /**
+     * Number of threads the output rows are split between
+     */
+    @Param({"1", "4"})
+    int parallelism;
+
+    /**
+     * Shared by all the feature maps, null for one thread
+     */
+    ForkJoinPool pool;
+    Tensor image;
+    FeatureMap directMap;
+    FeatureMap im2colMap;
+    FeatureMap fftMap;
+    FeatureMap automaticMap;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        image = new Tensor(imageSize, imageSize);
+        for(int i=0; i<imageSize; i++)
+            for(int j=0; j<imageSize; j++)
+                image.set(i, j, r.nextDouble());
+
+        double[] aWeights = new double[kernelSize * kernelSize + 1];
+        for(int j=0; j<aWeights.length; j++)
+            aWeights[j] = r.nextGaussian() / kernelSize;
+
+        directMap = map(convolution(aWeights));
+        im2colMap = map(convolution(aWeights).setIm2col(true));
+        fftMap = map(convolution(aWeights).setFft(true));
+        automaticMap = map(convolution(aWeights).setIm2col(true).setAutomaticFft(true));
+    }
+
+    private FeatureMap.ConvolutionFunction convolution(double[] aWeights)
+    {
+        return new FeatureMap.ConvolutionFunction(new Neuron(new ActivationFunctions.SigmoidUnityFunction(), aWeights.clone()));
+    }
+
+    private FeatureMap map(FeatureMap.ConvolutionFunction convolutionFunc)
+    {
+        convolutionFunc.setReceptiveFieldSize(kernelSize * kernelSize);
+        return new FeatureMap(new FeatureMap.Builder()
+                .setInputSize(imageSize)
+                .setMapFunction(convolutionFunc)
+                .setPool(pool));
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public Tensor direct()
+    {
+        return directMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor im2col()
+    {
+        return im2colMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor fft()
+    {
+        return fftMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor automaticFft()
+    {
+        return automaticMap.output(image).getFeatureMap();
+    }
+}
@@ -0,0 +1,117 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.ActivationFunctions;
+import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subsampling windows added up, taken from a summed-area table, and max pooled
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PoolingBenchmark
+{
+    /**
+     * The input is imageSize x imageSize
+     */
+    @Param({"32", "128", "512"})
+    int imageSize;
+
+    /**
+     * The window is window x window, even since the image sizes are powers of 2
+     */
+    @Param({"2", "4", "8"})
+    int window;
+
+    /**
+     * Distance between two windows, 0 for side by side windows
+     */
+    @Param({"0", "1", "2"})
+    int stride;
+
+    /**
+     * Number of threads the output rows are split between
+     */
+    @Param({"1", "4"})
+    int parallelism;
+
+    /**
+     * Shared by all the feature maps, null for one thread
+     */
+    ForkJoinPool pool;
+    Tensor image;
+    FeatureMap subsamplingMap;
+    FeatureMap summedAreaTableMap;
+    FeatureMap maxPoolingMap;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        image = new Tensor(imageSize, imageSize);
+        for(int i=0; i<imageSize; i++)
+            for(int j=0; j<imageSize; j++)
+                image.set(i, j, r.nextDouble());
+
+        subsamplingMap = map(new FeatureMap.SubSamplingFunction(new Neuron(phi, 0.3, 0.4)).setStride(stride));
+        summedAreaTableMap = map(new FeatureMap.SubSamplingFunction(new Neuron(phi, 0.3, 0.4)).setStride(stride)
+                                                                                          .setSummedAreaTable(true));
+        maxPoolingMap = map(new FeatureMap.MaxPoolingFunction().setStride(stride));
+    }
+
+    private FeatureMap map(FeatureMap.MapFunction mapFunc)
+    {
+        mapFunc.setReceptiveFieldSize(window * window);
+        return new FeatureMap(new FeatureMap.Builder()
+                .setInputSize(imageSize)
+                .setMapFunction(mapFunc)
+                .setPool(pool));
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public Tensor subsampling()
+    {
+        return subsamplingMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor summedAreaTableSubsampling()
+    {
+        return summedAreaTableMap.output(image).getFeatureMap();
+    }
+
+    @Benchmark
+    public Tensor maxPooling()
+    {
+        return maxPoolingMap.output(image).getFeatureMap();
+    }
+}
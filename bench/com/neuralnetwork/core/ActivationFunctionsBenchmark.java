@@ -0,0 +1,66 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact vs table-interpolated sigmoid over a block of induced local fields
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ActivationFunctionsBenchmark
+{
+    @Param({"exact", "fast"})
+    String function;
+
+    IActivationFunction.IDifferentiableFunction phi;
+    double[] aFields;
+
+    @Setup
+    public void setup()
+    {
+        phi = function.equals("fast")
+                ? new ActivationFunctions.FastSigmoidFunction(1.0)
+                : new ActivationFunctions.SigmoidUnityFunction();
+
+        Random r = new Random(100012);
+        aFields = new double[1024];
+        for(int i=0; i<aFields.length; i++)
+            aFields[i] = 4 * r.nextGaussian();
+    }
+
+    @Benchmark
+    public double apply()
+    {
+        double rslt = 0;
+        for(double v:aFields)
+            rslt += phi.apply(v);
+        return rslt;
+    }
+
+    @Benchmark
+    public double derivative()
+    {
+        double rslt = 0;
+        for(double v:aFields)
+            rslt += phi.derivative(v);
+        return rslt;
+    }
+}
@@ -0,0 +1,91 @@
+package com.neuralnetwork.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One backpropagation epoch over #numberExamples random examples
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MultiLayerNetworkBenchmark
+{
+    /**
+     * Number of hidden layers
+     */
+    @Param({"1", "3", "6"})
+    int depth;
+
+    /**
+     * Number of neurons per hidden layer (and number of inputs)
+     */
+    @Param({"16", "128", "512"})
+    int width;
+
+    @Param({"64"})
+    int numberExamples;
+
+    MultiLayerNetwork network;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+
+        //depth hidden layers plus one output neuron
+        SingleLayerNeuralNetwork[] aLayers = new SingleLayerNeuralNetwork[depth + 1];
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            Neuron[] aNeurons = new Neuron[layer < depth ? width : 1];
+            for(int k=0; k<aNeurons.length; k++)
+            {
+                double[] aWeights = new double[width + 1];
+                for(int j=0; j<aWeights.length; j++)
+                    aWeights[j] = r.nextGaussian() / Math.sqrt(width);
+                aNeurons[k] = new Neuron(phi, aWeights);
+            }
+            aLayers[layer] = new SingleLayerNeuralNetwork();
+            aLayers[layer].setNeurons(aNeurons);
+        }
+
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder()
+                .setMomentumParam(0.05)
+                .setLearningParam(0.1)
+                .setGlobalActivationFunction(phi)
+                .setLayers(aLayers);
+        network = new MultiLayerNetwork(builder);
+
+        NVector[] aInputExpected = new NVector[2 * numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector().setSize(width);
+            for(int j=0; j<width; j++)
+                aInputExpected[2*i].set(j, r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble());
+        }
+        network.setupExampleInfo(aInputExpected);
+    }
+
+    @Benchmark
+    public double backpropagation()
+    {
+        return network.backpropagation();
+    }
+}
@@ -0,0 +1,68 @@
+package com.neuralnetwork.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NVectorBenchmark
+{
+    @Param({"16", "256", "4096", "65536", "1048576"})
+    int size;
+
+    NVector a;
+    NVector b;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        a = new NVector().setSize(size);
+        b = new NVector().setSize(size);
+        for(int i=0; i<size; i++)
+        {
+            a.set(i, r.nextGaussian());
+            b.set(i, r.nextGaussian());
+        }
+    }
+
+    @Benchmark
+    public double dot()
+    {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public NVector subtract()
+    {
+        return a.subtract(b);
+    }
+
+    @Benchmark
+    public double dotProduct()
+    {
+        return a.dotProduct();
+    }
+
+    @Benchmark
+    public double sumOfCoords()
+    {
+        return a.sumOfCoords();
+    }
+}
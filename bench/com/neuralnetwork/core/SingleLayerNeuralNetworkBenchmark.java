@@ -0,0 +1,63 @@
+package com.neuralnetwork.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SingleLayerNeuralNetworkBenchmark
+{
+    /**
+     * Number of neurons = number of inputs
+     */
+    @Param({"16", "256", "1024", "4096"})
+    int width;
+
+    SingleLayerNeuralNetwork layer;
+    NVector input;
+
+    @Setup
+    public void setup()
+    {
+        Random r = new Random(100012);
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+
+        Neuron[] aNeurons = new Neuron[width];
+        for(int k=0; k<width; k++)
+        {
+            double[] aWeights = new double[width + 1];
+            for(int j=0; j<aWeights.length; j++)
+                aWeights[j] = r.nextGaussian();
+            aNeurons[k] = new Neuron(phi, aWeights);
+        }
+        layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(aNeurons);
+
+        input = new NVector().setSize(width + 1);
+        for(int j=0; j<width; j++)
+            input.set(j, r.nextGaussian());
+        input.set(width, 1);
+    }
+
+    @Benchmark
+    public NVector output()
+    {
+        return layer.output(input);
+    }
+}
@@ -0,0 +1,199 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+
+/**
+ * Convolves a multi-channel input with several kernels in one pass.
+ *
+ * Kernel m is a {@link Neuron} whose weights are its window over channel 0 in row order,
+ * then its window over channel 1, ..., with the bias last,
+ * so with one channel, one kernel, a stride of 1 and no padding
+ * it computes exactly what a {@link FeatureMap.ConvolutionFunction} with the same neuron computes.
+ * Each output map is a view of one tensor holding all of them,
+ * so it can be fed to another FeatureMap (e.g. a {@link FeatureMap.SubSamplingFunction})
+ * and the whole output to a MultiLayerNetwork (see Tensor#toVector) without copying.
+ *
+ * The receptive fields are laid out with {@link Im2col} a strip at a time,
+ * and every kernel is applied to a block of patches while it's in cache,
+ * so the input is read once whatever the number of kernels.
+ */
+public class ConvolutionLayer
+{
+    /**
+     * Each channel of the input has dimensions #inputSize x #inputSize
+     */
+    protected final int inputSize;
+    protected final int numberChannels;
+    protected final int sqrtReceptiveFieldSize;
+    protected final int stride;
+    protected final int padding;
+    /**
+     * Each output map has dimensions #outputSize x #outputSize
+     */
+    protected final int outputSize;
+
+    protected final Neuron[] aKernels;
+    /**
+     * aKernels as a row-major matrix, one kernel per row
+     */
+    protected final double[] aKernelMatrix;
+    protected final int patchSize;
+    protected final int stripRows;
+    /**
+     * A strip of the patch matrix, and the induced local fields of every kernel over it
+     */
+    protected final double[] aPatches;
+    protected final double[] aFields;
+
+    /**
+     * numberOfKernels x #outputSize x #outputSize, tFeatureMaps.slice(m) is the output map of kernel m
+     */
+    protected final Tensor tFeatureMaps;
+
+    public ConvolutionLayer(Builder builder)
+    {
+        if (builder.aKernels == null || builder.aKernels.length == 0)
+            throw new IllegalArgumentException("need at least one kernel");
+        if (builder.numberChannels <= 0)
+            throw new IllegalArgumentException("need at least one input channel");
+        if (builder.stride <= 0 || builder.padding < 0)
+            throw new IllegalArgumentException("stride must be positive and padding can't be negative");
+        if (builder.inputSize + 2 * builder.padding - builder.sqrtReceptiveFieldSize < 0)
+            throw new IllegalArgumentException("Receptive field size can't be larger than the padded input size");
+
+        inputSize = builder.inputSize;
+        numberChannels = builder.numberChannels;
+        sqrtReceptiveFieldSize = builder.sqrtReceptiveFieldSize;
+        stride = builder.stride;
+        padding = builder.padding;
+        outputSize = Im2col.outputSize(inputSize, sqrtReceptiveFieldSize, stride, padding);
+
+        aKernels = builder.aKernels;
+        patchSize = Im2col.patchSize(numberChannels, sqrtReceptiveFieldSize);
+        for(Neuron kernel:aKernels)
+            if (kernel.getNumberOfWeights() != patchSize)
+                throw new IllegalArgumentException("each kernel needs channels * receptive field size + 1 (bias) weights");
+
+        aKernelMatrix = new double[aKernels.length * patchSize];
+        stripRows = Im2col.stripRows(outputSize, patchSize);
+        aPatches = new double[stripRows * outputSize * patchSize];
+        aFields = new double[aKernels.length * stripRows * outputSize];
+        tFeatureMaps = new Tensor(aKernels.length, outputSize, outputSize);
+    }
+
+    static public class Builder
+    {
+        private int inputSize;
+        private int numberChannels = 1;
+        private int sqrtReceptiveFieldSize;
+        private int stride = 1;
+        private int padding;
+        private Neuron[] aKernels;
+
+        public Builder setInputSize(int inputSize)
+        {
+            this.inputSize = inputSize;
+            return this;
+        }
+
+        public Builder setInputChannels(int numberChannels)
+        {
+            this.numberChannels = numberChannels;
+            return this;
+        }
+
+        /**
+         * @param receptiveFieldSize size of the window on each channel. It should be a square.
+         * @return this
+         */
+        public Builder setReceptiveFieldSize(int receptiveFieldSize)
+        {
+            this.sqrtReceptiveFieldSize = (int) Math.sqrt(receptiveFieldSize);
+            return this;
+        }
+
+        /**
+         * @param stride distance between two windows, defaults to 1
+         * @return this
+         */
+        public Builder setStride(int stride)
+        {
+            this.stride = stride;
+            return this;
+        }
+
+        /**
+         * @param padding number of zeros around each side of the input, defaults to 0
+         * @return this
+         */
+        public Builder setPadding(int padding)
+        {
+            this.padding = padding;
+            return this;
+        }
+
+        /**
+         * @param aKernels one neuron per output map
+         * @return this
+         */
+        public Builder setKernels(Neuron... aKernels)
+        {
+            this.aKernels = aKernels;
+            return this;
+        }
+    }
+
+    /**
+     * @param input #numberChannels x #inputSize x #inputSize
+     * @return this
+     */
+    public ConvolutionLayer output(Tensor input)
+    {
+        if (input.rank() != 3 || input.size(0) != numberChannels || input.size(1) != inputSize || input.size(2) != inputSize)
+            throw new IllegalArgumentException("input must be "+numberChannels+" x "+inputSize+" x "+inputSize);
+
+        //the weights may have changed since the last call
+        for(int m=0; m<aKernels.length; m++)
+            for(int j=0; j<patchSize; j++)
+                aKernelMatrix[m * patchSize + j] = aKernels[m].getWeight(j);
+
+        final int fieldStride = stripRows * outputSize;
+        for(int first=0; first<outputSize; first+=stripRows)
+        {
+            final int numberRows = Math.min(stripRows, outputSize - first);
+            Im2col.patches(input, sqrtReceptiveFieldSize, stride, padding, first, numberRows, aPatches);
+            Im2col.convolve(aKernelMatrix, aKernels.length, aPatches, numberRows * outputSize, patchSize, aFields, fieldStride);
+
+            for(int m=0; m<aKernels.length; m++)
+                for(int i=0; i<numberRows; i++)
+                    aKernels[m].phi().apply(aFields, m * fieldStride + i * outputSize,
+                                            tFeatureMaps.data(), tFeatureMaps.offset(m, first + i, 0), outputSize);
+        }
+        return this;
+    }
+
+    public Tensor getFeatureMaps()
+    {
+        return tFeatureMaps;
+    }
+
+    /**
+     * @param kernel kernel
+     * @return view of the output map of the kernel
+     */
+    public Tensor getFeatureMap(int kernel)
+    {
+        return tFeatureMaps.slice(kernel);
+    }
+
+    public int getOutputSize()
+    {
+        return outputSize;
+    }
+
+    public int getNumberOfKernels()
+    {
+        return aKernels.length;
+    }
+}
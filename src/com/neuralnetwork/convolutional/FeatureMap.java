@@ -2,37 +2,94 @@ package com.neuralnetwork.convolutional;
 
 import com.neuralnetwork.core.NVector;
 import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+import com.neuralnetwork.core.Vectors;
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.IOptimizer;
 
-public class FeatureMap
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class FeatureMap implements AutoCloseable
 {
     /**
      * The input array has dimensions #inputSize x #inputSize
      */
     protected final int inputSize;
+    /**
+     * Width of the input the maps below are sized for: #inputSize, or that of a smaller input given to #output(Tensor)
+     */
+    protected int mapInputSize;
     /**
      * The actual feature map. The dimensions depend on the MapFunction
      */
-    protected double[][] aFeatureMap;
+    protected Tensor tFeatureMap;
+    /**
+     * For each output, its induced local field (v), kept by #output for the backward pass
+     */
+    protected Tensor tInducedLocalField;
+    /**
+     * For each output, its gradient (aka delta) from the last #backpropagation
+     */
+    protected Tensor tGradients;
+    /**
+     * For each input, the sum over the outputs it feeds of gradient times weight,
+     * i.e. the error signal of whatever produced the input. Same dimensions as the input.
+     */
+    protected Tensor tInputGradients;
+
+    /**
+     * #outputBatch's feature maps and induced local fields, one per image
+     */
+    protected Tensor tBatchFeatureMaps;
+    protected Tensor tBatchInducedLocalField;
 
     /**
      * One of Convolution or subsampling
      */
     protected final MapFunction mapFunction;
 
+    /**
+     * Splits the output rows between the workers, null to run on the calling thread
+     */
+    protected final ForkJoinPool pool;
+    /**
+     * Whether the pool was started by this feature map, and so is shut down by #close
+     */
+    protected final boolean ownsPool;
+    /**
+     * Copies of #mapFunction, one per thread of the pool, each with its own scratch
+     */
+    protected MapFunction[] aWorkers;
+
     public FeatureMap(Builder builder) {
         if (builder.inputSize - builder.mapFunction.sqrtReceptiveFieldSize + 1 <= 0)
             throw new IllegalArgumentException("Receptive field size can't be larger than the input size");
 
         inputSize = builder.inputSize;
+        mapInputSize = inputSize;
 
         mapFunction = builder.mapFunction;
-        aFeatureMap = mapFunction.createFeatureMap(inputSize);
+        tFeatureMap = mapFunction.createFeatureMap(inputSize);
+        tInducedLocalField = mapFunction.createFeatureMap(inputSize);
+
+        ownsPool = builder.pool == null && builder.parallelism > 1;
+        pool = builder.pool != null ? builder.pool : ownsPool ? new ForkJoinPool(builder.parallelism) : null;
+        if (pool != null)
+        {
+            aWorkers = new MapFunction[pool.getParallelism()];
+            for(int w=0; w<aWorkers.length; w++)
+                aWorkers[w] = mapFunction.copy();
+        }
     }
 
     static public class Builder
     {
         private int inputSize;
         private MapFunction mapFunction;
+        private int parallelism;
+        private ForkJoinPool pool;
 
         public Builder setInputSize(int inputSize)
         {
@@ -46,6 +103,36 @@ public class FeatureMap
             return this;
         }
 
+        /**
+         * Compute the output on the given number of threads.
+         * The output rows (of every image for #outputBatch) are split into one chunk per thread,
+         * each thread with its own copy of the map function's scratch.
+         * The result is the same as on one thread.
+         *
+         * @warning configure the map function (e.g. ConvolutionFunction#setIm2col) before building the feature map
+         * @warning the pool is started by the feature map, #close it when done
+         *
+         * @param parallelism number of threads
+         * @return this
+         */
+        public Builder setParallelism(int parallelism)
+        {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Compute the output on the threads of a pool shared with other feature maps (see #setParallelism),
+         * which #close leaves running
+         *
+         * @param pool pool
+         * @return this
+         */
+        public Builder setPool(ForkJoinPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
     }
 
     /**
@@ -65,12 +152,16 @@ public class FeatureMap
         /**
          * Copies a chunk of size x size from the input starting at location i,j
          */
-        public void copy(final double[][]input, final int size, final int i, final int j)
+        public void copy(final Tensor input, final int size, final int i, final int j)
         {
+            final double[] aInput = input.data();
             int len=0;
             for(int a=i; a < i+size; a++)
-                for(int b=j; b < j+size; b++)
-                    mapInput.set(len++, input[a][b]);
+            {
+                final int row = input.offset(a, j);
+                for(int b=0; b < size; b++)
+                    mapInput.set(len++, aInput[row + b]);
+            }
         }
     }
 
@@ -82,29 +173,146 @@ public class FeatureMap
          */
         protected int receptiveFieldSize;
         protected int sqrtReceptiveFieldSize;
-        protected OutputClass outputClass = new OutputClass();
+        protected Neuron sharedNeuron;
 
-        abstract protected double apply(NVector input);
+        /**
+         * Sum over all the outputs of gradient times the input of the shared neuron,
+         * for each of its weights. Added to by #backpropagation, cleared by #adjustWeights.
+         */
+        protected double[] aWeightGradients;
+        /**
+         * State of the optimizer for the shared neuron's weights (see IOptimizer#step)
+         */
+        protected double[] aOptimizerState;
+        protected int numberUpdates;
 
         abstract public MapFunction setReceptiveFieldSize(int receptiveFieldSize);
         protected int getReceptiveFieldSize() { return receptiveFieldSize; }
 
-        abstract protected double[][] createFeatureMap(int inputSize);
+        abstract protected Tensor createFeatureMap(int inputSize);
+
+        /**
+         * @param inputSize number of rows of the input
+         * @return number of rows of the output
+         */
+        abstract protected int outputSize(int inputSize);
+
+        /**
+         * @return a map function with the same settings and neuron but its own scratch, for another thread
+         */
+        abstract protected MapFunction copy();
 
-        abstract protected NVector generateMapInputCache();
+        /**
+         * @param input input
+         * @param tInducedLocalField where to store the induced local fields
+         * @param tFeatureMap where to store the output
+         * @param firstRow first output row to compute
+         * @param lastRow one past the last output row to compute
+         */
+        abstract protected void output(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow);
 
-        abstract protected void output(double[][] input, double[][] aFeatureMap);
+        /**
+         * Adds the gradients of the shared weights to #aWeightGradients
+         * and stores the input gradients
+         *
+         * @param input input of the forward pass
+         * @param tGradients gradient of every output
+         * @param tInputGradients where to store the input gradients
+         */
+        abstract protected void backpropagation(Tensor input, Tensor tGradients, Tensor tInputGradients);
+
+        protected double[] weightGradients()
+        {
+            if (aWeightGradients == null)
+                aWeightGradients = new double[sharedNeuron != null ? sharedNeuron.getNumberOfWeights() : 0];
+            return aWeightGradients;
+        }
     }
 
     static public class ConvolutionFunction extends MapFunction
     {
-        protected Neuron sharedNeuron;
+        /**
+         * Window-at-a-time scratch: the receptive field being convolved
+         */
+        protected OutputClass outputClass = new OutputClass();
+        /**
+         * Convolve with a matrix-matrix product over the patch matrix (see {@link Im2col})
+         * instead of one window at a time
+         */
+        protected boolean im2col;
+        /**
+         * im2col scratch: the shared neuron's weights, a strip of patches and their induced local fields
+         */
+        protected double[] aKernel;
+        protected double[] aPatches;
+        protected double[] aFields;
+        /**
+         * Convolve through the Fourier transforms (see {@link Fft}), always or only when #Fft.isFaster
+         */
+        protected boolean fft;
+        protected boolean automaticFft;
+        /**
+         * fft scratch: the transform of a band of input rows, the twiddle factors,
+         * and the cached transform of the kernel (conjugated and divided by the transform size)
+         * with the weights and transform dimensions it was computed for
+         */
+        protected double[] aRe;
+        protected double[] aIm;
+        protected double[] aTwiddles;
+        protected double[] aKernelRe;
+        protected double[] aKernelIm;
+        protected double[] aSpectrumWeights;
+        protected int spectrumRows;
+        protected int spectrumColumns;
 
         public ConvolutionFunction(Neuron neuron)
         {
             sharedNeuron = neuron;
         }
 
+        /**
+         * Lay out all the receptive fields as a patch matrix, a strip of rows at a time,
+         * and convolve with one blocked matrix multiply per strip.
+         * Same result as the default, faster for large inputs.
+         *
+         * @param im2col whether to use the patch matrix
+         * @return this
+         */
+        public ConvolutionFunction setIm2col(boolean im2col)
+        {
+            this.im2col = im2col;
+            return this;
+        }
+
+        /**
+         * Convolve through the 2D Fourier transforms of the input and the kernel, in O(n^2 log n) whatever the kernel size.
+         * The kernel's transform is kept until the shared neuron's weights change.
+         *
+         * @warning the induced local fields are only equal to the direct ones up to rounding (about 1e-12 relative)
+         *
+         * @param fft whether to always use the Fourier transforms
+         * @return this
+         */
+        public ConvolutionFunction setFft(boolean fft)
+        {
+            this.fft = fft;
+            return this;
+        }
+
+        /**
+         * Use the Fourier transforms only when they take fewer operations than the direct convolution
+         * for the input and kernel sizes (see #Fft.isFaster), large kernels on large inputs,
+         * and the direct (or im2col) path otherwise
+         *
+         * @param automaticFft whether to pick between the direct and the Fourier path
+         * @return this
+         */
+        public ConvolutionFunction setAutomaticFft(boolean automaticFft)
+        {
+            this.automaticFft = automaticFft;
+            return this;
+        }
+
         @Override
         public MapFunction setReceptiveFieldSize(int receptiveFieldSize)
         {
@@ -119,20 +327,29 @@ public class FeatureMap
         }
 
         @Override
-        protected double apply(NVector input)
+        protected Tensor createFeatureMap(int inputSize)
         {
-            return sharedNeuron.output(input);
+            final int n = outputSize(inputSize);
+            return new Tensor(n, n);
+
         }
 
         @Override
-        protected double[][] createFeatureMap(int inputSize)
+        protected int outputSize(int inputSize)
         {
-            final int n = inputSize - sqrtReceptiveFieldSize + 1;
-            return new double[n][n];
-
+            return inputSize - sqrtReceptiveFieldSize + 1;
         }
 
         @Override
+        protected MapFunction copy()
+        {
+            return new ConvolutionFunction(sharedNeuron).setIm2col(im2col).setFft(fft).setAutomaticFft(automaticFft)
+                                                        .setReceptiveFieldSize(receptiveFieldSize);
+        }
+
+        /**
+         * @return a receptive field with the bias input (1) tacked on, for #outputClass
+         */
         protected NVector generateMapInputCache()
         {
             NVector neuronInput = new NVector().setSize(receptiveFieldSize + 1);
@@ -141,17 +358,197 @@ public class FeatureMap
         }
 
         @Override
-        protected void output(double[][] input, double[][] aFeatureMap)
+        protected void output(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow)
         {
-            for(int i=0; i<=input.length - sqrtReceptiveFieldSize; i++)
-                for(int j=0; j<=input[i].length - sqrtReceptiveFieldSize; j++)
+            final int bandRows = lastRow - firstRow + sqrtReceptiveFieldSize - 1;
+            if (lastRow > firstRow
+                    && (fft || automaticFft && Fft.isFaster(bandRows, input.size(1), sqrtReceptiveFieldSize)))
+            {
+                outputFft(input, tInducedLocalField, tFeatureMap, firstRow, lastRow);
+                return;
+            }
+            if (im2col)
+            {
+                outputIm2col(input, tInducedLocalField, tFeatureMap, firstRow, lastRow);
+                return;
+            }
+
+            final IActivationFunction phi = sharedNeuron.phi();
+            for(int i=firstRow; i<lastRow; i++)
+                for(int j=0; j<=input.size(1) - sqrtReceptiveFieldSize; j++)
                 {
                     //copy over input into data struct
                     outputClass.copy(input, sqrtReceptiveFieldSize, i, j);
                     //do it
-                    aFeatureMap[i][j] = apply(outputClass.mapInput);
+                    final double v = sharedNeuron.rawoutput(outputClass.mapInput);
+                    tInducedLocalField.set(i, j, v);
+                    tFeatureMap.set(i, j, phi.apply(v));
                 }
         }
+
+        protected void outputIm2col(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow)
+        {
+            final int outputSize = outputSize(input.size(0));
+            final int patchSize = Im2col.patchSize(sqrtReceptiveFieldSize);
+            final int stripRows = Im2col.stripRows(outputSize, patchSize);
+
+            if (aKernel == null || aKernel.length != patchSize) aKernel = new double[patchSize];
+            if (aPatches == null || aPatches.length != stripRows * outputSize * patchSize)
+            {
+                aPatches = new double[stripRows * outputSize * patchSize];
+                aFields = new double[stripRows * outputSize];
+            }
+
+            //the weights may have changed since the last call
+            for(int j=0; j<patchSize; j++)
+                aKernel[j] = sharedNeuron.getWeight(j);
+
+            final IActivationFunction phi = sharedNeuron.phi();
+            for(int first=firstRow; first<lastRow; first+=stripRows)
+            {
+                final int numberRows = Math.min(stripRows, lastRow - first);
+                Im2col.patches(input, sqrtReceptiveFieldSize, first, numberRows, aPatches);
+                Im2col.convolve(aKernel, 1, aPatches, numberRows * outputSize, patchSize, aFields, aFields.length);
+
+                for(int i=0; i<numberRows; i++)
+                {
+                    System.arraycopy(aFields, i * outputSize, tInducedLocalField.data(), tInducedLocalField.offset(first + i), outputSize);
+                    phi.apply(aFields, i * outputSize, tFeatureMap.data(), tFeatureMap.offset(first + i), outputSize);
+                }
+            }
+        }
+
+        /**
+         * Correlates the band of input rows that output rows firstRow..lastRow-1 see with the kernel:
+         * the fields are the inverse transform of the input's transform times the conjugate of the kernel's.
+         * The transforms are padded to powers of 2 at least as large as the band,
+         * so the circular correlation doesn't wrap around into the outputs that are kept.
+         */
+        protected void outputFft(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            final int numberRows = lastRow - firstRow;
+            final int bandRows = numberRows + k - 1;
+            final int columns = input.size(1);
+            final int outputColumns = outputSize(columns);
+            final int rows = Fft.size(bandRows);
+            final int fftColumns = Fft.size(columns);
+            final int size = rows * fftColumns;
+
+            if (aRe == null || aRe.length != size)
+            {
+                aRe = new double[size];
+                aIm = new double[size];
+            }
+            if (aTwiddles == null || aTwiddles.length < Math.max(rows, fftColumns))
+                aTwiddles = Fft.twiddles(Math.max(rows, fftColumns));
+            kernelSpectrum(rows, fftColumns);
+
+            Arrays.fill(aRe, bandRows * fftColumns, size, 0);
+            Arrays.fill(aIm, 0);
+            for(int r=0; r<bandRows; r++)
+            {
+                System.arraycopy(input.data(), input.offset(firstRow + r), aRe, r * fftColumns, columns);
+                Arrays.fill(aRe, r * fftColumns + columns, (r + 1) * fftColumns, 0);
+            }
+            Fft.forward(aRe, aIm, rows, fftColumns, bandRows, aTwiddles);
+
+            for(int p=0; p<size; p++)
+            {
+                final double re = aRe[p] * aKernelRe[p] - aIm[p] * aKernelIm[p];
+                aIm[p] = aRe[p] * aKernelIm[p] + aIm[p] * aKernelRe[p];
+                aRe[p] = re;
+            }
+            Fft.inverse(aRe, aIm, rows, fftColumns, numberRows, aTwiddles);
+
+            final double bias = sharedNeuron.getWeight(receptiveFieldSize);
+            final IActivationFunction phi = sharedNeuron.phi();
+            for(int i=0; i<numberRows; i++)
+            {
+                final int row = tInducedLocalField.offset(firstRow + i);
+                for(int j=0; j<outputColumns; j++)
+                    tInducedLocalField.data()[row + j] = aRe[i * fftColumns + j] + bias;
+                phi.apply(tInducedLocalField.data(), row, tFeatureMap.data(), tFeatureMap.offset(firstRow + i), outputColumns);
+            }
+        }
+
+        /**
+         * Transforms the kernel for rows x columns transforms,
+         * unless it already is with the shared neuron's current weights
+         */
+        protected void kernelSpectrum(int rows, int columns)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            if (aSpectrumWeights == null) aSpectrumWeights = new double[receptiveFieldSize];
+
+            boolean same = aKernelRe != null && spectrumRows == rows && spectrumColumns == columns;
+            for(int j=0; same && j<receptiveFieldSize; j++)
+                same = aSpectrumWeights[j] == sharedNeuron.getWeight(j);
+            if (same) return;
+
+            if (aKernelRe == null || aKernelRe.length != rows * columns)
+            {
+                aKernelRe = new double[rows * columns];
+                aKernelIm = new double[rows * columns];
+            }
+            Arrays.fill(aKernelRe, 0);
+            Arrays.fill(aKernelIm, 0);
+            //the 1 / size of the inverse transform comes for free here
+            final double scale = 1.0 / (rows * columns);
+            for(int u=0; u<k; u++)
+                for(int v=0; v<k; v++)
+                {
+                    aSpectrumWeights[u * k + v] = sharedNeuron.getWeight(u * k + v);
+                    aKernelRe[u * columns + v] = scale * aSpectrumWeights[u * k + v];
+                }
+            Fft.forward(aKernelRe, aKernelIm, rows, columns, k, aTwiddles);
+            //correlation, not convolution
+            for(int p=0; p<aKernelIm.length; p++)
+                aKernelIm[p] = -aKernelIm[p];
+
+            spectrumRows = rows;
+            spectrumColumns = columns;
+        }
+
+        /**
+         * Each shared weight sees every output, so its gradient is one reduction over the whole map:
+         * weight (u,v) gets the sum of the row dot products of the gradients with the input shifted by (u,v),
+         * and the bias gets the sum of the gradients.
+         * The input gradients are the gradients spread back over the windows,
+         * one row axpy per weight and output row.
+         */
+        @Override
+        protected void backpropagation(Tensor input, Tensor tGradients, Tensor tInputGradients)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            final int outputSize = tGradients.size(0);
+            final double[] aWeightGradients = weightGradients();
+            final double[] aInput = input.data();
+            final double[] aGradients = tGradients.data();
+            final double[] aInputGradients = tInputGradients.data();
+
+            for(int u=0; u<k; u++)
+                for(int v=0; v<k; v++)
+                {
+                    double sum = 0;
+                    for(int i=0; i<outputSize; i++)
+                        sum += Vectors.dot(aGradients, tGradients.offset(i), aInput, input.offset(i + u, v), outputSize);
+                    aWeightGradients[u * k + v] += sum;
+                }
+            double bias = 0;
+            for(int i=0; i<outputSize; i++)
+                bias += Vectors.sum(aGradients, tGradients.offset(i), outputSize);
+            aWeightGradients[receptiveFieldSize] += bias;
+
+            tInputGradients.fill(0);
+            for(int i=0; i<outputSize; i++)
+                for(int u=0; u<k; u++)
+                    for(int v=0; v<k; v++)
+                        Vectors.axpy(sharedNeuron.getWeight(u * k + v),
+                                     aGradients, tGradients.offset(i),
+                                     aInputGradients, tInputGradients.offset(i + u, v),
+                                     outputSize);
+        }
     }
 
     /**
@@ -160,11 +557,22 @@ public class FeatureMap
      */
     static public class SubSamplingFunction extends MapFunction
     {
-        protected Neuron sharedNeuron;
         /**
          * For speed improvements
          */
         protected NVector neuronInput;
+        /**
+         * Distance between two windows, 0 for side by side windows
+         */
+        protected int stride;
+        /**
+         * Take the window sums from a summed-area table (see {@link Pooling})
+         */
+        protected boolean summedAreaTable;
+        /**
+         * Summed-area table scratch
+         */
+        protected double[] aTable;
 
         public SubSamplingFunction(Neuron neuron)
         {
@@ -176,11 +584,38 @@ public class FeatureMap
             neuronInput.set(1, 1);
         }
 
-        @Override
-        protected double apply(NVector input)
+        /**
+         * @param stride distance between two windows.
+         *               Defaults to the window width (side by side windows), smaller strides overlap them.
+         * @return this
+         */
+        public SubSamplingFunction setStride(int stride)
+        {
+            if (stride < 0)
+                throw new IllegalArgumentException("stride can't be negative");
+            this.stride = stride;
+            return this;
+        }
+
+        /**
+         * Take every window sum from a summed-area table of the input, in 4 reads whatever the window size,
+         * instead of adding up the window.
+         * Worth it when windows overlap (see #setStride), since side by side windows read every input once anyway.
+         *
+         * @warning the sums are differences of running sums, so they can differ from the added up window in the last bits
+         *
+         * @param summedAreaTable whether to use a summed-area table
+         * @return this
+         */
+        public SubSamplingFunction setSummedAreaTable(boolean summedAreaTable)
+        {
+            this.summedAreaTable = summedAreaTable;
+            return this;
+        }
+
+        protected int stride()
         {
-            neuronInput.set(0, input.sumOfCoords());
-            return sharedNeuron.output(neuronInput);
+            return stride > 0 ? stride : sqrtReceptiveFieldSize;
         }
 
         @Override
@@ -188,46 +623,540 @@ public class FeatureMap
         {
             this.receptiveFieldSize = receptiveFieldSize;
             this.sqrtReceptiveFieldSize = (int) Math.sqrt(receptiveFieldSize);
-            outputClass.setMapInput(generateMapInputCache());
             return this;
         }
 
         @Override
-        protected double[][] createFeatureMap(int inputSize)
+        protected Tensor createFeatureMap(int inputSize)
         {
-            if (inputSize % sqrtReceptiveFieldSize != 0)
+            if (stride == 0 && inputSize % sqrtReceptiveFieldSize != 0)
                 throw new IllegalArgumentException("input size must be a multiple of the receptive field size");
-            final int n = inputSize / sqrtReceptiveFieldSize;
-            return new double[n][n];
+            final int n = outputSize(inputSize);
+            return new Tensor(n, n);
+        }
+
+        @Override
+        protected int outputSize(int inputSize)
+        {
+            return (inputSize - sqrtReceptiveFieldSize) / stride() + 1;
         }
 
         @Override
-        public NVector generateMapInputCache()
+        protected MapFunction copy()
         {
-            return new NVector().setSize(receptiveFieldSize);
+            return new SubSamplingFunction(sharedNeuron).setStride(stride).setSummedAreaTable(summedAreaTable)
+                                                        .setReceptiveFieldSize(receptiveFieldSize);
         }
 
-        public void output(double[][] input, double[][] aFeatureMap)
+        public void output(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow)
         {
-            for(int i=0, smallI=0; i<=input.length - sqrtReceptiveFieldSize; i+=sqrtReceptiveFieldSize, smallI++)
-                for(int j=0, smallJ=0; j<=input[i].length - sqrtReceptiveFieldSize; j+=sqrtReceptiveFieldSize, smallJ++)
+            final IActivationFunction phi = sharedNeuron.phi();
+            final int s = stride();
+            final int columns = outputSize(input.size(1));
+            final int top = firstRow * s;
+            if (summedAreaTable && lastRow > firstRow)
+                buildTable(input, top, (lastRow - 1) * s + sqrtReceptiveFieldSize - top);
+
+            for(int smallI=firstRow; smallI<lastRow; smallI++)
+                for(int smallJ=0; smallJ<columns; smallJ++)
                 {
-                    //copy over input into data struct
-                    outputClass.copy(input, sqrtReceptiveFieldSize, i, j);
-                    //do it
-                    aFeatureMap[smallI][smallJ] = apply(outputClass.mapInput);
+                    neuronInput.set(0, windowSum(input, smallI * s, smallJ * s, top));
+                    final double v = sharedNeuron.rawoutput(neuronInput);
+                    tInducedLocalField.set(smallI, smallJ, v);
+                    tFeatureMap.set(smallI, smallJ, phi.apply(v));
+                }
+        }
+
+        protected void buildTable(Tensor input, int firstRow, int numberRows)
+        {
+            final int size = (numberRows + 1) * (input.size(1) + 1);
+            if (aTable == null || aTable.length < size) aTable = new double[size];
+            Pooling.summedAreaTable(input, firstRow, numberRows, aTable);
+        }
+
+        /**
+         * @param input input
+         * @param i first row of the window
+         * @param j first column of the window
+         * @param tableRow first input row of the summed-area table, if there's one
+         * @return the sum of the window, in row order unless there's a summed-area table
+         */
+        protected double windowSum(Tensor input, int i, int j, int tableRow)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            if (summedAreaTable)
+                return Pooling.windowSum(aTable, input.size(1) + 1, i - tableRow, j, k);
+
+            final double[] aInput = input.data();
+            double sum = 0;
+            for(int a=i; a<i + k; a++)
+            {
+                final int row = input.offset(a, j);
+                for(int b=0; b<k; b++)
+                    sum += aInput[row + b];
+            }
+            return sum;
+        }
+
+        /**
+         * The scale factor gets the sum over the map of gradient times window sum,
+         * the bias the sum of the gradients,
+         * and every input the sum over the windows it's in of the window's gradient times the scale factor.
+         */
+        @Override
+        protected void backpropagation(Tensor input, Tensor tGradients, Tensor tInputGradients)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            final int s = stride();
+            final double[] aWeightGradients = weightGradients();
+            final double[] aInputGradients = tInputGradients.data();
+            final double scale = sharedNeuron.getWeight(0);
+            if (summedAreaTable) buildTable(input, 0, input.size(0));
+
+            tInputGradients.fill(0);
+            double scaleGradient = 0;
+            double biasGradient = 0;
+            for(int smallI=0; smallI<tGradients.size(0); smallI++)
+                for(int smallJ=0; smallJ<tGradients.size(1); smallJ++)
+                {
+                    final double gradient = tGradients.get(smallI, smallJ);
+                    scaleGradient += gradient * windowSum(input, smallI * s, smallJ * s, 0);
+                    biasGradient += gradient;
+
+                    for(int a=smallI * s; a<smallI * s + k; a++)
+                    {
+                        final int pos = tInputGradients.offset(a, smallJ * s);
+                        for(int b=0; b<k; b++)
+                            aInputGradients[pos + b] += gradient * scale;
+                    }
+                }
+            aWeightGradients[0] += scaleGradient;
+            aWeightGradients[1] += biasGradient;
+        }
+    }
+
+    /**
+     * Takes the maximum of each #sqrtReceptiveFieldSize x #sqrtReceptiveFieldSize window.
+     * The windows are side by side unless a smaller stride makes them overlap.
+     * There are no weights: the output (and induced local field) is the maximum itself.
+     *
+     * The maxima are separable: rows first, then columns, each with {@link Pooling#slidingMax},
+     * so overlapping windows cost the same whatever their size.
+     */
+    static public class MaxPoolingFunction extends MapFunction
+    {
+        /**
+         * Distance between two windows, 0 for side by side windows
+         */
+        protected int stride;
+        /**
+         * Scratch: the row maxima of a band of input rows, and #Pooling.slidingMax's
+         */
+        protected double[] aRowMax;
+        protected double[] aPrefix;
+        protected double[] aSuffix;
+
+        /**
+         * @param stride distance between two windows.
+         *               Defaults to the window width (side by side windows), smaller strides overlap them.
+         * @return this
+         */
+        public MaxPoolingFunction setStride(int stride)
+        {
+            if (stride < 0)
+                throw new IllegalArgumentException("stride can't be negative");
+            this.stride = stride;
+            return this;
+        }
+
+        protected int stride()
+        {
+            return stride > 0 ? stride : sqrtReceptiveFieldSize;
+        }
+
+        @Override
+        public MapFunction setReceptiveFieldSize(int receptiveFieldSize)
+        {
+            this.receptiveFieldSize = receptiveFieldSize;
+            this.sqrtReceptiveFieldSize = (int) Math.sqrt(receptiveFieldSize);
+            return this;
+        }
+
+        @Override
+        protected Tensor createFeatureMap(int inputSize)
+        {
+            final int n = outputSize(inputSize);
+            return new Tensor(n, n);
+        }
+
+        @Override
+        protected int outputSize(int inputSize)
+        {
+            return (inputSize - sqrtReceptiveFieldSize) / stride() + 1;
+        }
+
+        @Override
+        protected MapFunction copy()
+        {
+            return new MaxPoolingFunction().setStride(stride).setReceptiveFieldSize(receptiveFieldSize);
+        }
+
+        @Override
+        protected void output(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int firstRow, int lastRow)
+        {
+            if (lastRow <= firstRow) return;
+
+            final int k = sqrtReceptiveFieldSize;
+            final int s = stride();
+            final int columns = outputSize(input.size(1));
+            final int numberRows = lastRow - firstRow;
+            final int bandRows = (numberRows - 1) * s + k;
+
+            final int scratchSize = Math.max(Pooling.scratchSize(1, k, s, columns),
+                                             Pooling.scratchSize(columns, k, s, numberRows));
+            if (aRowMax == null || aRowMax.length < bandRows * columns) aRowMax = new double[bandRows * columns];
+            if (aPrefix == null || aPrefix.length < scratchSize)
+            {
+                aPrefix = new double[scratchSize];
+                aSuffix = new double[scratchSize];
+            }
+
+            //maxima of the windows of every input row, then of the columns of those
+            for(int r=0; r<bandRows; r++)
+                Pooling.slidingMax(input.data(), input.offset(firstRow * s + r), 1, 1, k, s, columns,
+                                   aRowMax, r * columns, 1, aPrefix, aSuffix);
+            Pooling.slidingMax(aRowMax, 0, columns, columns, k, s, numberRows,
+                               tFeatureMap.data(), tFeatureMap.offset(firstRow), tFeatureMap.stride(0), aPrefix, aSuffix);
+
+            for(int i=firstRow; i<lastRow; i++)
+                System.arraycopy(tFeatureMap.data(), tFeatureMap.offset(i), tInducedLocalField.data(), tInducedLocalField.offset(i), columns);
+        }
+
+        /**
+         * Each window's gradient goes to its maximum (the first one in row order on a tie),
+         * inputs that are the maximum of several windows get the sum
+         */
+        @Override
+        protected void backpropagation(Tensor input, Tensor tGradients, Tensor tInputGradients)
+        {
+            final int k = sqrtReceptiveFieldSize;
+            final int s = stride();
+            final double[] aInput = input.data();
+            final double[] aInputGradients = tInputGradients.data();
+
+            tInputGradients.fill(0);
+            for(int smallI=0; smallI<tGradients.size(0); smallI++)
+                for(int smallJ=0; smallJ<tGradients.size(1); smallJ++)
+                {
+                    int maxA = smallI * s;
+                    int maxB = smallJ * s;
+                    double max = aInput[input.offset(maxA, maxB)];
+                    for(int a=smallI * s; a<smallI * s + k; a++)
+                    {
+                        final int row = input.offset(a, 0);
+                        for(int b=smallJ * s; b<smallJ * s + k; b++)
+                            if (aInput[row + b] > max)
+                            {
+                                max = aInput[row + b];
+                                maxA = a;
+                                maxB = b;
+                            }
+                    }
+                    aInputGradients[tInputGradients.offset(maxA, maxB)] += tGradients.get(smallI, smallJ);
                 }
         }
     }
 
+    /**
+     * @param input #inputSize x #inputSize, any view will do (see Tensor#narrow, Tensor#slice).
+     *              A smaller square input gets a smaller feature map, which replaces the current one.
+     * @return this
+     */
+    public FeatureMap output(Tensor input)
+    {
+        if (input.rank() != 2 || input.size(0) != input.size(1) || input.size(0) > inputSize)
+            throw new IllegalArgumentException("input must be square and at most "+inputSize+" x "+inputSize);
+        if (input.size(0) != mapInputSize)
+            resize(input.size(0));
+
+        output(input, tInducedLocalField, tFeatureMap, 1);
+        return this;
+    }
+
+    /**
+     * Sizes the feature map, and the backward pass' tensors, for another input width
+     */
+    protected void resize(int size)
+    {
+        if (size - mapFunction.sqrtReceptiveFieldSize + 1 <= 0)
+            throw new IllegalArgumentException("Receptive field size can't be larger than the input size");
+
+        tFeatureMap = mapFunction.createFeatureMap(size);
+        tInducedLocalField = mapFunction.createFeatureMap(size);
+        tGradients = null;
+        tInputGradients = null;
+        mapInputSize = size;
+    }
+
+    /**
+     * Computes the feature maps of a batch of images in one call,
+     * on several threads if there's a pool (see Builder#setParallelism).
+     *
+     * @warning forward only, #backpropagation works on the last #output(Tensor)
+     *
+     * @param images numberImages x #inputSize x #inputSize
+     * @return numberImages x feature map rows x feature map columns,
+     * overwritten by the next call
+     */
+    public Tensor outputBatch(Tensor images)
+    {
+        if (images.rank() != 3 || images.size(1) != inputSize || images.size(2) != inputSize)
+            throw new IllegalArgumentException("images must be numberImages x "+inputSize+" x "+inputSize);
+
+        //not the size of #tFeatureMap, which follows the last #output(Tensor)
+        final int numberImages = images.size(0);
+        final int n = mapFunction.outputSize(inputSize);
+        if (tBatchFeatureMaps == null || tBatchFeatureMaps.size(0) != numberImages
+                || tBatchFeatureMaps.size(1) != n || tBatchFeatureMaps.size(2) != n)
+        {
+            tBatchFeatureMaps = new Tensor(numberImages, n, n);
+            tBatchInducedLocalField = new Tensor(numberImages, n, n);
+        }
+
+        output(images, tBatchInducedLocalField, tBatchFeatureMaps, numberImages);
+        return tBatchFeatureMaps;
+    }
+
+    /**
+     * Computes all the output rows of one image (input of rank 2) or of a batch (rank 3),
+     * on several threads if there's a pool
+     */
+    protected void output(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap, int numberImages)
+    {
+        final int rowsPerImage = mapFunction.outputSize(input.size(input.rank() - 2));
+        final int numberRows = numberImages * rowsPerImage;
+
+        if (pool != null && numberRows > 1)
+            pool.invoke(new OutputTask(input, tInducedLocalField, tFeatureMap, rowsPerImage, numberRows, 0, aWorkers.length));
+        else
+            output(mapFunction, input, tInducedLocalField, tFeatureMap, rowsPerImage, 0, numberRows);
+    }
+
+    /**
+     * Computes the output rows first..last-1, numbered image after image
+     *
+     * @param function map function (and scratch) to use
+     * @param input one image (rank 2) or a batch (rank 3)
+     * @param tInducedLocalField where to store the induced local fields, same rank as the input
+     * @param tFeatureMap where to store the output, same rank as the input
+     * @param rowsPerImage number of output rows of an image
+     * @param first first row
+     * @param last one past the last row
+     */
+    protected static void output(MapFunction function, Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap,
+                                 int rowsPerImage, int first, int last)
+    {
+        while(first < last)
+        {
+            final int image = first / rowsPerImage;
+            final int row = first - image * rowsPerImage;
+            final int count = Math.min(last - first, rowsPerImage - row);
+
+            if (input.rank() == 3)
+                function.output(input.slice(image), tInducedLocalField.slice(image), tFeatureMap.slice(image), row, row + count);
+            else
+                function.output(input, tInducedLocalField, tFeatureMap, row, row + count);
+            first += count;
+        }
+    }
+
+    /**
+     * Each worker in aWorkers[lo..hi-1] computes its chunk of the numberRows output rows.
+     * Workers write disjoint rows, so nothing needs to be combined.
+     */
+    protected class OutputTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Tensor input;
+        final Tensor tInducedLocalField;
+        final Tensor tFeatureMap;
+        final int rowsPerImage;
+        final int numberRows;
+        final int lo;
+        final int hi;
+
+        protected OutputTask(Tensor input, Tensor tInducedLocalField, Tensor tFeatureMap,
+                             int rowsPerImage, int numberRows, int lo, int hi)
+        {
+            this.input = input;
+            this.tInducedLocalField = tInducedLocalField;
+            this.tFeatureMap = tFeatureMap;
+            this.rowsPerImage = rowsPerImage;
+            this.numberRows = numberRows;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo == 1)
+            {
+                output(aWorkers[lo], input, tInducedLocalField, tFeatureMap, rowsPerImage,
+                       firstRow(numberRows, lo), firstRow(numberRows, lo + 1));
+                return;
+            }
+
+            final int mid = (lo + hi) >>> 1;
+            invokeAll(new OutputTask(input, tInducedLocalField, tFeatureMap, rowsPerImage, numberRows, lo, mid),
+                      new OutputTask(input, tInducedLocalField, tFeatureMap, rowsPerImage, numberRows, mid, hi));
+        }
+    }
+
+    /**
+     * The rows are split into one chunk per worker
+     *
+     * @param numberRows number of rows
+     * @param worker worker
+     * @return the first row of the worker's chunk
+     */
+    protected int firstRow(int numberRows, int worker)
+    {
+        return (int) ((long) numberRows * worker / aWorkers.length);
+    }
+
+    /**
+     * Same as #output(Tensor) for an input held as rows, which are copied
+     *
+     * @param input #inputSize x #inputSize
+     * @return this
+     */
     public FeatureMap output(double[][] input)
     {
-        mapFunction.output(input, aFeatureMap);
+        return output(Tensor.of(input));
+    }
+
+    /**
+     * Backward pass of the last #output.
+     *
+     * Stores the gradient of every output (output gradient times phi'(v)),
+     * adds the gradients of the shared weights to the ones saved so far (see #adjustWeights)
+     * and stores the input gradients (see #getInputGradients), to be fed to the map below.
+     *
+     * Same sign convention as MultiLayerNetwork: the output gradients are minus the derivatives of the error,
+     * e.g. (expected - actual) for an output map, or MultiLayerNetwork#backpropagation(NVector, NVector, NVector)'s input gradients.
+     *
+     * @warning the shared neuron's activation function must be differentiable
+     *
+     * @param input the input of the last #output
+     * @param tOutputGradients same dimensions as the feature map
+     * @return this
+     */
+    public FeatureMap backpropagation(Tensor input, Tensor tOutputGradients)
+    {
+        final Neuron neuron = mapFunction.sharedNeuron;
+        if (neuron != null && !(neuron.phi() instanceof IActivationFunction.IDifferentiableFunction))
+            throw new IllegalArgumentException("backpropagation needs a differentiable activation function");
+        if (tOutputGradients.rank() != 2 || tOutputGradients.size(0) != tFeatureMap.size(0)
+                || tOutputGradients.size(1) != tFeatureMap.size(1))
+            throw new IllegalArgumentException("output gradients must have the dimensions of the feature map");
+        if (input.rank() != 2 || input.size(0) != mapInputSize || input.size(1) != mapInputSize)
+            throw new IllegalArgumentException("input must be the "+mapInputSize+" x "+mapInputSize+" input of the last output");
+
+        if (tGradients == null)
+        {
+            tGradients = mapFunction.createFeatureMap(mapInputSize);
+            tInputGradients = new Tensor(mapInputSize, mapInputSize);
+        }
+
+        final double[] aGradients = tGradients.data();
+        final double[] aOutputGradients = tOutputGradients.data();
+        final int n = tGradients.size(1);
+        for(int i=0; i<tGradients.size(0); i++)
+        {
+            final int row = tGradients.offset(i);
+            final int outputRow = tOutputGradients.offset(i);
+            if (neuron == null)
+            {
+                //no activation function (e.g. max pooling), the gradients are the output gradients
+                System.arraycopy(aOutputGradients, outputRow, aGradients, row, n);
+                continue;
+            }
+            ((IActivationFunction.IDifferentiableFunction) neuron.phi())
+                    .derivative(tInducedLocalField.data(), tInducedLocalField.offset(i), aGradients, row, n);
+            for(int j=0; j<n; j++)
+                aGradients[row + j] *= aOutputGradients[outputRow + j];
+        }
+
+        mapFunction.backpropagation(input, tGradients, tInputGradients);
+        return this;
+    }
+
+    /**
+     * Adjusts the shared weights with the delta rule: w += eta * (sum of the weight gradients saved since the last adjustment)
+     *
+     * @param eta learning parameter
+     * @return this
+     */
+    public FeatureMap adjustWeights(double eta)
+    {
+        final double[] aWeightGradients = mapFunction.weightGradients();
+        final Neuron neuron = mapFunction.sharedNeuron;
+        for(int j=0; j<aWeightGradients.length; j++)
+            neuron.setWeight(j, neuron.getWeight(j) + eta * aWeightGradients[j]);
+
+        Arrays.fill(aWeightGradients, 0);
+        return this;
+    }
+
+    /**
+     * Adjusts the shared weights with an optimizer, which gets eta times the weight gradients saved since the last adjustment
+     *
+     * @param optimizer optimizer, the same one at every call
+     * @param eta learning parameter
+     * @return this
+     */
+    public FeatureMap adjustWeights(IOptimizer optimizer, double eta)
+    {
+        final double[] aWeightGradients = mapFunction.weightGradients();
+        final Neuron neuron = mapFunction.sharedNeuron;
+        final int n = aWeightGradients.length;
+        if (mapFunction.aOptimizerState == null)
+            mapFunction.aOptimizerState = new double[optimizer.getStateSize() * n];
+
+        final double[] aWeights = new double[n];
+        for(int j=0; j<n; j++)
+        {
+            aWeights[j] = neuron.getWeight(j);
+            aWeightGradients[j] *= eta;
+        }
+        optimizer.step(aWeights, 0, aWeightGradients, 0, mapFunction.aOptimizerState, 0, n, ++mapFunction.numberUpdates);
+        for(int j=0; j<n; j++)
+            neuron.setWeight(j, aWeights[j]);
+
+        Arrays.fill(aWeightGradients, 0);
         return this;
     }
 
-    public double[][] getFeatureMap()
+    /**
+     * Shuts down the pool the feature map started (see Builder#setParallelism).
+     * A pool given to Builder#setPool is left running.
+     */
+    @Override
+    public void close()
+    {
+        if (ownsPool)
+            pool.shutdown();
+    }
+
+    public Tensor getFeatureMap()
+    {
+        return tFeatureMap;
+    }
+
+    public Tensor getInputGradients()
     {
-        return aFeatureMap;
+        return tInputGradients;
     }
 }
@@ -0,0 +1,149 @@
+package com.neuralnetwork.convolutional;
+
+/**
+ * Radix-2 fast Fourier transforms, in place, on complex numbers held as separate real and imaginary arrays.
+ *
+ * A transform works on n elements of width consecutive doubles each (width = 1 for plain values),
+ * element x at aRe/aIm[off + x*width .. off + x*width + width), every coordinate transformed independently.
+ * With width = the number of columns of a row-major matrix, that transforms all the columns at once
+ * with unit-stride inner loops instead of walking each column down the matrix.
+ */
+final public class Fft
+{
+    /**
+     * Relative cost of a butterfly and a multiply-add of the direct convolution, see #isFaster
+     */
+    static final double BUTTERFLY_COST = 4;
+
+    private Fft() {}
+
+    /**
+     * @param n n
+     * @return the smallest power of 2 at least n
+     */
+    public static int size(int n)
+    {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * @param n largest transform size, a power of 2
+     * @return cos(2 pi j / n) for j < n/2, then sin(2 pi j / n) for j < n/2
+     */
+    public static double[] twiddles(int n)
+    {
+        final int half = Math.max(1, n / 2);
+        final double[] aTwiddles = new double[2 * half];
+        for(int j=0; j<half; j++)
+        {
+            aTwiddles[j] = Math.cos(2 * Math.PI * j / n);
+            aTwiddles[half + j] = Math.sin(2 * Math.PI * j / n);
+        }
+        return aTwiddles;
+    }
+
+    /**
+     * Unnormalized transform: X[f] = sum over x of x[x] * exp(-+2 pi i f x / n)
+     *
+     * @param off position of element 0
+     * @param n number of elements, a power of 2
+     * @param width number of doubles of an element
+     * @param inverse whether to use the positive exponent
+     * @param aTwiddles #twiddles of any power of 2 at least n
+     */
+    public static void transform(double[] aRe, double[] aIm, int off, int n, int width, boolean inverse, double[] aTwiddles)
+    {
+        //bit reversal permutation
+        for(int x=1, y=0; x<n; x++)
+        {
+            int bit = n >> 1;
+            for(; (y & bit) != 0; bit >>= 1)
+                y ^= bit;
+            y ^= bit;
+            if (x < y)
+            {
+                swap(aRe, off + x * width, off + y * width, width);
+                swap(aIm, off + x * width, off + y * width, width);
+            }
+        }
+
+        final int half = aTwiddles.length / 2;
+        final double sign = inverse ? 1 : -1;
+        for(int length=2; length<=n; length<<=1)
+        {
+            final int step = 2 * half / length;
+            final int span = length / 2 * width;
+            for(int start=0; start<n; start+=length)
+                for(int j=0; j<length / 2; j++)
+                {
+                    final double wRe = aTwiddles[j * step];
+                    final double wIm = sign * aTwiddles[half + j * step];
+                    final int a = off + (start + j) * width;
+                    final int b = a + span;
+                    for(int c=0; c<width; c++)
+                    {
+                        final double tRe = wRe * aRe[b + c] - wIm * aIm[b + c];
+                        final double tIm = wRe * aIm[b + c] + wIm * aRe[b + c];
+                        aRe[b + c] = aRe[a + c] - tRe;
+                        aIm[b + c] = aIm[a + c] - tIm;
+                        aRe[a + c] += tRe;
+                        aIm[a + c] += tIm;
+                    }
+                }
+        }
+    }
+
+    /**
+     * Forward transform of a rows x columns row-major matrix whose rows from numberRows on are 0:
+     * the rows, skipping the zero ones, then the columns
+     */
+    public static void forward(double[] aRe, double[] aIm, int rows, int columns, int numberRows, double[] aTwiddles)
+    {
+        for(int i=0; i<numberRows; i++)
+            transform(aRe, aIm, i * columns, columns, 1, false, aTwiddles);
+        transform(aRe, aIm, 0, rows, columns, false, aTwiddles);
+    }
+
+    /**
+     * Unnormalized inverse transform of a rows x columns row-major matrix, up to row numberRows:
+     * the columns, then only the rows that are wanted
+     */
+    public static void inverse(double[] aRe, double[] aIm, int rows, int columns, int numberRows, double[] aTwiddles)
+    {
+        transform(aRe, aIm, 0, rows, columns, true, aTwiddles);
+        for(int i=0; i<numberRows; i++)
+            transform(aRe, aIm, i * columns, columns, 1, true, aTwiddles);
+    }
+
+    /**
+     * Whether convolving an input band of rows x columns with a k x k kernel is cheaper
+     * through #forward and #inverse (the kernel's transform being cached)
+     * than with one multiply-add per weight and output
+     */
+    public static boolean isFaster(int rows, int columns, int k)
+    {
+        final int outputRows = rows - k + 1;
+        final int outputColumns = columns - k + 1;
+        if (outputRows <= 0 || outputColumns <= 0) return false;
+
+        final int fftRows = size(rows);
+        final int fftColumns = size(columns);
+        final int logRows = Integer.numberOfTrailingZeros(fftRows);
+        final int logColumns = Integer.numberOfTrailingZeros(fftColumns);
+        final double butterflies = (rows + outputRows) * (fftColumns / 2.0) * logColumns
+                                 + 2 * fftColumns * (fftRows / 2.0) * logRows
+                                 + (double) fftRows * fftColumns;
+        final double direct = (double) outputRows * outputColumns * k * k;
+        return BUTTERFLY_COST * butterflies < direct;
+    }
+
+    private static void swap(double[] a, int x, int y, int n)
+    {
+        for(int c=0; c<n; c++)
+        {
+            final double t = a[x + c];
+            a[x + c] = a[y + c];
+            a[y + c] = t;
+        }
+    }
+}
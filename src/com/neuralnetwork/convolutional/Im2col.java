@@ -0,0 +1,166 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.Matrices;
+import com.neuralnetwork.core.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * Lays out the receptive fields of an image as the rows of a patch matrix,
+ * so convolving with any number of kernels is one matrix-matrix product.
+ *
+ * A patch is the sqrtReceptiveFieldSize x sqrtReceptiveFieldSize window in row order,
+ * followed by a 1 for the bias, i.e. the same vector a {@link FeatureMap.ConvolutionFunction}
+ * feeds its neuron one window at a time.
+ */
+final public class Im2col
+{
+    /**
+     * Patch matrices are built a strip of output rows at a time so they stay about this size (in doubles)
+     */
+    static final int STRIP_SIZE = 1 << 15;
+
+    private Im2col() {}
+
+    /**
+     * @param sqrtReceptiveFieldSize width of the window
+     * @return number of columns of a patch matrix (window plus bias)
+     */
+    public static int patchSize(int sqrtReceptiveFieldSize)
+    {
+        return sqrtReceptiveFieldSize * sqrtReceptiveFieldSize + 1;
+    }
+
+    /**
+     * @param channels number of input channels
+     * @param sqrtReceptiveFieldSize width of the window
+     * @return number of columns of a multi-channel patch matrix (the window of every channel, then the bias)
+     */
+    public static int patchSize(int channels, int sqrtReceptiveFieldSize)
+    {
+        return channels * sqrtReceptiveFieldSize * sqrtReceptiveFieldSize + 1;
+    }
+
+    /**
+     * @param inputSize width of the input
+     * @param sqrtReceptiveFieldSize width of the window
+     * @param stride distance between two windows
+     * @param padding number of zeros around the input
+     * @return width of the output
+     */
+    public static int outputSize(int inputSize, int sqrtReceptiveFieldSize, int stride, int padding)
+    {
+        return (inputSize + 2 * padding - sqrtReceptiveFieldSize) / stride + 1;
+    }
+
+    /**
+     * @param outputSize width of the convolution's output
+     * @param patchSize number of columns of the patch matrix
+     * @return number of output rows per strip, so a strip's patch matrix is about #STRIP_SIZE doubles
+     */
+    public static int stripRows(int outputSize, int patchSize)
+    {
+        return Math.max(1, Math.min(outputSize, STRIP_SIZE / (outputSize * patchSize)));
+    }
+
+    /**
+     * Writes the patches of output rows firstRow..firstRow+numberRows-1,
+     * one row of the patch matrix per output pixel, in row order
+     *
+     * @param input square input
+     * @param sqrtReceptiveFieldSize width of the window
+     * @param firstRow first output row
+     * @param numberRows number of output rows
+     * @param aPatches patch matrix, numberRows * outputSize rows of #patchSize columns
+     */
+    public static void patches(Tensor input, int sqrtReceptiveFieldSize, int firstRow, int numberRows, double[] aPatches)
+    {
+        final int outputSize = input.size(0) - sqrtReceptiveFieldSize + 1;
+        final double[] aInput = input.data();
+
+        int pos = 0;
+        for(int i=firstRow; i<firstRow + numberRows; i++)
+            for(int j=0; j<outputSize; j++)
+            {
+                for(int a=i; a<i + sqrtReceptiveFieldSize; a++)
+                {
+                    System.arraycopy(aInput, input.offset(a, j), aPatches, pos, sqrtReceptiveFieldSize);
+                    pos += sqrtReceptiveFieldSize;
+                }
+                aPatches[pos++] = 1;
+            }
+    }
+
+    /**
+     * Multi-channel version of #patches(Tensor, int, int, int, double[]) with a stride and zero padding.
+     * A patch is the window of channel 0 in row order, then the window of channel 1, ..., then a 1 for the bias.
+     * Parts of a window outside the input are 0.
+     *
+     * @param input channels x inputSize x inputSize
+     * @param sqrtReceptiveFieldSize width of the window
+     * @param stride distance between two windows
+     * @param padding number of zeros around the input
+     * @param firstRow first output row
+     * @param numberRows number of output rows
+     * @param aPatches patch matrix, numberRows * #outputSize rows of #patchSize(int, int) columns
+     */
+    public static void patches(Tensor input, int sqrtReceptiveFieldSize, int stride, int padding,
+                               int firstRow, int numberRows, double[] aPatches)
+    {
+        final int inputSize = input.size(1);
+        final double[] aInput = input.data();
+        final int outputSize = outputSize(inputSize, sqrtReceptiveFieldSize, stride, padding);
+
+        int pos = 0;
+        for(int i=firstRow; i<firstRow + numberRows; i++)
+        {
+            final int top = i * stride - padding;
+            for(int j=0; j<outputSize; j++)
+            {
+                final int left = j * stride - padding;
+                //columns of the window inside the input
+                final int lo = Math.max(0, -left);
+                final int hi = Math.min(sqrtReceptiveFieldSize, inputSize - left);
+
+                for(int c=0; c<input.size(0); c++)
+                    for(int a=top; a<top + sqrtReceptiveFieldSize; a++)
+                    {
+                        if (a < 0 || a >= inputSize || lo >= hi)
+                        {
+                            Arrays.fill(aPatches, pos, pos + sqrtReceptiveFieldSize, 0);
+                        }
+                        else
+                        {
+                            Arrays.fill(aPatches, pos, pos + lo, 0);
+                            System.arraycopy(aInput, input.offset(c, a, left + lo), aPatches, pos + lo, hi - lo);
+                            Arrays.fill(aPatches, pos + hi, pos + sqrtReceptiveFieldSize, 0);
+                        }
+                        pos += sqrtReceptiveFieldSize;
+                    }
+                aPatches[pos++] = 1;
+            }
+        }
+    }
+
+    /**
+     * Convolves the patches with every kernel: aFields[kernel * fieldStride + p] = kernel . patch p.
+     * The sums are done in the same order as {@link com.neuralnetwork.core.Neuron#rawoutput}.
+     *
+     * @param aKernels numberKernels x patchSize matrix, one kernel (weights, bias last) per row
+     * @param numberKernels number of kernels
+     * @param aPatches numberPatches x patchSize patch matrix
+     * @param numberPatches number of patches
+     * @param patchSize number of columns of both matrices
+     * @param aFields numberKernels x fieldStride result
+     * @param fieldStride number of columns of aFields, at least numberPatches
+     */
+    public static void convolve(double[] aKernels, int numberKernels,
+                                double[] aPatches, int numberPatches, int patchSize,
+                                double[] aFields, int fieldStride)
+    {
+        Matrices.multiplyTransposed(aKernels, patchSize, numberKernels,
+                                    aPatches, patchSize, numberPatches,
+                                    patchSize,
+                                    aFields, fieldStride);
+    }
+}
@@ -0,0 +1,137 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * Window sums and maxima whose cost doesn't depend on the window size:
+ * a summed-area table (integral image) gives any window sum in 4 reads,
+ * and the van Herk/Gil-Werman algorithm gives sliding maxima in 3 comparisons per element.
+ */
+final public class Pooling
+{
+    private Pooling() {}
+
+    /**
+     * Builds the summed-area table of input rows firstRow..firstRow+numberRows-1:
+     * entry (r, c) of the (numberRows+1) x (columns+1) table is the sum of the input rows firstRow..firstRow+r-1
+     * and columns 0..c-1, so row 0 and column 0 are 0.
+     *
+     * @param input input
+     * @param firstRow first input row
+     * @param numberRows number of input rows
+     * @param aTable at least (numberRows+1) x (columns+1) doubles, row-major
+     */
+    public static void summedAreaTable(Tensor input, int firstRow, int numberRows, double[] aTable)
+    {
+        final double[] aInput = input.data();
+        final int columns = input.size(1);
+        final int width = columns + 1;
+
+        Arrays.fill(aTable, 0, width, 0);
+        for(int r=0; r<numberRows; r++)
+        {
+            final int in = input.offset(firstRow + r);
+            final int row = (r + 1) * width;
+            aTable[row] = 0;
+
+            double rowSum = 0;
+            for(int c=0; c<columns; c++)
+            {
+                rowSum += aInput[in + c];
+                aTable[row + c + 1] = aTable[row - width + c + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * @param aTable summed-area table (see #summedAreaTable)
+     * @param width number of columns of the table (input columns + 1)
+     * @param top first row of the window, relative to the first row of the table
+     * @param left first column of the window
+     * @param size width of the (square) window
+     * @return sum of the window
+     */
+    public static double windowSum(double[] aTable, int width, int top, int left, int size)
+    {
+        final int topLeft = top * width + left;
+        final int bottomLeft = (top + size) * width + left;
+        return aTable[bottomLeft + size] - aTable[topLeft + size] - aTable[bottomLeft] + aTable[topLeft];
+    }
+
+    /**
+     * Maxima of windows of size consecutive elements, stride elements apart,
+     * where an element is a vector of width consecutive doubles (width = 1 for plain values)
+     * and the maximum is taken coordinate by coordinate.
+     * Element x is aIn[inOff + x*inStep .. inOff + x*inStep + width), window w goes to aOut[outOff + w*outStep ..).
+     *
+     * Overlapping windows use van Herk/Gil-Werman: the elements are cut in blocks of size,
+     * and every window is the suffix of a block followed by the prefix of the next one.
+     *
+     * @param aPrefix scratch, at least #scratchSize doubles
+     * @param aSuffix scratch, at least #scratchSize doubles
+     */
+    public static void slidingMax(double[] aIn, int inOff, int inStep, int width,
+                                  int size, int stride, int numberWindows,
+                                  double[] aOut, int outOff, int outStep,
+                                  double[] aPrefix, double[] aSuffix)
+    {
+        if (numberWindows <= 0) return;
+
+        if (stride >= size)
+        {
+            //every element is read at most once anyway
+            for(int w=0; w<numberWindows; w++)
+            {
+                final int out = outOff + w * outStep;
+                System.arraycopy(aIn, inOff + w * stride * inStep, aOut, out, width);
+                for(int x=w * stride + 1; x<w * stride + size; x++)
+                    max(aIn, inOff + x * inStep, aOut, out, aOut, out, width);
+            }
+            return;
+        }
+
+        final int length = (numberWindows - 1) * stride + size;
+        for(int x=0; x<length; x++)
+        {
+            if (x % size == 0)
+                System.arraycopy(aIn, inOff + x * inStep, aPrefix, x * width, width);
+            else
+                max(aIn, inOff + x * inStep, aPrefix, (x - 1) * width, aPrefix, x * width, width);
+        }
+        for(int x=length - 1; x>=0; x--)
+        {
+            if (x % size == size - 1 || x == length - 1)
+                System.arraycopy(aIn, inOff + x * inStep, aSuffix, x * width, width);
+            else
+                max(aIn, inOff + x * inStep, aSuffix, (x + 1) * width, aSuffix, x * width, width);
+        }
+        for(int w=0; w<numberWindows; w++)
+        {
+            final int x = w * stride;
+            max(aSuffix, x * width, aPrefix, (x + size - 1) * width, aOut, outOff + w * outStep, width);
+        }
+    }
+
+    /**
+     * @return number of doubles of each scratch array of #slidingMax
+     */
+    public static int scratchSize(int width, int size, int stride, int numberWindows)
+    {
+        return numberWindows > 0 ? ((numberWindows - 1) * stride + size) * width : 0;
+    }
+
+    /**
+     * aRslt[rsltOff..rsltOff+n) = max(aA[aOff..aOff+n), aB[bOff..bOff+n))
+     */
+    private static void max(double[] aA, int aOff, double[] aB, int bOff, double[] aRslt, int rsltOff, int n)
+    {
+        for(int i=0; i<n; i++)
+        {
+            final double a = aA[aOff + i];
+            final double b = aB[bOff + i];
+            aRslt[rsltOff + i] = a > b ? a : b;
+        }
+    }
+}
@@ -26,6 +26,11 @@ final public class ActivationFunctions
             this.negSlope = -slope;
         }
 
+        public double getSlope()
+        {
+            return slope;
+        }
+
         @Override
         public double apply(double v)
         {
@@ -41,6 +46,36 @@ final public class ActivationFunctions
 
             return ( (slope * exp) / (denom * denom) );
         }
+
+        /**
+         * One exp for both the value and the derivative.
+         * Same results as #apply(double) and #derivative(double).
+         */
+        @Override
+        public void applyWithDerivative(double[] aV, int vOff,
+                                        double[] aValues, int valuesOff,
+                                        double[] aDerivatives, int derivativesOff,
+                                        int n)
+        {
+            for(int i=0; i<n; i++)
+            {
+                aValues[valuesOff + i] = applyWithDerivative(aV[vOff + i], aDerivatives, derivativesOff + i);
+            }
+        }
+
+        /**
+         * @param v value
+         * @param aDerivatives where to store the derivative at v
+         * @param pos where to store it
+         * @return the function at v
+         */
+        protected double applyWithDerivative(double v, double[] aDerivatives, int pos)
+        {
+            final double exp = Math.exp(negSlope * v);
+            final double denom = (1.0 + exp);
+            aDerivatives[pos] = (slope * exp) / (denom * denom);
+            return 1.0 / denom;
+        }
     }
 
     public static class SigmoidUnityFunction extends SigmoidFunction
@@ -66,5 +101,156 @@ final public class ActivationFunctions
             else if (v>15.0) return 0.0;
             return super.derivative(v);
         }
+
+        @Override
+        protected double applyWithDerivative(double v, double[] aDerivatives, int pos)
+        {
+            if (v < -15.0 || v > 15.0)
+            {
+                aDerivatives[pos] = 0.0;
+                return apply(v);
+            }
+            return super.applyWithDerivative(v, aDerivatives, pos);
+        }
+    }
+
+    /**
+     * Sigmoid of the given slope read from precomputed tables with linear interpolation
+     * instead of calling Math.exp.
+     *
+     * Both #apply and #derivative are within maxError of the exact sigmoid everywhere.
+     * Beyond the tables' range the sigmoid saturates: apply returns exactly 0 or 1 and derivative 0,
+     * like the clamps of {@link SigmoidUnityFunction}.
+     */
+    public static class FastSigmoidFunction extends SigmoidFunction
+    {
+        public static final double DEFAULT_MAX_ERROR = 1e-6;
+        /**
+         * Smaller errors need tables of several MB
+         */
+        public static final double MIN_MAX_ERROR = 1e-10;
+        /**
+         * Largest number of entries of a table (8 MB), reached with #MIN_MAX_ERROR at slope 1.
+         * The tables grow like slope / sqrt(max error).
+         */
+        public static final int MAX_TABLE_SIZE = 1 << 20;
+        /**
+         * Maximum of |f''| over the real line for f = sigmoid and f = sigmoid'.
+         * Linear interpolation with step h is then off by at most h^2/8 times this.
+         */
+        private static final double MAX_SECOND_DERIVATIVE = 0.125;
+
+        private final double maxError;
+        /**
+         * The tables cover slope*v in [-range, range]
+         */
+        private final double range;
+        /**
+         * 1 / step of the tables
+         */
+        private final double scale;
+        /**
+         * Index of slope*v = 0 in the tables, so range = center / scale
+         */
+        private final int center;
+        private final double[] aSigmoid;
+        private final double[] aDerivative;
+
+        public FastSigmoidFunction(double slope)
+        {
+            this(slope, DEFAULT_MAX_ERROR);
+        }
+
+        /**
+         * @param slope slope
+         * @param maxError maximum absolute error of #apply and #derivative, at least #MIN_MAX_ERROR
+         * @throws IllegalArgumentException if the tables would have more than #MAX_TABLE_SIZE entries
+         */
+        public FastSigmoidFunction(double slope, double maxError)
+        {
+            super(slope);
+            if (slope <= 0)
+                throw new IllegalArgumentException("slope must be positive");
+            if (maxError < MIN_MAX_ERROR)
+                throw new IllegalArgumentException("max error must be at least "+MIN_MAX_ERROR);
+
+            this.maxError = maxError;
+
+            //the derivative is slope * sigmoid'(slope*v), so the tables need to be slope times finer.
+            //half the error is left to interpolation, half to saturation and rounding
+            final double error = maxError / Math.max(1.0, slope) / 2;
+            this.scale = Math.ceil(1 / Math.sqrt(8 * error / MAX_SECOND_DERIVATIVE));
+            //sigmoid(-range) < error and sigmoid'(range) < error
+            final double center = Math.ceil(Math.log(1 / error) * scale);
+            //one extra entry in case slope*v just under range rounds up to the last index
+            if (2 * center + 2 > MAX_TABLE_SIZE)
+                throw new IllegalArgumentException("slope "+slope+" and max error "+maxError+" need tables of "
+                                                   +(long) (2 * center + 2)+" entries, more than "+MAX_TABLE_SIZE);
+            this.center = (int) center;
+            this.range = center / scale;
+
+            final int size = 2 * this.center + 2;
+            this.aSigmoid = new double[size];
+            this.aDerivative = new double[size];
+            for(int i=0; i<size; i++)
+            {
+                final double x = (i - center) / scale;
+                final double exp = Math.exp(-x);
+                aSigmoid[i] = 1.0 / (1.0 + exp);
+                aDerivative[i] = exp / ((1.0 + exp) * (1.0 + exp));
+            }
+        }
+
+        public double getMaxError()
+        {
+            return maxError;
+        }
+
+        @Override
+        public double apply(double v)
+        {
+            final double x = getSlope() * v;
+            if (x <= -range) return 0.0;
+            if (x >= range) return 1.0;
+            return interpolate(aSigmoid, x);
+        }
+
+        @Override
+        public double derivative(double v)
+        {
+            final double slope = getSlope();
+            final double x = slope * v;
+            if (x <= -range || x >= range) return 0.0;
+            return slope * interpolate(aDerivative, x);
+        }
+
+        /**
+         * Looks the position up once for both tables
+         */
+        @Override
+        protected double applyWithDerivative(double v, double[] aDerivatives, int pos)
+        {
+            final double slope = getSlope();
+            final double x = slope * v;
+            if (x <= -range || x >= range)
+            {
+                aDerivatives[pos] = 0.0;
+                return x <= -range ? 0.0 : 1.0;
+            }
+
+            final double position = x * scale + center;
+            final int i = (int) position;
+            final double fraction = position - i;
+            aDerivatives[pos] = slope * (aDerivative[i] + fraction * (aDerivative[i + 1] - aDerivative[i]));
+            return aSigmoid[i] + fraction * (aSigmoid[i + 1] - aSigmoid[i]);
+        }
+
+        private double interpolate(double[] aTable, double x)
+        {
+            final double position = x * scale + center;
+            final int i = (int) position;
+            final double fraction = position - i;
+            return aTable[i] + fraction * (aTable[i + 1] - aTable[i]);
+        }
     }
 }
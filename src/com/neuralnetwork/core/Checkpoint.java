@@ -0,0 +1,416 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.INeuralNetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary checkpoint of a stack of layers.
+ *
+ * Format (little endian):
+ * <pre>
+ *     int    magic ("MONN")
+ *     int    version
+ *     int    number of layers
+ *     int    bytes per weight: 8 (double) or 4 (float)
+ *     for each layer:
+ *         int    number of neurons
+ *         int    number of weights per neuron (bias last)
+ *         int    activation function id
+ *         double activation function parameter (slope)
+ *         double activation function max error (FastSigmoidFunction, 0 otherwise)
+ *         long   offset of the weight block
+ *     for each layer, starting at a multiple of #ALIGNMENT:
+ *         double[neurons * weights] (or float[]) row-major weight matrix
+ * </pre>
+ *
+ * Float weights (see #save(File, CompiledNetwork.Precision, INeuralNetwork[])) take half the space
+ * and are mapped into a {@link CompiledNetwork.Precision#FLOAT} network.
+ *
+ * #map memory-maps the weight blocks straight into a {@link CompiledNetwork} without copying them,
+ * so a large model is ready as soon as the header is read,
+ * and processes on the same host that map the same file share its pages.
+ *
+ * Layer l must have one weight per neuron of layer l-1 plus the bias; a file that doesn't is rejected when read.
+ */
+final public class Checkpoint
+{
+    static final int MAGIC = 0x4D4F4E4E;
+    static final int VERSION = 1;
+    /**
+     * Weight blocks start at a multiple of this (a cache line)
+     */
+    static final int ALIGNMENT = 64;
+
+    static final int HEADER_SIZE = 4 * 4;
+    static final int LAYER_HEADER_SIZE = 3 * 4 + 8 + 8 + 8;
+
+    /**
+     * Activation function ids
+     */
+    static final int THRESHOLD = 0;
+    static final int SIGMOID = 1;
+    static final int SIGMOID_UNITY = 2;
+    static final int FAST_SIGMOID = 3;
+
+    private Checkpoint() {}
+
+    /**
+     * Shape and activation function of a layer, as stored in the header
+     */
+    static class LayerHeader
+    {
+        int numberOfNeurons;
+        int numberOfWeights;
+        int activationId;
+        double activationParam;
+        double activationMaxError;
+        long offset;
+        /**
+         * From the file header: 8 for doubles, 4 for floats
+         */
+        int bytesPerWeight;
+
+        long numberOfBytes()
+        {
+            return (long) numberOfNeurons * numberOfWeights * bytesPerWeight;
+        }
+    }
+
+    public static void save(File file, MultiLayerNetwork network) throws IOException
+    {
+        save(file, CompiledNetwork.Precision.DOUBLE, network);
+    }
+
+    /**
+     * @param file file to write
+     * @param precision how to store the weights
+     * @param network network
+     */
+    public static void save(File file, CompiledNetwork.Precision precision, MultiLayerNetwork network) throws IOException
+    {
+        INeuralNetwork<?,?>[] aNetworks = new INeuralNetwork<?,?>[network.numberLayers];
+        for(int i=0; i<network.numberLayers; i++)
+            aNetworks[i] = network.aLayers[i].layer;
+        save(file, precision, aNetworks);
+    }
+
+    /**
+     * Saves the weights in double precision
+     *
+     * @param file file to write
+     * @param aLayers layers, from input to output.
+     *                All neurons of a layer must have the same number of weights and activation function.
+     */
+    public static void save(File file, INeuralNetwork<?,?>... aLayers) throws IOException
+    {
+        save(file, CompiledNetwork.Precision.DOUBLE, aLayers);
+    }
+
+    /**
+     * @param file file to write
+     * @param precision how to store the weights, FLOAT rounds them and halves the file
+     * @param aLayers layers, from input to output.
+     *                All neurons of a layer must have the same number of weights and activation function.
+     */
+    public static void save(File file, CompiledNetwork.Precision precision, INeuralNetwork<?,?>... aLayers) throws IOException
+    {
+        if (aLayers.length == 0)
+            throw new IllegalArgumentException("need at least one layer");
+        final int bytesPerWeight = precision == CompiledNetwork.Precision.FLOAT ? 4 : 8;
+
+        LayerHeader[] aHeaders = new LayerHeader[aLayers.length];
+        long offset = align(HEADER_SIZE + (long) aLayers.length * LAYER_HEADER_SIZE);
+
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            final INeuralNetwork<?,?> network = aLayers[layer];
+            final LayerHeader header = new LayerHeader();
+            final IActivationFunction phi = network.getNeuron(0).phi();
+
+            header.numberOfNeurons = network.getNumberOfNeurons();
+            header.numberOfWeights = network.getNeuron(0).getNumberOfWeights();
+            header.activationId = activationId(phi);
+            header.activationParam = activationParam(phi);
+            header.activationMaxError = activationMaxError(phi);
+            header.offset = offset;
+            header.bytesPerWeight = bytesPerWeight;
+
+            if (layer > 0 && header.numberOfWeights != aHeaders[layer - 1].numberOfNeurons + 1)
+                throw new IllegalArgumentException("layer "+layer+" must have one weight per neuron of the previous layer plus a bias");
+            for(int k=0; k<header.numberOfNeurons; k++)
+            {
+                final Neuron neuron = network.getNeuron(k);
+                if (neuron.getNumberOfWeights() != header.numberOfWeights)
+                    throw new IllegalArgumentException("all neurons in a layer must have the same number of weights");
+                if (!sameActivation(neuron.phi(), phi))
+                    throw new IllegalArgumentException("all neurons in a layer must have the same activation function");
+            }
+
+            aHeaders[layer] = header;
+            offset = align(offset + header.numberOfBytes());
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) aHeaders[0].offset).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(aLayers.length).putInt(bytesPerWeight);
+            for(LayerHeader header:aHeaders)
+            {
+                buffer.putInt(header.numberOfNeurons)
+                      .putInt(header.numberOfWeights)
+                      .putInt(header.activationId)
+                      .putDouble(header.activationParam)
+                      .putDouble(header.activationMaxError)
+                      .putLong(header.offset);
+            }
+            buffer.rewind();
+            FileChannels.writeFully(channel, buffer, 0);
+
+            for(int layer=0; layer<aLayers.length; layer++)
+            {
+                final LayerHeader header = aHeaders[layer];
+                buffer = ByteBuffer.allocate(header.numberOfWeights * bytesPerWeight).order(ByteOrder.LITTLE_ENDIAN);
+                long position = header.offset;
+
+                for(int k=0; k<header.numberOfNeurons; k++)
+                {
+                    final Neuron neuron = aLayers[layer].getNeuron(k);
+                    buffer.clear();
+                    if (bytesPerWeight == 8)
+                    {
+                        buffer.asDoubleBuffer().put(neuron.aWeights, neuron.offset, header.numberOfWeights);
+                    }
+                    else
+                    {
+                        final FloatBuffer floats = buffer.asFloatBuffer();
+                        for(int j=0; j<header.numberOfWeights; j++)
+                            floats.put((float) neuron.aWeights[neuron.offset + j]);
+                    }
+                    FileChannels.writeFully(channel, buffer, position);
+                    position += buffer.capacity();
+                }
+            }
+
+            //pad the last block
+            FileChannels.writeFully(channel, ByteBuffer.allocate((int) (offset - channel.size())), channel.size());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the checkpoint into trainable layers (the weights are copied to the heap, float weights widened to double)
+     *
+     * @param file checkpoint
+     * @return layers, from input to output
+     */
+    public static SingleLayerNeuralNetwork[] load(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            final LayerHeader[] aHeaders = readHeaders(channel);
+
+            SingleLayerNeuralNetwork[] aLayers = new SingleLayerNeuralNetwork[aHeaders.length];
+            for(int layer=0; layer<aHeaders.length; layer++)
+            {
+                final LayerHeader header = aHeaders[layer];
+                final IActivationFunction phi = activationFunction(header);
+                final ByteBuffer weights = mapWeights(channel, header);
+                final DoubleBuffer doubles = weights.asDoubleBuffer();
+                final FloatBuffer floats = weights.asFloatBuffer();
+
+                Neuron[] aNeurons = new Neuron[header.numberOfNeurons];
+                for(int k=0; k<aNeurons.length; k++)
+                {
+                    double[] aWeights = new double[header.numberOfWeights];
+                    if (header.bytesPerWeight == 8)
+                        doubles.get(aWeights);
+                    else
+                        for(int j=0; j<aWeights.length; j++)
+                            aWeights[j] = floats.get();
+                    aNeurons[k] = new Neuron(phi, aWeights);
+                }
+
+                aLayers[layer] = new SingleLayerNeuralNetwork();
+                aLayers[layer].setNeurons(aNeurons);
+            }
+            return aLayers;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Memory-maps the checkpoint into a read-only network without copying the weights
+     *
+     * @param file checkpoint
+     * @return compiled network backed by the file, of the precision the weights were saved in
+     */
+    public static CompiledNetwork map(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            final LayerHeader[] aHeaders = readHeaders(channel);
+
+            final int[] aNumberOfNeurons = new int[aHeaders.length];
+            final int[] aNumberOfWeights = new int[aHeaders.length];
+            final IActivationFunction[][] aPhi = new IActivationFunction[aHeaders.length][];
+            final ByteBuffer[] aWeights = new ByteBuffer[aHeaders.length];
+
+            for(int layer=0; layer<aHeaders.length; layer++)
+            {
+                final LayerHeader header = aHeaders[layer];
+                aNumberOfNeurons[layer] = header.numberOfNeurons;
+                aNumberOfWeights[layer] = header.numberOfWeights;
+                aPhi[layer] = new IActivationFunction[header.numberOfNeurons];
+                final IActivationFunction phi = activationFunction(header);
+                for(int k=0; k<header.numberOfNeurons; k++)
+                    aPhi[layer][k] = phi;
+                aWeights[layer] = mapWeights(channel, header);
+            }
+
+            //the mappings stay valid after the channel is closed
+            if (aHeaders[0].bytesPerWeight == 4)
+            {
+                final FloatBuffer[] aFloatWeights = new FloatBuffer[aWeights.length];
+                for(int layer=0; layer<aWeights.length; layer++)
+                    aFloatWeights[layer] = aWeights[layer].asFloatBuffer();
+                return new CompiledNetwork(aNumberOfNeurons, aNumberOfWeights, aPhi, aFloatWeights);
+            }
+            final DoubleBuffer[] aDoubleWeights = new DoubleBuffer[aWeights.length];
+            for(int layer=0; layer<aWeights.length; layer++)
+                aDoubleWeights[layer] = aWeights[layer].asDoubleBuffer();
+            return new CompiledNetwork(aNumberOfNeurons, aNumberOfWeights, aPhi, aDoubleWeights);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static LayerHeader[] readHeaders(FileChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        FileChannels.readFully(channel, buffer, 0);
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("not a checkpoint");
+        final int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("unsupported checkpoint version "+version);
+        final int numberLayers = buffer.getInt();
+        final int bytesPerWeight = buffer.getInt();
+        if (bytesPerWeight != 8 && bytesPerWeight != 4)
+            throw new IOException("corrupt checkpoint: bad number of bytes per weight "+bytesPerWeight);
+
+        if (numberLayers <= 0 || HEADER_SIZE + (long) numberLayers * LAYER_HEADER_SIZE > channel.size())
+            throw new IOException("corrupt checkpoint: bad number of layers "+numberLayers);
+
+        buffer = ByteBuffer.allocate(numberLayers * LAYER_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        FileChannels.readFully(channel, buffer, HEADER_SIZE);
+
+        LayerHeader[] aHeaders = new LayerHeader[numberLayers];
+        for(int layer=0; layer<numberLayers; layer++)
+        {
+            LayerHeader header = new LayerHeader();
+            header.numberOfNeurons = buffer.getInt();
+            header.numberOfWeights = buffer.getInt();
+            header.activationId = buffer.getInt();
+            header.activationParam = buffer.getDouble();
+            header.activationMaxError = buffer.getDouble();
+            header.offset = buffer.getLong();
+            header.bytesPerWeight = bytesPerWeight;
+
+            if (header.numberOfNeurons <= 0 || header.numberOfWeights <= 0)
+                throw new IOException("corrupt checkpoint: bad shape for layer "+layer);
+            if (layer > 0 && header.numberOfWeights != aHeaders[layer - 1].numberOfNeurons + 1)
+                throw new IOException("corrupt checkpoint: layer "+layer+" has "+header.numberOfWeights+" weights per neuron"
+                        + " but the previous layer has "+aHeaders[layer - 1].numberOfNeurons+" neurons");
+            if (header.offset % ALIGNMENT != 0 || header.offset + header.numberOfBytes() > channel.size())
+                throw new IOException("corrupt checkpoint: bad weight block for layer "+layer);
+            aHeaders[layer] = header;
+        }
+        return aHeaders;
+    }
+
+    private static ByteBuffer mapWeights(FileChannel channel, LayerHeader header) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, header.offset, header.numberOfBytes())
+                      .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static int activationId(IActivationFunction phi)
+    {
+        if (phi.getClass() == ActivationFunctions.SigmoidUnityFunction.class) return SIGMOID_UNITY;
+        if (phi.getClass() == ActivationFunctions.FastSigmoidFunction.class) return FAST_SIGMOID;
+        if (phi.getClass() == ActivationFunctions.SigmoidFunction.class) return SIGMOID;
+        if (phi.getClass() == ActivationFunctions.ThresholdFunction.class) return THRESHOLD;
+        throw new IllegalArgumentException("can't save activation function "+phi.getClass().getName());
+    }
+
+    static double activationParam(IActivationFunction phi)
+    {
+        return phi instanceof ActivationFunctions.SigmoidFunction ? ((ActivationFunctions.SigmoidFunction) phi).getSlope() : 0;
+    }
+
+    static double activationMaxError(IActivationFunction phi)
+    {
+        return phi instanceof ActivationFunctions.FastSigmoidFunction ? ((ActivationFunctions.FastSigmoidFunction) phi).getMaxError() : 0;
+    }
+
+    /**
+     * @return whether both functions save to the same id and parameters, even if they're different objects
+     */
+    static boolean sameActivation(IActivationFunction phi, IActivationFunction other)
+    {
+        return phi == other
+                || activationId(phi) == activationId(other)
+                   && activationParam(phi) == activationParam(other)
+                   && activationMaxError(phi) == activationMaxError(other);
+    }
+
+    static IActivationFunction activationFunction(LayerHeader header) throws IOException
+    {
+        switch(header.activationId)
+        {
+            case THRESHOLD: return new ActivationFunctions.ThresholdFunction();
+            case SIGMOID: return new ActivationFunctions.SigmoidFunction(header.activationParam);
+            case SIGMOID_UNITY: return new ActivationFunctions.SigmoidUnityFunction();
+            case FAST_SIGMOID:
+                try
+                {
+                    return new ActivationFunctions.FastSigmoidFunction(header.activationParam, header.activationMaxError);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IOException("corrupt checkpoint: "+e.getMessage());
+                }
+            default: throw new IOException("unknown activation function id "+header.activationId);
+        }
+    }
+
+    private static long align(long position)
+    {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,294 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.INeuralNetwork;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Immutable, thread-safe snapshot of a stack of layers used for inference only.
+ *
+ * The weights are copied when the network is compiled and never change afterwards.
+ * All mutable state lives in a {@link Scratch}, so any number of threads can call #output
+ * at the same time without locking, as long as each uses its own scratch.
+ *
+ * The weights can be stored in double or single precision (see {@link Precision}),
+ * or be memory-mapped from a {@link Checkpoint}.
+ */
+final public class CompiledNetwork
+{
+    public enum Precision
+    {
+        DOUBLE,
+        /**
+         * Weights are stored as floats, which halves their memory.
+         * Sums are still accumulated in double.
+         */
+        FLOAT
+    }
+
+    private final Precision precision;
+    /**
+     * aWeights[l] is layer l's row-major weight matrix. Row k holds neuron k's weights (bias last).
+     * Either a wrapped heap array or a read-only view of a memory-mapped {@link Checkpoint}.
+     * Null if the precision is FLOAT.
+     */
+    private final DoubleBuffer[] aWeights;
+    /**
+     * Same as #aWeights but in single precision. Null if the precision is DOUBLE.
+     */
+    private final FloatBuffer[] aFloatWeights;
+    /**
+     * aPhi[l][k] is the activation function of neuron k of layer l
+     */
+    private final IActivationFunction[][] aPhi;
+    private final int[] aNumberOfNeurons;
+    private final int[] aNumberOfWeights;
+
+    private final ThreadLocal<Scratch> threadScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue()
+        {
+            return newScratch();
+        }
+    };
+
+    /**
+     * Per-call or per-thread buffers.
+     * aInputs[l] is layer l's input with the bias (1) tacked on at the end.
+     * aOutput is the last layer's output.
+     */
+    final public class Scratch
+    {
+        private final double[][] aInputs;
+        private final double[] aOutput;
+
+        private Scratch()
+        {
+            final int numberLayers = aNumberOfWeights.length;
+            aInputs = new double[numberLayers][];
+            for(int layer=0; layer<numberLayers; layer++)
+            {
+                aInputs[layer] = new double[aNumberOfWeights[layer]];
+                aInputs[layer][aNumberOfWeights[layer] - 1] = 1f;
+            }
+            aOutput = new double[getOutputSize()];
+        }
+    }
+
+    private CompiledNetwork(Precision precision, INeuralNetwork<?,?>... aLayers)
+    {
+        final int numberLayers = aLayers.length;
+        this.precision = precision;
+        aWeights = precision == Precision.DOUBLE ? new DoubleBuffer[numberLayers] : null;
+        aFloatWeights = precision == Precision.FLOAT ? new FloatBuffer[numberLayers] : null;
+        aPhi = new IActivationFunction[numberLayers][];
+        aNumberOfNeurons = new int[numberLayers];
+        aNumberOfWeights = new int[numberLayers];
+
+        for(int layer=0; layer<numberLayers; layer++)
+        {
+            final INeuralNetwork<?,?> network = aLayers[layer];
+            final int numberOfNeurons = network.getNumberOfNeurons();
+            final int numberOfWeights = network.getNeuron(0).getNumberOfWeights();
+
+            if (layer > 0 && numberOfWeights != aNumberOfNeurons[layer - 1] + 1)
+                throw new IllegalArgumentException("layer "+layer+" must have one weight per neuron of the previous layer plus a bias");
+
+            aNumberOfNeurons[layer] = numberOfNeurons;
+            aNumberOfWeights[layer] = numberOfWeights;
+            final double[] aLayerWeights = aWeights != null ? new double[numberOfNeurons * numberOfWeights] : null;
+            final float[] aLayerFloatWeights = aFloatWeights != null ? new float[numberOfNeurons * numberOfWeights] : null;
+            aPhi[layer] = new IActivationFunction[numberOfNeurons];
+
+            for(int k=0; k<numberOfNeurons; k++)
+            {
+                final Neuron neuron = network.getNeuron(k);
+                if (neuron.getNumberOfWeights() != numberOfWeights)
+                    throw new IllegalArgumentException("all neurons in a layer must have the same number of weights");
+
+                for(int j=0; j<numberOfWeights; j++)
+                {
+                    if (aLayerWeights != null) aLayerWeights[k * numberOfWeights + j] = neuron.getWeight(j);
+                    if (aLayerFloatWeights != null) aLayerFloatWeights[k * numberOfWeights + j] = (float) neuron.getWeight(j);
+                }
+                aPhi[layer][k] = neuron.phi();
+            }
+
+            if (aWeights != null) aWeights[layer] = DoubleBuffer.wrap(aLayerWeights);
+            if (aFloatWeights != null) aFloatWeights[layer] = FloatBuffer.wrap(aLayerFloatWeights);
+        }
+    }
+
+    /**
+     * Wraps weights that were memory-mapped by {@link Checkpoint#map}
+     */
+    CompiledNetwork(int[] aNumberOfNeurons, int[] aNumberOfWeights, IActivationFunction[][] aPhi, DoubleBuffer[] aMappedWeights)
+    {
+        this.precision = Precision.DOUBLE;
+        this.aWeights = aMappedWeights;
+        this.aFloatWeights = null;
+        this.aPhi = aPhi;
+        this.aNumberOfNeurons = aNumberOfNeurons;
+        this.aNumberOfWeights = aNumberOfWeights;
+    }
+
+    /**
+     * Wraps single-precision weights that were memory-mapped by {@link Checkpoint#map}
+     */
+    CompiledNetwork(int[] aNumberOfNeurons, int[] aNumberOfWeights, IActivationFunction[][] aPhi, FloatBuffer[] aMappedFloatWeights)
+    {
+        this.precision = Precision.FLOAT;
+        this.aWeights = null;
+        this.aFloatWeights = aMappedFloatWeights;
+        this.aPhi = aPhi;
+        this.aNumberOfNeurons = aNumberOfNeurons;
+        this.aNumberOfWeights = aNumberOfWeights;
+    }
+
+    /**
+     * Compiles the given stack of layers in double precision.
+     * Later changes to the layers' weights don't affect the compiled network.
+     *
+     * @param aLayers layers, from input to output
+     * @return compiled network
+     */
+    public static CompiledNetwork compile(INeuralNetwork<?,?>... aLayers)
+    {
+        return compile(Precision.DOUBLE, aLayers);
+    }
+
+    /**
+     * Compiles the given stack of layers.
+     * Later changes to the layers' weights don't affect the compiled network.
+     *
+     * @param precision how to store the weights
+     * @param aLayers layers, from input to output
+     * @return compiled network
+     */
+    public static CompiledNetwork compile(Precision precision, INeuralNetwork<?,?>... aLayers)
+    {
+        if (aLayers.length == 0)
+            throw new IllegalArgumentException("need at least one layer");
+        return new CompiledNetwork(precision, aLayers);
+    }
+
+    public Scratch newScratch()
+    {
+        return new Scratch();
+    }
+
+    public Precision getPrecision() { return precision; }
+
+    public int getInputSize() { return aNumberOfWeights[0] - 1; }
+
+    public int getOutputSize() { return aNumberOfNeurons[aNumberOfNeurons.length - 1]; }
+
+    /**
+     * Thread-safe. Allocates the output; uses a scratch per thread.
+     *
+     * @param input input
+     * @return output
+     */
+    public NVector output(NVector input)
+    {
+        return output(input, new NVector().setSize(getOutputSize()), threadScratch.get());
+    }
+
+    /**
+     * Thread-safe as long as no other thread is using the same scratch or output.
+     * Doesn't allocate anything.
+     *
+     * @param input input
+     * @param vOutput where to store the output
+     * @param scratch scratch
+     * @return vOutput
+     */
+    public NVector output(NVector input, NVector vOutput, Scratch scratch)
+    {
+        if (input.size() != getInputSize())
+            throw new IllegalArgumentException("input size must be the number of weights minus the bias");
+
+        System.arraycopy(input.aCoords, 0, scratch.aInputs[0], 0, input.size());
+        output(scratch);
+        System.arraycopy(scratch.aOutput, 0, vOutput.aCoords, 0, scratch.aOutput.length);
+        return vOutput;
+    }
+
+    /**
+     * Single-precision version of #output(NVector, NVector, Scratch)
+     *
+     * @param input input
+     * @param vOutput where to store the output
+     * @param scratch scratch
+     * @return vOutput
+     */
+    public FVector output(FVector input, FVector vOutput, Scratch scratch)
+    {
+        if (input.size() != getInputSize())
+            throw new IllegalArgumentException("input size must be the number of weights minus the bias");
+
+        final double[] aInput = scratch.aInputs[0];
+        for(int j=0; j<input.size(); j++)
+            aInput[j] = input.aCoords[j];
+
+        output(scratch);
+
+        for(int k=0; k<scratch.aOutput.length; k++)
+            vOutput.aCoords[k] = (float) scratch.aOutput[k];
+        return vOutput;
+    }
+
+    /**
+     * Runs the layers on scratch.aInputs[0] and stores the result in scratch.aOutput
+     */
+    private void output(Scratch scratch)
+    {
+        final int lastLayer = aNumberOfWeights.length - 1;
+        for(int layer=0; layer<=lastLayer; layer++)
+        {
+            final double[] aOutput = layer < lastLayer ? scratch.aInputs[layer + 1] : scratch.aOutput;
+
+            if (aFloatWeights != null)
+                layerOutput(aFloatWeights[layer], layer, scratch.aInputs[layer], aOutput);
+            else
+                layerOutput(aWeights[layer], layer, scratch.aInputs[layer], aOutput);
+        }
+    }
+
+    /**
+     * The layer math, the same for heap and memory-mapped weights
+     */
+    private void layerOutput(DoubleBuffer layerWeights, int layer, double[] aInput, double[] aOutput)
+    {
+        final IActivationFunction[] aLayerPhi = aPhi[layer];
+        final int numberOfWeights = aNumberOfWeights[layer];
+
+        for(int k=0, row=0; k<aNumberOfNeurons[layer]; k++, row+=numberOfWeights)
+        {
+            double rslt = 0;
+            for(int j=0; j<numberOfWeights; j++)
+                rslt += layerWeights.get(row + j) * aInput[j];
+            aOutput[k] = aLayerPhi[k].apply(rslt);
+        }
+    }
+
+    /**
+     * Single-precision version of #layerOutput(DoubleBuffer, int, double[], double[]):
+     * the weights are widened, the sums accumulated in double
+     */
+    private void layerOutput(FloatBuffer layerWeights, int layer, double[] aInput, double[] aOutput)
+    {
+        final IActivationFunction[] aLayerPhi = aPhi[layer];
+        final int numberOfWeights = aNumberOfWeights[layer];
+
+        for(int k=0, row=0; k<aNumberOfNeurons[layer]; k++, row+=numberOfWeights)
+        {
+            double rslt = 0;
+            for(int j=0; j<numberOfWeights; j++)
+                rslt += layerWeights.get(row + j) * aInput[j];
+            aOutput[k] = aLayerPhi[k].apply(rslt);
+        }
+    }
+}
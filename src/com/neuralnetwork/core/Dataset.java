@@ -0,0 +1,313 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IExampleSource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary data set of training examples with fixed-stride rows.
+ *
+ * Format (little endian):
+ * <pre>
+ *     int    magic ("MOND")
+ *     int    version
+ *     int    input size
+ *     int    expected output size
+ *     long   number of examples
+ *     int    bytes per value: 8 (double) or 4 (float)
+ *     padding up to #HEADER_SIZE
+ *     for each example:
+ *         double[input size]           input (or float[])
+ *         double[expected output size] expected output (or float[])
+ * </pre>
+ *
+ * Float rows take half the space and half the page cache, and are widened to double as they're read.
+ *
+ * A {@link MappedSource} memory-maps the rows, so a data set much bigger than the heap
+ * costs no objects per example and the OS page cache does the buffering.
+ */
+final public class Dataset
+{
+    static final int MAGIC = 0x4D4F4E44;
+    static final int VERSION = 1;
+    /**
+     * Rows start here (a cache line)
+     */
+    static final int HEADER_SIZE = 64;
+
+    private Dataset() {}
+
+    /**
+     * Writes all the examples of one epoch of a source
+     *
+     * @param file file to write
+     * @param source examples
+     * @return number of examples written
+     */
+    public static long write(File file, IExampleSource source) throws IOException
+    {
+        return write(file, source, CompiledNetwork.Precision.DOUBLE);
+    }
+
+    /**
+     * Writes all the examples of one epoch of a source
+     *
+     * @param file file to write
+     * @param source examples
+     * @param precision how to store the values, FLOAT rounds them
+     * @return number of examples written
+     */
+    public static long write(File file, IExampleSource source, CompiledNetwork.Precision precision) throws IOException
+    {
+        NVector vInput = new NVector().setSize(source.getInputSize());
+        NVector vExpected = new NVector().setSize(source.getExpectedSize());
+
+        Writer writer = new Writer(file, source.getInputSize(), source.getExpectedSize(), precision);
+        try
+        {
+            source.startEpoch(1);
+            while(source.next(vInput, vExpected))
+                writer.append(vInput, vExpected);
+        }
+        finally
+        {
+            writer.close();
+        }
+        return writer.numberExamples;
+    }
+
+    /**
+     * Appends examples one at a time; the header is completed by #close
+     */
+    public static class Writer implements Closeable
+    {
+        /**
+         * Rows are buffered up to this many bytes before being written
+         */
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final int inputSize;
+        private final int expectedSize;
+        private final int bytesPerValue;
+        private final ByteBuffer buffer;
+        private final DoubleBuffer doubles;
+        private final FloatBuffer floats;
+        private long position = HEADER_SIZE;
+        private long numberExamples;
+
+        public Writer(File file, int inputSize, int expectedSize) throws IOException
+        {
+            this(file, inputSize, expectedSize, CompiledNetwork.Precision.DOUBLE);
+        }
+
+        /**
+         * @param precision how to store the values, FLOAT rounds them
+         */
+        public Writer(File file, int inputSize, int expectedSize, CompiledNetwork.Precision precision) throws IOException
+        {
+            if (inputSize <= 0 || expectedSize <= 0)
+                throw new IllegalArgumentException("sizes must be positive");
+
+            this.inputSize = inputSize;
+            this.expectedSize = expectedSize;
+            this.bytesPerValue = precision == CompiledNetwork.Precision.FLOAT ? 4 : 8;
+            final int rowSize = (inputSize + expectedSize) * bytesPerValue;
+            this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE / rowSize, 1) * rowSize).order(ByteOrder.LITTLE_ENDIAN);
+            this.doubles = buffer.asDoubleBuffer();
+            this.floats = buffer.asFloatBuffer();
+
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            channel.truncate(0);
+        }
+
+        public void append(NVector vInput, NVector vExpected) throws IOException
+        {
+            if (vInput.size() != inputSize || vExpected.size() != expectedSize)
+                throw new IllegalArgumentException("example doesn't match the data set sizes");
+
+            if (bytesPerValue == 8)
+            {
+                if (doubles.remaining() < inputSize + expectedSize)
+                    flush();
+                doubles.put(vInput.aCoords).put(vExpected.aCoords);
+            }
+            else
+            {
+                if (floats.remaining() < inputSize + expectedSize)
+                    flush();
+                for(int i=0; i<inputSize; i++)
+                    floats.put((float) vInput.aCoords[i]);
+                for(int i=0; i<expectedSize; i++)
+                    floats.put((float) vExpected.aCoords[i]);
+            }
+            numberExamples++;
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.position(0).limit(bytesPerValue == 8 ? doubles.position() * 8 : floats.position() * 4);
+            FileChannels.writeFully(channel, buffer, position);
+            position += buffer.limit();
+            buffer.clear();
+            doubles.clear();
+            floats.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(inputSize).putInt(expectedSize).putLong(numberExamples)
+                      .putInt(bytesPerValue);
+                header.rewind();
+                FileChannels.writeFully(channel, header, 0);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the examples straight from a memory-mapped data set file.
+     *
+     * Rows are copied into the caller's vectors with a bulk get,
+     * nothing is allocated per example.
+     * Files over 2GB are mapped as several segments of whole rows.
+     *
+     * @warning not thread safe, each thread needs its own source
+     */
+    public static class MappedSource implements IExampleSource
+    {
+        private final int inputSize;
+        private final int expectedSize;
+        private final long numberExamples;
+        private final int examplesPerSegment;
+        /**
+         * One of them is null, depending on the precision of the file
+         */
+        private final DoubleBuffer[] aSegments;
+        private final FloatBuffer[] aFloatSegments;
+        /**
+         * A float row, widened into the caller's vectors
+         */
+        private final float[] aRow;
+        private long next;
+
+        public MappedSource(File file) throws IOException
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                final FileChannel channel = raf.getChannel();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                FileChannels.readFully(channel, header, 0);
+                if (header.getInt() != MAGIC)
+                    throw new IOException("not a data set");
+                final int version = header.getInt();
+                if (version != VERSION)
+                    throw new IOException("unsupported data set version "+version);
+                inputSize = header.getInt();
+                expectedSize = header.getInt();
+                numberExamples = header.getLong();
+                final int bytesPerValue = header.getInt();
+                if (bytesPerValue != 8 && bytesPerValue != 4)
+                    throw new IOException("corrupt data set: bad number of bytes per value "+bytesPerValue);
+
+                final long rowSize = (long) (inputSize + expectedSize) * bytesPerValue;
+                if (inputSize <= 0 || expectedSize <= 0 || numberExamples < 0
+                        || HEADER_SIZE + numberExamples * rowSize > channel.size())
+                    throw new IOException("corrupt data set");
+
+                examplesPerSegment = (int) Math.min(Integer.MAX_VALUE / rowSize, Math.max(numberExamples, 1));
+                final int numberSegments = (int) ((numberExamples + examplesPerSegment - 1) / examplesPerSegment);
+                aSegments = bytesPerValue == 8 ? new DoubleBuffer[numberSegments] : null;
+                aFloatSegments = bytesPerValue == 4 ? new FloatBuffer[numberSegments] : null;
+                aRow = bytesPerValue == 4 ? new float[inputSize + expectedSize] : null;
+                for(int segment=0; segment<numberSegments; segment++)
+                {
+                    final long first = (long) segment * examplesPerSegment;
+                    final long count = Math.min(examplesPerSegment, numberExamples - first);
+                    final ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * rowSize, count * rowSize)
+                                                    .order(ByteOrder.LITTLE_ENDIAN);
+                    if (aSegments != null) aSegments[segment] = bytes.asDoubleBuffer();
+                    else aFloatSegments[segment] = bytes.asFloatBuffer();
+                }
+            }
+            finally
+            {
+                //the mappings stay valid after the channel is closed
+                raf.close();
+            }
+        }
+
+        @Override
+        public void startEpoch(int epoch)
+        {
+            next = 0;
+        }
+
+        @Override
+        public boolean next(NVector vInput, NVector vExpected)
+        {
+            if (next >= numberExamples) return false;
+            read(next++, vInput, vExpected);
+            return true;
+        }
+
+        /**
+         * Random access to an example
+         *
+         * @param example example number, from 0 to #getNumberOfExamples()-1
+         * @param vInput where to store the input
+         * @param vExpected where to store the expected output
+         */
+        public void read(long example, NVector vInput, NVector vExpected)
+        {
+            if (example < 0 || example >= numberExamples)
+                throw new IllegalArgumentException("no example "+example);
+
+            final int segment = (int) (example / examplesPerSegment);
+            final int row = (int) (example % examplesPerSegment) * (inputSize + expectedSize);
+            if (aSegments != null)
+            {
+                aSegments[segment].position(row);
+                aSegments[segment].get(vInput.aCoords, 0, inputSize);
+                aSegments[segment].get(vExpected.aCoords, 0, expectedSize);
+                return;
+            }
+
+            aFloatSegments[segment].position(row);
+            aFloatSegments[segment].get(aRow);
+            for(int i=0; i<inputSize; i++)
+                vInput.aCoords[i] = aRow[i];
+            for(int i=0; i<expectedSize; i++)
+                vExpected.aCoords[i] = aRow[inputSize + i];
+        }
+
+        public long getNumberOfExamples() { return numberExamples; }
+
+        @Override
+        public int getInputSize() { return inputSize; }
+
+        @Override
+        public int getExpectedSize() { return expectedSize; }
+    }
+}
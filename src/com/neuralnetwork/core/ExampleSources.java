@@ -0,0 +1,254 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IExampleSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+final public class ExampleSources
+{
+    private ExampleSources() {}
+
+    /**
+     * Examples that are already in memory, in the same (input, expected) pairs
+     * that {@link MultiLayerNetwork#backpropagation(double, NVector...)} takes
+     */
+    public static class ArraySource implements IExampleSource
+    {
+        private final NVector[] aInputExpected;
+        private int next;
+
+        public ArraySource(NVector... aInputExpected)
+        {
+            if (aInputExpected.length == 0 || aInputExpected.length % 2 != 0)
+                throw new IllegalArgumentException();
+            this.aInputExpected = aInputExpected;
+        }
+
+        @Override
+        public void startEpoch(int epoch)
+        {
+            next = 0;
+        }
+
+        @Override
+        public boolean next(NVector vInput, NVector vExpected)
+        {
+            if (next >= aInputExpected.length) return false;
+            vInput.set(aInputExpected[next++]);
+            vExpected.set(aInputExpected[next++]);
+            return true;
+        }
+
+        @Override
+        public int getInputSize() { return aInputExpected[0].size(); }
+
+        @Override
+        public int getExpectedSize() { return aInputExpected[1].size(); }
+    }
+
+    /**
+     * Computes the examples on the fly
+     */
+    public static abstract class GeneratorSource implements IExampleSource
+    {
+        private final long examplesPerEpoch;
+        private final int inputSize;
+        private final int expectedSize;
+        private int epoch;
+        private long next;
+
+        protected GeneratorSource(long examplesPerEpoch, int inputSize, int expectedSize)
+        {
+            this.examplesPerEpoch = examplesPerEpoch;
+            this.inputSize = inputSize;
+            this.expectedSize = expectedSize;
+        }
+
+        /**
+         * Computes the given example
+         *
+         * @param epoch current epoch
+         * @param example example number within the epoch
+         * @param vInput where to store the input
+         * @param vExpected where to store the expected output
+         */
+        abstract protected void generate(int epoch, long example, NVector vInput, NVector vExpected);
+
+        @Override
+        public void startEpoch(int epoch)
+        {
+            this.epoch = epoch;
+            this.next = 0;
+        }
+
+        @Override
+        public boolean next(NVector vInput, NVector vExpected)
+        {
+            if (next >= examplesPerEpoch) return false;
+            generate(epoch, next++, vInput, vExpected);
+            return true;
+        }
+
+        @Override
+        public int getInputSize() { return inputSize; }
+
+        @Override
+        public int getExpectedSize() { return expectedSize; }
+    }
+
+    /**
+     * Reads the examples from a text file, one per line:
+     * the input coordinates followed by the expected coordinates, separated by whitespace.
+     * Blank lines and lines starting with # are skipped.
+     * The file is read again every epoch.
+     */
+    public static class TextFileSource implements IExampleSource
+    {
+        private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+        private final File file;
+        private final int inputSize;
+        private final int expectedSize;
+        private BufferedReader reader;
+
+        public TextFileSource(File file, int inputSize, int expectedSize)
+        {
+            this.file = file;
+            this.inputSize = inputSize;
+            this.expectedSize = expectedSize;
+        }
+
+        @Override
+        public void startEpoch(int epoch)
+        {
+            try
+            {
+                close();
+                reader = new BufferedReader(new FileReader(file));
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean next(NVector vInput, NVector vExpected)
+        {
+            try
+            {
+                String line;
+                do
+                {
+                    line = reader.readLine();
+                    if (line == null)
+                    {
+                        close();
+                        return false;
+                    }
+                    line = line.trim();
+                }
+                while(line.isEmpty() || line.startsWith("#"));
+
+                final String[] aFields = WHITESPACE.split(line);
+                if (aFields.length != inputSize + expectedSize)
+                    throw new IOException(file+": expected "+(inputSize + expectedSize)+" numbers per line: "+line);
+
+                for(int i=0; i<inputSize; i++)
+                    vInput.set(i, Double.parseDouble(aFields[i]));
+                for(int i=0; i<expectedSize; i++)
+                    vExpected.set(i, Double.parseDouble(aFields[inputSize + i]));
+                return true;
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void close() throws IOException
+        {
+            if (reader != null) reader.close();
+            reader = null;
+        }
+
+        @Override
+        public int getInputSize() { return inputSize; }
+
+        @Override
+        public int getExpectedSize() { return expectedSize; }
+    }
+
+    /**
+     * Shuffles another source with a fixed-size shuffle buffer, so memory stays bounded:
+     * the buffer is filled from the source, then each example handed out is picked at random
+     * from the buffer and replaced by the next one from the source.
+     *
+     * The bigger the buffer, the closer it is to a full shuffle.
+     * The order depends only on the seed and the epoch.
+     */
+    public static class ShuffledSource implements IExampleSource
+    {
+        private final IExampleSource source;
+        private final long seed;
+        private final NVector[] aInputs;
+        private final NVector[] aExpected;
+        private int buffered;
+        private Random random;
+
+        public ShuffledSource(IExampleSource source, int bufferSize, long seed)
+        {
+            this.source = source;
+            this.seed = seed;
+            this.aInputs = new NVector[bufferSize];
+            this.aExpected = new NVector[bufferSize];
+            for(int i=0; i<bufferSize; i++)
+            {
+                aInputs[i] = new NVector().setSize(source.getInputSize());
+                aExpected[i] = new NVector().setSize(source.getExpectedSize());
+            }
+        }
+
+        @Override
+        public void startEpoch(int epoch)
+        {
+            source.startEpoch(epoch);
+            random = new Random(seed * 31 + epoch);
+
+            buffered = 0;
+            while(buffered < aInputs.length && source.next(aInputs[buffered], aExpected[buffered]))
+                buffered++;
+        }
+
+        @Override
+        public boolean next(NVector vInput, NVector vExpected)
+        {
+            if (buffered == 0) return false;
+
+            final int pick = random.nextInt(buffered);
+            vInput.set(aInputs[pick]);
+            vExpected.set(aExpected[pick]);
+
+            //refill the slot, or shrink the buffer at the end of the source
+            if (!source.next(aInputs[pick], aExpected[pick]))
+            {
+                buffered--;
+                aInputs[pick].set(aInputs[buffered]);
+                aExpected[pick].set(aExpected[buffered]);
+            }
+            return true;
+        }
+
+        @Override
+        public int getInputSize() { return source.getInputSize(); }
+
+        @Override
+        public int getExpectedSize() { return source.getExpectedSize(); }
+    }
+}
@@ -0,0 +1,156 @@
+package com.neuralnetwork.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Single-precision version of {@link NVector}, the input and output of a {@link CompiledNetwork} for inference.
+ * Takes half the memory; sums are accumulated in double (see {@link Vectors}).
+ */
+public class FVector implements Iterable<Float>
+{
+    float[] aCoords;
+
+    /**
+     * Make sure to call #setSize
+     */
+    public FVector() {}
+
+    public FVector setSize(int i)
+    {
+        if (aCoords == null) aCoords = new float[i];
+        else aCoords = Arrays.copyOf(aCoords, i);
+        return this;
+    }
+
+    public FVector(float... aCoords)
+    {
+        this.aCoords = Arrays.copyOf(aCoords, aCoords.length);
+    }
+
+    public FVector(FVector vector)
+    {
+        this(vector.aCoords);
+    }
+
+    /**
+     * Rounds the given vector to single precision
+     *
+     * @param vector vector
+     */
+    public FVector(NVector vector)
+    {
+        this.aCoords = new float[vector.size()];
+        for(int i=0; i<aCoords.length; i++)
+            aCoords[i] = (float) vector.aCoords[i];
+    }
+
+    /**
+     * @warning assumes input.size() <= this.size()!
+     *
+     * @param input vector
+     * @return dot product
+     */
+    public double dot(FVector input)
+    {
+        return Vectors.dot(aCoords, 0, input.aCoords, 0, input.size());
+    }
+
+    public int size() { return aCoords.length; }
+
+    public float first()
+    {
+        return aCoords[0];
+    }
+
+    public float last()
+    {
+        return aCoords[aCoords.length-1];
+    }
+
+    public FVector set(int i, double output)
+    {
+        this.aCoords[i] = (float) output;
+        return this;
+    }
+
+    public float get(int i)
+    {
+        return this.aCoords[i];
+    }
+
+    public NVector toNVector()
+    {
+        NVector rslt = new NVector().setSize(aCoords.length);
+        for(int i=0; i<aCoords.length; i++)
+            rslt.aCoords[i] = aCoords[i];
+        return rslt;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder string = new StringBuilder(100);
+        string.append("[");
+        for(int i=0; i<aCoords.length; ++i)
+        {
+            string.append(String.format("%6.6g",aCoords[i]));
+            if (i<aCoords.length-1) string.append("  ");
+        }
+        string.append("]");
+        return string.toString();
+    }
+
+    public FVector subtract(FVector vector)
+    {
+        FVector rslt = new FVector().setSize(aCoords.length);
+        Vectors.scaleAdd(aCoords, 0, -1f, vector.aCoords, 0, rslt.aCoords, 0, aCoords.length);
+        return rslt;
+    }
+
+    /**
+     * Computes this.this
+     *
+     * @return this.this
+     */
+    public double dotProduct()
+    {
+        return Vectors.dotProduct(aCoords, 0, aCoords.length);
+    }
+
+    /**
+     * Sum of coordinates
+     *
+     * @return double
+     */
+    public double sumOfCoords()
+    {
+        return Vectors.sum(aCoords, 0, aCoords.length);
+    }
+
+    @Override
+    public Iterator<Float> iterator()
+    {
+        return new Iterator<Float>() {
+            int len = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return len < aCoords.length;
+            }
+
+            @Override
+            public Float next()
+            {
+                return aCoords[len++];
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
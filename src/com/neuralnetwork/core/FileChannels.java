@@ -0,0 +1,36 @@
+package com.neuralnetwork.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Positional reads and writes of whole buffers, for the {@link Checkpoint} and {@link Dataset} files
+ */
+final class FileChannels
+{
+    private FileChannels() {}
+
+    /**
+     * Writes the buffer from its position to its limit
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Fills the buffer then flips it for reading
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            final int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("unexpected end of file");
+            position += read;
+        }
+        buffer.flip();
+    }
+}
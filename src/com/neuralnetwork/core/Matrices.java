@@ -0,0 +1,140 @@
+package com.neuralnetwork.core;
+
+import java.util.Arrays;
+
+/**
+ * Cache-blocked kernels for row-major matrices stored in flat double[] arrays.
+ *
+ * Every kernel accumulates in the same order as the equivalent loop of vector operations,
+ * so the results are bit-for-bit identical to working one vector at a time.
+ */
+final public class Matrices
+{
+    /**
+     * Number of rows (or columns) of a matrix that are worked on at a time
+     * so they stay in cache
+     */
+    static final int BLOCK = 64;
+
+    private Matrices() {}
+
+    /**
+     * Computes C = A * B^T using the first n columns of A and B,
+     * i.e., c[i][k] = a[i] . b[k]
+     *
+     * @param a A, a rowsA x aStride matrix
+     * @param aStride number of columns of A
+     * @param rowsA number of rows of A
+     * @param b B, a rowsB x bStride matrix
+     * @param bStride number of columns of B
+     * @param rowsB number of rows of B
+     * @param n number of columns to multiply
+     * @param c C, a rowsA x cStride matrix with cStride >= rowsB
+     * @param cStride number of columns of C
+     */
+    public static void multiplyTransposed(final double[] a, final int aStride, final int rowsA,
+                                          final double[] b, final int bStride, final int rowsB,
+                                          final int n,
+                                          final double[] c, final int cStride)
+    {
+        for(int k0=0; k0<rowsB; k0+=BLOCK)
+        {
+            final int k1 = Math.min(k0 + BLOCK, rowsB);
+
+            for(int i=0; i<rowsA; i++)
+            {
+                final int aRow = i * aStride;
+                final int cRow = i * cStride;
+
+                for(int k=k0; k<k1; k++)
+                {
+                    final int bRow = k * bStride;
+                    double rslt = 0;
+                    for(int j=0; j<n; j++)
+                        rslt += a[aRow + j] * b[bRow + j];
+                    c[cRow + k] = rslt;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C = A * B using the first n columns of B,
+     * i.e., c[i][j] = sum_k a[i][k] * b[k][j]
+     *
+     * @param a A, a rowsA x aStride matrix
+     * @param aStride number of columns of A
+     * @param rowsA number of rows of A
+     * @param colsA number of columns of A to use (= number of rows of B)
+     * @param b B, a colsA x bStride matrix
+     * @param bStride number of columns of B
+     * @param n number of columns of B to use
+     * @param c C, a rowsA x cStride matrix with cStride >= n
+     * @param cStride number of columns of C
+     */
+    public static void multiply(final double[] a, final int aStride, final int rowsA, final int colsA,
+                                final double[] b, final int bStride, final int n,
+                                final double[] c, final int cStride)
+    {
+        for(int i=0; i<rowsA; i++)
+            Arrays.fill(c, i * cStride, i * cStride + n, 0);
+
+        for(int k0=0; k0<colsA; k0+=BLOCK)
+        {
+            final int k1 = Math.min(k0 + BLOCK, colsA);
+
+            for(int i=0; i<rowsA; i++)
+            {
+                final int aRow = i * aStride;
+                final int cRow = i * cStride;
+
+                for(int k=k0; k<k1; k++)
+                {
+                    final double aik = a[aRow + k];
+                    final int bRow = k * bStride;
+                    for(int j=0; j<n; j++)
+                        c[cRow + j] += aik * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C += scale * A^T * B,
+     * i.e., c[k][j] += sum_i (scale * a[i][k]) * b[i][j]
+     * where the sum is done in increasing i.
+     *
+     * @param scale scale
+     * @param a A, a rows x aStride matrix
+     * @param aStride number of columns of A
+     * @param rows number of rows of A and B
+     * @param colsA number of columns of A to use (= number of rows of C)
+     * @param b B, a rows x bStride matrix
+     * @param bStride number of columns of B
+     * @param n number of columns of B to use
+     * @param aC rows of C
+     */
+    public static void addTransposedProduct(final double scale,
+                                            final double[] a, final int aStride, final int rows, final int colsA,
+                                            final double[] b, final int bStride, final int n,
+                                            final double[][] aC)
+    {
+        for(int j0=0; j0<n; j0+=BLOCK)
+        {
+            final int j1 = Math.min(j0 + BLOCK, n);
+
+            for(int k=0; k<colsA; k++)
+            {
+                final double[] cRow = aC[k];
+
+                for(int i=0; i<rows; i++)
+                {
+                    final double coef = scale * a[i * aStride + k];
+                    final int bRow = i * bStride;
+                    for(int j=j0; j<j1; j++)
+                        cRow[j] += coef * b[bRow + j];
+                }
+            }
+        }
+    }
+}
@@ -4,10 +4,17 @@ import com.neuralnetwork.core.NVector;
 import com.neuralnetwork.core.Neuron;
 import com.neuralnetwork.core.SingleLayerNeuralNetwork;
 import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.IExampleSource;
 import com.neuralnetwork.core.interfaces.INeuralNetwork;
+import com.neuralnetwork.core.interfaces.IOptimizer;
+import com.neuralnetwork.core.interfaces.ITrainingListener;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
-public class MultiLayerNetwork
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class MultiLayerNetwork implements AutoCloseable
 {
     protected LayorInfo[] aLayers;
     protected int numberLayers;
@@ -23,17 +30,124 @@ public class MultiLayerNetwork
     final protected double alpha; /** momentum **/
     final protected double eta; /** learning parameter **/
     final protected int numberIterations;
+    /**
+     * Update rule of #adjustWeights
+     */
+    final protected IOptimizer optimizer;
+    /**
+     * Number of times the weights were adjusted
+     */
+    protected int numberUpdates;
+    /**
+     * Number of examples stacked into an activation matrix when training.
+     * 0 or 1 means one example at a time.
+     */
+    final protected int blockSize;
+    /**
+     * Number of examples per weight update.
+     * 0 means all of them (full batch), 1 means online (stochastic) gradient descent.
+     */
+    final protected int batchSize;
+    /**
+     * Shuffles the examples at the start of every epoch. Null means don't shuffle.
+     */
+    final protected Random shuffleRandom;
+    /**
+     * Number of examples whose adjustments were saved since the weights were last adjusted
+     */
+    protected int pendingExamples;
+    /**
+     * Measure the error exactly, after the weights are adjusted, every evaluationInterval epochs.
+     * The other epochs report the error measured by the training pass.
+     * 0 means only when the training pass error is below the error bound.
+     */
+    final protected int evaluationInterval;
+    /**
+     * Held-out examples the error is measured on. Null means the training examples.
+     */
+    protected ExampleInfo[] aEvaluationExamples;
+    protected NVector vEvaluationDifferenceSquared;
+
+    /**
+     * Used to train on several cores. Null means train on one thread.
+     */
+    final protected ForkJoinPool pool;
+    /**
+     * Whether the pool was started by this network, and so is shut down by #close
+     */
+    final protected boolean ownsPool;
+    /**
+     * Worker w trains the wth chunk of the examples using its own scratch (layer info).
+     * The workers share the layers (weights) and examples with this network.
+     */
+    protected MultiLayerNetwork[] aWorkers;
+
+    /**
+     * Told about the progress of #backpropagation(double, NVector...)
+     */
+    protected ITrainingListener trainingListener;
+
+    /**
+     * Number of examples in the last epoch read from an {@link IExampleSource}
+     */
+    protected long examplesPerEpoch;
 
     protected IActivationFunction.IDifferentiableFunction phi;
 
     public MultiLayerNetwork(Builder builder)
     {
         this.eta = builder.eta;
-        this.alpha = builder.alpha;
+        this.alpha = builder.alpha != null ? builder.alpha : 0;
         this.phi = builder.phi;
         this.numberIterations = builder.numberIterations == 0 ? 1000 : builder.numberIterations;
+        this.optimizer = builder.optimizer != null ? builder.optimizer : new Optimizers.WeightMomentum(alpha);
+        this.blockSize = builder.blockSize;
+        this.batchSize = builder.batchSize;
+        this.shuffleRandom = builder.shuffleSeed != null ? new Random(builder.shuffleSeed) : null;
+        this.evaluationInterval = builder.evaluationInterval;
+        this.ownsPool = builder.pool == null && builder.parallelism > 1;
+        this.pool = builder.pool != null ? builder.pool : ownsPool ? new ForkJoinPool(builder.parallelism) : null;
+
+        if (builder.debugOutput && builder.trainingListener != null)
+            this.trainingListener = new TrainingListeners.AllOf(new DebugOutput(), builder.trainingListener);
+        else if (builder.debugOutput) this.trainingListener = new DebugOutput();
+        else if (builder.trainingListener != null) this.trainingListener = builder.trainingListener;
+        else this.trainingListener = new TrainingListeners.NoOpListener();
 
         initializeLayers(builder);
+
+        if (builder.aEvaluationExamples != null)
+        {
+            aEvaluationExamples = exampleInfo(builder.aEvaluationExamples);
+            vEvaluationDifferenceSquared = new NVector().setSize(aEvaluationExamples.length);
+        }
+    }
+
+    /**
+     * Creates a worker for the given network.
+     * It shares the given network's layers and settings but has its own layer info (scratch).
+     *
+     * @param network network
+     */
+    protected MultiLayerNetwork(MultiLayerNetwork network)
+    {
+        this.eta = network.eta;
+        this.alpha = network.alpha;
+        this.phi = network.phi;
+        this.numberIterations = network.numberIterations;
+        this.optimizer = network.optimizer;
+        this.blockSize = network.blockSize;
+        this.batchSize = network.batchSize;
+        this.shuffleRandom = null;
+        this.evaluationInterval = network.evaluationInterval;
+        this.pool = null;
+        this.ownsPool = false;
+        this.trainingListener = new TrainingListeners.NoOpListener();
+
+        numberLayers = network.numberLayers;
+        aLayers = new LayorInfo[numberLayers];
+        for(int i=0; i<numberLayers; i++)
+            aLayers[i] = new LayorInfo(network.aLayers[i].layer);
     }
 
     protected LayorInfo getLayer(int i)
@@ -48,7 +162,22 @@ public class MultiLayerNetwork
         protected Double alpha;
         protected Double eta;
         protected int numberIterations;
+        protected IOptimizer optimizer;
+        protected int blockSize;
+        protected int batchSize;
+        protected Long shuffleSeed;
+        protected int evaluationInterval = 1;
+        protected NVector[] aEvaluationExamples;
+        protected int parallelism;
+        protected ForkJoinPool pool;
+        protected ITrainingListener trainingListener;
+        protected boolean debugOutput;
 
+        /**
+         * @param phi the activation function whose derivative the gradients use.
+         *            Without one, each neuron's own function is used, and must be differentiable to train.
+         * @return this
+         */
         public Builder setGlobalActivationFunction(IActivationFunction.IDifferentiableFunction phi)
         {
             this.phi = phi;
@@ -78,6 +207,162 @@ public class MultiLayerNetwork
             this.numberIterations = numberIterations;
             return this;
         }
+
+        /**
+         * How the weights are adjusted after each batch. See {@link Optimizers}.
+         * Defaults to {@link Optimizers.WeightMomentum} with the momentum param,
+         * which is then the only thing the momentum param is used for.
+         *
+         * @param optimizer update rule
+         * @return this
+         */
+        public Builder setOptimizer(IOptimizer optimizer)
+        {
+            this.optimizer = optimizer;
+            return this;
+        }
+
+        /**
+         * Train blockSize examples at a time using matrix-matrix products
+         * instead of one example at a time using vector operations.
+         * The weights are then streamed from memory once per block instead of once per example.
+         * The result is the same.
+         *
+         * Only works if all layers are {@link SingleLayerNeuralNetwork}s.
+         *
+         * @param blockSize number of examples per block
+         * @return this
+         */
+        public Builder setBlockSize(int blockSize)
+        {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Adjust the weights after every batchSize examples instead of once per epoch.
+         * 1 gives online (stochastic) gradient descent, 0 (the default) gives full batch.
+         *
+         * The adjustments of a batch are added up, not averaged, so eta may need lowering for big batches.
+         * The error reported for an epoch is still measured over all the examples after the epoch.
+         *
+         * @param batchSize number of examples per weight update
+         * @return this
+         */
+        public Builder setBatchSize(int batchSize)
+        {
+            if (batchSize < 0)
+                throw new IllegalArgumentException("batch size can't be negative");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Shuffle the in-memory examples at the start of every epoch,
+         * so the mini-batches differ from one epoch to the next.
+         * To shuffle an {@link IExampleSource}, wrap it in a {@link ExampleSources.ShuffledSource}.
+         *
+         * @param seed seed of the shuffle, so runs can be repeated
+         * @return this
+         */
+        public Builder setShuffle(long seed)
+        {
+            this.shuffleSeed = seed;
+            return this;
+        }
+
+        /**
+         * By default the error of every epoch is measured exactly by a second forward pass
+         * over all the examples, after the weights are adjusted.
+         * Otherwise the epoch reports the error measured during the training forward pass,
+         * before each example's weight update, which costs nothing extra.
+         *
+         * Whatever the interval, the error is measured exactly before stopping early
+         * and on the last epoch, so #backpropagation(double, NVector...) stops on the same criterion.
+         *
+         * @param evaluationInterval measure the error exactly every evaluationInterval epochs.
+         *                           0 means only to confirm the error bound is reached.
+         * @return this
+         */
+        public Builder setEvaluationInterval(int evaluationInterval)
+        {
+            if (evaluationInterval < 0)
+                throw new IllegalArgumentException("evaluation interval can't be negative");
+            this.evaluationInterval = evaluationInterval;
+            return this;
+        }
+
+        /**
+         * Measure the exact error on these held-out examples instead of the training examples
+         *
+         * @param aInputExpected (input, expected) pairs
+         * @return this
+         */
+        public Builder setEvaluationExamples(NVector... aInputExpected)
+        {
+            if (aInputExpected.length == 0 || aInputExpected.length % 2 != 0)
+                throw new IllegalArgumentException();
+            this.aEvaluationExamples = aInputExpected;
+            return this;
+        }
+
+        /**
+         * Train on the given number of threads.
+         * The examples are split into one chunk per thread and the weight adjustments
+         * of the chunks are added up before adjusting the weights.
+         * The result is the same as training on one thread
+         * up to the order in which the adjustments are added.
+         *
+         * @warning the pool is started by the network, #close it when done
+         *
+         * @param parallelism number of threads
+         * @return this
+         */
+        public Builder setParallelism(int parallelism)
+        {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Train on the threads of a pool shared with other networks (see #setParallelism),
+         * which #close leaves running
+         *
+         * @param pool pool
+         * @return this
+         */
+        public Builder setPool(ForkJoinPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Defaults to a {@link TrainingListeners.NoOpListener}.
+         * Wrap it in {@link TrainingListeners.EveryNEpochs} or {@link TrainingListeners.EveryTSeconds}
+         * to control how often it's called.
+         *
+         * @param trainingListener listener
+         * @return this
+         */
+        public Builder setTrainingListener(ITrainingListener trainingListener)
+        {
+            this.trainingListener = trainingListener;
+            return this;
+        }
+
+        /**
+         * Dump the weights and every example to stdout after every epoch. Slow.
+         * Runs before, not instead of, the listener from #setTrainingListener.
+         *
+         * @param debugOutput whether to dump
+         * @return this
+         */
+        public Builder setDebugOutput(boolean debugOutput)
+        {
+            this.debugOutput = debugOutput;
+            return this;
+        }
     }
 
     /**
@@ -122,16 +407,31 @@ public class MultiLayerNetwork
          * store value of impulse function.
          */
         public NVector vImpulseFunction;
+        /**
+         * For each neuron k in the layer,
+         * store phi'(v_k), computed along with the impulse function
+         * so the backward pass doesn't evaluate phi again.
+         */
+        public NVector vDerivatives;
+        /**
+         * The activation function shared by all the neurons of the layer, null if they differ
+         */
+        public IActivationFunction layerPhi;
         /**
          * Store the inputs (y_k) from the previous layer.
+         * The bias (1) is tacked on at the end.
+         * Allocated once and overwritten for every example.
          */
         public NVector vInput;
         /**
-         * For each neuron k in the layer,
-         * aPrevWeights[k] is its previous set of weights.
-         * aPrevWeights[k].get(j) is neuron k's jth previous weight.
+         * State of the optimizer for every weight of the layer, neuron after neuron
+         * (see IOptimizer#step). Allocated by the first #adjustWeights.
+         */
+        public double[] aOptimizerState;
+        /**
+         * Total number of weights of the layer
          */
-        public NVector[] aPrevWeights;
+        public int numberOfWeights;
 
         /**
          * For each neuron k in the layer,
@@ -146,36 +446,74 @@ public class MultiLayerNetwork
          */
         public NVector[] aWeightAdjustments;
 
+        /**
+         * When training in blocks (see Builder#setBlockSize), these are the block versions
+         * of the vectors above: row b holds the values for the bth example of the block.
+         * All are row-major. mInput has #layer.getNumberOfWeights() columns (bias last),
+         * the rest have #layer.getNumberOfNeurons() columns.
+         */
+        public double[] mInput;
+        public double[] mInducedLocalField;
+        public double[] mImpulseFunction;
+        public double[] mDerivatives;
+        public double[] mGradients;
+        /**
+         * The rows of #aWeightAdjustments
+         */
+        protected double[][] aWeightAdjustmentRows;
+
         public LayorInfo(INeuralNetwork layer)
         {
             this.layer = layer;
             this.vInducedLocalField = new NVector().setSize(this.layer.getNumberOfNeurons());
             this.vImpulseFunction = new NVector().setSize(this.layer.getNumberOfNeurons());
+            this.vDerivatives = new NVector().setSize(this.layer.getNumberOfNeurons());
             this.vGradients = new NVector().setSize(this.layer.getNumberOfNeurons());
-            this.aPrevWeights = new NVector[this.layer.getNumberOfNeurons()];
             this.aWeightAdjustments = new NVector[this.layer.getNumberOfNeurons()];
             int len=0;
+            int numberOfWeights=0;
+            this.layerPhi = this.layer.getNeuron(0).phi();
             for(Neuron neuron:this.layer)
             {
-                this.aPrevWeights[len] = new NVector().setSize(neuron.getNumberOfWeights());
-                this.aWeightAdjustments[len] = new NVector().setSize(neuron.getNumberOfWeights());
+                if (neuron.phi() != layerPhi) layerPhi = null;
+                numberOfWeights = neuron.getNumberOfWeights();
+                this.numberOfWeights += numberOfWeights;
+                this.aWeightAdjustments[len] = new NVector().setSize(numberOfWeights);
                 ++len;
             }
+            this.vInput = new NVector().setSize(numberOfWeights).set(numberOfWeights - 1, 1f);
+
+            if (blockSize > 1)
+            {
+                if (!(layer instanceof SingleLayerNeuralNetwork))
+                    throw new IllegalArgumentException("training in blocks only works with "
+                            + SingleLayerNeuralNetwork.class.getSimpleName()+" layers");
+
+                final int numberOfNeurons = this.layer.getNumberOfNeurons();
+                this.mInput = new double[blockSize * ((SingleLayerNeuralNetwork) layer).getNumberOfWeights()];
+                this.mInducedLocalField = new double[blockSize * numberOfNeurons];
+                this.mImpulseFunction = new double[blockSize * numberOfNeurons];
+                this.mDerivatives = new double[blockSize * numberOfNeurons];
+                this.mGradients = new double[blockSize * numberOfNeurons];
+                this.aWeightAdjustmentRows = new double[numberOfNeurons][];
+                for(int k=0; k<numberOfNeurons; k++)
+                    this.aWeightAdjustmentRows[k] = this.aWeightAdjustments[k].aCoords;
+            }
         }
     }
 
-    protected class DebugOutput
+    protected class DebugOutput implements ITrainingListener
     {
         String weights()
         {
-            String rslt = "";
+            StringBuilder rslt = new StringBuilder();
             for(int neuron=0; neuron< aLayers[0].layer.getNumberOfNeurons(); neuron++)
             {
-                rslt += String.format("%20s | %20s %n",
+                rslt.append(String.format("%20s | %20s %n",
                         getNeuron(aLayers[0].layer, neuron),
-                        getNeuron(aLayers[1] != null ? aLayers[1].layer : null, neuron));
+                        getNeuron(aLayers.length > 1 ? aLayers[1].layer : null, neuron)));
             }
-            return rslt;
+            return rslt.toString();
         }
 
         private String getNeuron(INeuralNetwork network,
@@ -206,6 +544,18 @@ public class MultiLayerNetwork
                         aExamples[i].vExpected,
                         aExamples[i].vActual);
         }
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            backpropDump(epoch);
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            backpropDump(epoch);
+        }
     }
 
     protected void initializeLayers(Builder builder)
@@ -219,24 +569,29 @@ public class MultiLayerNetwork
     }
 
     public void setupExampleInfo(NVector... aInputExpected)
+    {
+        aExamples = exampleInfo(aInputExpected);
+        numberExamples = aExamples.length;
+
+        //setup error
+        vTotalDifferenceSquared = new NVector().setSize(numberExamples);
+    }
+
+    protected ExampleInfo[] exampleInfo(NVector... aInputExpected)
     {
         if (aInputExpected.length % 2 != 0)
             throw new IllegalArgumentException();
 
-        numberExamples = aInputExpected.length / 2;
-
-        aExamples = new ExampleInfo[numberExamples];
+        ExampleInfo[] aExampleInfo = new ExampleInfo[aInputExpected.length / 2];
 
         //save aInputExpected
-        for(int i=0; i< numberExamples; i++)
+        for(int i=0; i< aExampleInfo.length; i++)
         {
-            aExamples[i] = new ExampleInfo();
-            aExamples[i].vExampleInput = aInputExpected[2*i];
-            aExamples[i].vExpected = aInputExpected[2*i+1];
+            aExampleInfo[i] = new ExampleInfo();
+            aExampleInfo[i].vExampleInput = aInputExpected[2*i];
+            aExampleInfo[i].vExpected = aInputExpected[2*i+1];
         }
-
-        //setup error
-        vTotalDifferenceSquared = new NVector().setSize(numberExamples);
+        return aExampleInfo;
     }
 
     public void backpropagation(double errorBound, NVector... aInputExpected)
@@ -247,167 +602,1006 @@ public class MultiLayerNetwork
         //initialization
         setupExampleInfo(aInputExpected);
 
-        DebugOutput debugOutput = new DebugOutput();
+        final long start = System.nanoTime();
         int iteration = 1;
+        double error;
 
-        while( backpropagation() > errorBound && iteration <= numberIterations)
+        while( (error = backpropagation(iteration, errorBound)) > errorBound && iteration <= numberIterations)
         {
-            debugOutput.backpropDump(iteration);
+            final long elapsedNanos = System.nanoTime() - start;
+            trainingListener.epochFinished(iteration, error, elapsedNanos,
+                    examplesPerSecond((long) iteration * numberExamples, elapsedNanos));
             iteration++;
         }
-        debugOutput.backpropDump(iteration);
+
+        final long elapsedNanos = System.nanoTime() - start;
+        trainingListener.trainingFinished(iteration, error, elapsedNanos,
+                examplesPerSecond((long) iteration * numberExamples, elapsedNanos));
     }
 
-    public NVector output(NVector input)
+    /**
+     * Same as #backpropagation(double, NVector...) but streams the examples from the given source,
+     * chunkSize examples at a time, so memory use doesn't depend on the size of the data set.
+     *
+     * Like the in-memory version, the weights are adjusted once per batch (see Builder#setBatchSize),
+     * and batches carry over from one chunk to the next.
+     *
+     * @param errorBound stop once the error is at most this
+     * @param source examples
+     * @param chunkSize number of examples held in memory at a time
+     */
+    public void backpropagation(double errorBound, IExampleSource source, int chunkSize)
     {
-        if (aExamples == null)
+        setupExampleBuffers(source, chunkSize);
+
+        final long start = System.nanoTime();
+        long examplesSeen = 0;
+        int iteration = 1;
+        double error;
+
+        while( (error = backpropagation(source, iteration, errorBound)) > errorBound && iteration <= numberIterations)
         {
-            setupExampleInfo(input, new NVector(0));
+            examplesSeen += examplesPerEpoch;
+            final long elapsedNanos = System.nanoTime() - start;
+            trainingListener.epochFinished(iteration, error, elapsedNanos, examplesPerSecond(examplesSeen, elapsedNanos));
+            iteration++;
         }
 
-        return output(0, 0, input);
+        examplesSeen += examplesPerEpoch;
+        final long elapsedNanos = System.nanoTime() - start;
+        trainingListener.trainingFinished(iteration, error, elapsedNanos, examplesPerSecond(examplesSeen, elapsedNanos));
+    }
+
+    private static double examplesPerSecond(long examples, long elapsedNanos)
+    {
+        return elapsedNanos > 0 ? examples * 1e9 / elapsedNanos : 0;
     }
 
     /**
-     * Trains the network using pairs of inputs/expected values
+     * Allocates chunkSize examples with their own input and expected vectors.
+     * They get overwritten by every chunk read from the source.
      *
-     * @return sum of the total differnce squared (error)
+     * @param source source
+     * @param chunkSize number of examples
      */
-    protected double backpropagation()
+    protected void setupExampleBuffers(IExampleSource source, int chunkSize)
     {
-        resetWeightAdjustments();
-
-        for(int i=0; i< numberExamples; i++)
-        {
-            forwardPropagation(i);
-            constructGradients(i);
-            saveWeightAdjustments();
-        }
-
-        adjustWeights();
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
 
-        for(int i=0; i< numberExamples; i++)
+        numberExamples = 0;
+        aExamples = new ExampleInfo[chunkSize];
+        for(int i=0; i<chunkSize; i++)
         {
-            constructErrorFunction(i);
+            aExamples[i] = new ExampleInfo();
+            aExamples[i].vExampleInput = new NVector().setSize(source.getInputSize());
+            aExamples[i].vExpected = new NVector().setSize(source.getExpectedSize());
         }
 
-        return vTotalDifferenceSquared.sumOfCoords();
+        vTotalDifferenceSquared = new NVector().setSize(chunkSize);
     }
 
-    protected void constructErrorFunction(int example)
+    /**
+     * Reads the next chunk of examples from the source into #aExamples
+     *
+     * @param source source
+     * @return number of examples read. 0 at the end of the epoch.
+     */
+    protected int readChunk(IExampleSource source)
     {
-        NVector vActual = forwardPropagation(example);
-        NVector vExpected = aExamples[example].vExpected;
-        aExamples[example].differenceSquared = vExpected.subtract(vActual).dotProduct();
-        vTotalDifferenceSquared.set(example, aExamples[example].differenceSquared);
+        numberExamples = 0;
+        while(numberExamples < aExamples.length
+                && source.next(aExamples[numberExamples].vExampleInput, aExamples[numberExamples].vExpected))
+        {
+            numberExamples++;
+        }
+        return numberExamples;
     }
 
-    protected NVector forwardPropagation(int example)
+    /**
+     * One epoch of #backpropagation(double, IExampleSource, int).
+     * Reads the source a second time, to find the error after adjusting the weights,
+     * only when the error must be measured exactly (see Builder#setEvaluationInterval)
+     *
+     * @param source source
+     * @param epoch epoch
+     * @param errorBound error bound of the training
+     * @return error
+     */
+    protected double backpropagation(IExampleSource source, int epoch, double errorBound)
     {
-        return output(example, 0, aExamples[example].vExampleInput);
+        final double trainingError = train(source, epoch);
+        return isEvaluationEpoch(epoch, trainingError, errorBound) ? evaluate(source, epoch) : trainingError;
     }
 
     /**
-     * Find the actual output for the given example.
-     *
-     * Side effect: store stuff (induced local field, impulse function, etc) in the layer info
-     *
+     * Trains on one epoch of the source. Mini-batches carry over from one chunk to the next.
      *
-     * @param example
-     * @param layer the example's layer
-     * @return output
+     * @param source source
+     * @param epoch epoch
+     * @return error measured by the training pass
      */
-    protected NVector output(int example, int layer, NVector input)
+    protected double train(IExampleSource source, int epoch)
     {
-        LayorInfo layorInfo = aLayers[layer];
-
-        //save info for back propagation
-        layorInfo.vInput = new NVector(input, 1f); //tack on bias at end
-
-        constructInducedLocalField(layorInfo);
-        constructImpulseFunction(layorInfo);
+        startEpoch();
 
-        if (layer < aLayers.length - 1)
-        {
-            return output(example, layer+1, aLayers[layer].vImpulseFunction);
-        }
-        else
+        double error = 0;
+        examplesPerEpoch = 0;
+        source.startEpoch(epoch);
+        while(readChunk(source) > 0)
         {
-            aExamples[example].vActual = new NVector(aLayers[layer].vImpulseFunction);
+            examplesPerEpoch += numberExamples;
+            trainExamples(0, numberExamples);
+            error += totalDifferenceSquared();
         }
-        return layorInfo.vImpulseFunction;
+
+        finishEpoch();
+        return error;
     }
 
-    private void constructInducedLocalField(LayorInfo layorInfo)
+    /**
+     * Measures the error with the current weights,
+     * on the held-out examples if there are any or else by reading the source again
+     *
+     * @param source source
+     * @param epoch epoch
+     * @return error
+     */
+    protected double evaluate(IExampleSource source, int epoch)
     {
-        //calculate v_k's
-        int len=0;
-        for(Neuron neuron:layorInfo.layer)
+        if (aEvaluationExamples != null) return evaluate();
+
+        double error = 0;
+        source.startEpoch(epoch);
+        while(readChunk(source) > 0)
         {
-            layorInfo.vInducedLocalField.set(len++, neuron.rawoutput(layorInfo.vInput));
+            constructAllErrorFunctions();
+            error += totalDifferenceSquared();
         }
+        return error;
     }
 
-    private void constructImpulseFunction(LayorInfo layorInfo)
+    public NVector output(NVector input)
     {
-        //calculate y_k's aka output
-        int len=0;
-        for(Neuron neuron:layorInfo.layer)
+        if (aExamples == null)
         {
-            layorInfo.vImpulseFunction.set(len, neuron.phi().apply(layorInfo.vInducedLocalField.get(len++)));
+            setupExampleInfo(input, new NVector(0));
         }
+
+        return output(0, 0, input);
     }
 
-    protected void constructGradients(int example)
+    /**
+     * Same as #output(NVector) but copies the output into vOutput.
+     * Once the network is set up, this doesn't allocate anything.
+     *
+     * @param input input
+     * @param vOutput where to store the output. Its size must be the number of neurons of the last layer.
+     * @return vOutput
+     */
+    public NVector output(NVector input, NVector vOutput)
     {
-       constructGradients(example, aLayers.length - 1);
+        final NVector vActual = output(input);
+        System.arraycopy(vActual.aCoords, 0, vOutput.aCoords, 0, vActual.aCoords.length);
+        return vOutput;
     }
 
-    protected void constructGradients(int example, int layer)
+    /**
+     * One online training step on an example whose input comes from outside the network,
+     * e.g. the flattened feature maps of convolutional layers (see FeatureMap#backpropagation):
+     * adjusts the weights with this example alone, and stores for every input
+     * the sum over the first layer's neurons of gradient times weight,
+     * computed with the weights as they were before the step.
+     *
+     * @warning replaces the examples the network was set up with
+     *
+     * @param vInput input
+     * @param vExpected expected output
+     * @param vInputGradients where to store the input gradients, same size as the input
+     * @return difference squared of the example before the step
+     */
+    public double backpropagation(NVector vInput, NVector vExpected, NVector vInputGradients)
     {
-        if (layer >= 0)
-        {
-            LayorInfo layorInfo = aLayers[layer];
+        if (aExamples == null || numberExamples != 1)
+            setupExampleInfo(vInput, vExpected);
+        aExamples[0].vExampleInput = vInput;
+        aExamples[0].vExpected = vExpected;
+
+        startEpoch();
+        saveDifferenceSquared(0, forwardPropagation(0).aCoords, 0);
+        constructGradients(0);
+        saveWeightAdjustments();
+        for(int k=0; k<vInput.size(); k++)
+            vInputGradients.set(k, sumGradients(0, 0, k));
+        adjustWeights();
 
-            for(int neuronPos=0; neuronPos<layorInfo.layer.getNumberOfNeurons(); neuronPos++)
-            {
-                layorInfo.vGradients.set(neuronPos, gradient(example, layer, neuronPos));
-            }
+        return aExamples[0].differenceSquared;
+    }
 
-            constructGradients(example, layer - 1);
-        }
+    /**
+     * Freezes the current weights into an immutable network
+     * that can be used for inference from many threads at once
+     *
+     * @return compiled network
+     */
+    public CompiledNetwork compile()
+    {
+        return compile(CompiledNetwork.Precision.DOUBLE);
     }
 
     /**
-     * Gradient for the given example, layer, and neuron
+     * Same as #compile() but with the given weight precision
      *
-     * @param example example
-     * @param layerLevel layer level
-     * @param neuron neuron
-     * @return gradient value for the given example, layer, and neuron
+     * @param precision how to store the weights
+     * @return compiled network
      */
-    protected double gradient(int example, int layerLevel, int neuron)
+    public CompiledNetwork compile(CompiledNetwork.Precision precision)
     {
-        if (layerLevel == aLayers.length-1)
+        INeuralNetwork<?,?>[] aNetworks = new INeuralNetwork<?,?>[numberLayers];
+        for(int i=0; i<numberLayers; i++)
+            aNetworks[i] = aLayers[i].layer;
+        return CompiledNetwork.compile(precision, aNetworks);
+    }
+
+    /**
+     * Trains the network using pairs of inputs/expected values
+     *
+     * @return sum of the total differnce squared (error)
+     */
+    protected double backpropagation()
+    {
+        train();
+        return evaluate();
+    }
+
+    /**
+     * Same as #backpropagation() but only runs the second forward pass
+     * when the error must be measured exactly (see Builder#setEvaluationInterval)
+     *
+     * @param epoch epoch
+     * @param errorBound error bound of the training
+     * @return error
+     */
+    protected double backpropagation(int epoch, double errorBound)
+    {
+        final double trainingError = train();
+        return isEvaluationEpoch(epoch, trainingError, errorBound) ? evaluate() : trainingError;
+    }
+
+    /**
+     * @param epoch epoch
+     * @param trainingError error measured by the training pass
+     * @param errorBound error bound of the training
+     * @return whether the error of the epoch must be measured exactly
+     */
+    protected boolean isEvaluationEpoch(int epoch, double trainingError, double errorBound)
+    {
+        return (evaluationInterval > 0 && epoch % evaluationInterval == 0)
+                || trainingError <= errorBound
+                || epoch > numberIterations;
+    }
+
+    /**
+     * Trains on one epoch of the examples
+     *
+     * @return error measured by the training pass,
+     * each example with the weights as they were before its batch adjusted them
+     */
+    protected double train()
+    {
+        if (shuffleRandom != null) shuffleExamples();
+
+        startEpoch();
+        trainExamples(0, numberExamples);
+        finishEpoch();
+
+        return totalDifferenceSquared();
+    }
+
+    /**
+     * Measures the error with the current weights,
+     * on the held-out examples if there are any or else on the training examples
+     *
+     * @return sum of the total differnce squared (error)
+     */
+    protected double evaluate()
+    {
+        if (aEvaluationExamples == null)
+        {
+            constructAllErrorFunctions();
+            return totalDifferenceSquared();
+        }
+
+        //point the network (and its workers) at the held-out examples for the duration
+        final ExampleInfo[] aTrainingExamples = aExamples;
+        final int numberTrainingExamples = numberExamples;
+        final NVector vTrainingDifferenceSquared = vTotalDifferenceSquared;
+        aExamples = aEvaluationExamples;
+        numberExamples = aEvaluationExamples.length;
+        vTotalDifferenceSquared = vEvaluationDifferenceSquared;
+        try
+        {
+            constructAllErrorFunctions();
+            return totalDifferenceSquared();
+        }
+        finally
+        {
+            aExamples = aTrainingExamples;
+            numberExamples = numberTrainingExamples;
+            vTotalDifferenceSquared = vTrainingDifferenceSquared;
+        }
+    }
+
+    /**
+     * @return sum of the differences squared of the current examples
+     */
+    protected double totalDifferenceSquared()
+    {
+        return Vectors.sum(vTotalDifferenceSquared.aCoords, 0, numberExamples);
+    }
+
+    /**
+     * Fisher-Yates shuffle of #aExamples
+     */
+    protected void shuffleExamples()
+    {
+        for(int i=numberExamples - 1; i>0; i--)
+        {
+            final int j = shuffleRandom.nextInt(i + 1);
+            final ExampleInfo example = aExamples[i];
+            aExamples[i] = aExamples[j];
+            aExamples[j] = example;
+        }
+    }
+
+    protected void startEpoch()
+    {
+        checkDifferentiable();
+        resetWeightAdjustments();
+        pendingExamples = 0;
+    }
+
+    /**
+     * Without a global activation function, the gradients need every neuron's own derivative
+     *
+     * @throws IllegalStateException if a neuron's activation function isn't differentiable
+     */
+    protected void checkDifferentiable()
+    {
+        if (phi != null) return;
+
+        for(int layer=0; layer<numberLayers; layer++)
+        {
+            final LayorInfo layorInfo = aLayers[layer];
+            if (layorInfo.layerPhi instanceof IActivationFunction.IDifferentiableFunction) continue;
+
+            for(int k=0; k<layorInfo.layer.getNumberOfNeurons(); k++)
+                if (!(layorInfo.layer.getNeuron(k).phi() instanceof IActivationFunction.IDifferentiableFunction))
+                    throw new IllegalStateException("no global activation function and neuron "+k+" of layer "+layer
+                                                    +" has no derivative to train with");
+        }
+    }
+
+    /**
+     * Saves the weight adjustments of the examples first..last-1,
+     * adjusting the weights every time a batch is complete (see Builder#setBatchSize)
+     *
+     * @param first first example
+     * @param last one past the last example
+     */
+    protected void trainExamples(int first, int last)
+    {
+        while(first < last)
+        {
+            final int count = batchSize > 0 ? Math.min(last - first, batchSize - pendingExamples) : last - first;
+            saveAllWeightAdjustments(first, first + count);
+            pendingExamples += count;
+            first += count;
+
+            if (pendingExamples == batchSize)
+            {
+                adjustWeights();
+                resetWeightAdjustments();
+                pendingExamples = 0;
+            }
+        }
+    }
+
+    /**
+     * Adjusts the weights with what's left of the last batch.
+     * In full batch mode that's the only adjustment of the epoch.
+     */
+    protected void finishEpoch()
+    {
+        if (batchSize == 0 || pendingExamples > 0)
+            adjustWeights();
+    }
+
+    /**
+     * Adds the weight adjustments of the examples first..last-1 to the existing weight adjustments,
+     * on several threads if there's a pool
+     *
+     * @param first first example
+     * @param last one past the last example
+     */
+    protected void saveAllWeightAdjustments(int first, int last)
+    {
+        if (pool != null)
+        {
+            setupWorkers();
+            pool.invoke(new WeightAdjustmentsTask(first, last, 0, aWorkers.length));
+            addWeightAdjustments(aWorkers[0]);
+        }
+        else
+        {
+            saveWeightAdjustments(first, last);
+        }
+    }
+
+    /**
+     * Calls #constructErrorFunction for all the current examples,
+     * on several threads if there's a pool
+     */
+    protected void constructAllErrorFunctions()
+    {
+        if (pool != null)
         {
-            // (oj - tj) * phi'_j(v^L_j)
-            final double inducedLocalField = aLayers[layerLevel].vInducedLocalField.get(neuron);
+            setupWorkers();
+            pool.invoke(new ErrorFunctionTask(0, numberExamples, 0, aWorkers.length));
+        }
+        else
+        {
+            constructErrorFunction(0, numberExamples);
+        }
+    }
+
+    /**
+     * Adds the weight adjustments of the examples first..last-1 to the existing weight adjustments
+     *
+     * @param first first example
+     * @param last one past the last example
+     */
+    protected void saveWeightAdjustments(int first, int last)
+    {
+        if (blockSize > 1)
+        {
+            for(; first< last; first+=blockSize)
+            {
+                final int count = Math.min(blockSize, last - first);
+                forwardPropagationBlock(first, count);
+                saveDifferenceSquaredBlock(first, count);
+                constructGradientsBlock(first, count);
+                saveWeightAdjustmentsBlock(count);
+            }
+            return;
+        }
+
+        for(int i=first; i< last; i++)
+        {
+            //the error comes for free with the training pass
+            saveDifferenceSquared(i, forwardPropagation(i).aCoords, 0);
+            constructGradients(i);
+            saveWeightAdjustments();
+        }
+    }
+
+    /**
+     * Calls #constructErrorFunction for the examples first..last-1
+     *
+     * @param first first example
+     * @param last one past the last example
+     */
+    protected void constructErrorFunction(int first, int last)
+    {
+        if (blockSize > 1)
+        {
+            for(; first< last; first+=blockSize)
+            {
+                constructErrorFunctionBlock(first, Math.min(blockSize, last - first));
+            }
+            return;
+        }
+
+        for(int i=first; i< last; i++)
+        {
+            constructErrorFunction(i);
+        }
+    }
+
+    /**
+     * Shuts down the pool the network started (see Builder#setParallelism).
+     * A pool given to Builder#setPool is left running.
+     */
+    @Override
+    public void close()
+    {
+        if (ownsPool)
+            pool.shutdown();
+    }
+
+    /**
+     * Creates the workers the first time they're needed
+     * and points them to the current examples
+     */
+    protected void setupWorkers()
+    {
+        if (aWorkers == null)
+        {
+            aWorkers = new MultiLayerNetwork[pool.getParallelism()];
+            for(int w=0; w<aWorkers.length; w++)
+                aWorkers[w] = new MultiLayerNetwork(this);
+        }
+
+        for(MultiLayerNetwork worker:aWorkers)
+        {
+            worker.aExamples = aExamples;
+            worker.numberExamples = numberExamples;
+            worker.vTotalDifferenceSquared = vTotalDifferenceSquared;
+        }
+    }
+
+    /**
+     * The examples first..last-1 are split into one chunk per worker
+     *
+     * @param first first example
+     * @param last one past the last example
+     * @param worker worker
+     * @return the first example of the worker's chunk
+     */
+    protected int firstExample(int first, int last, int worker)
+    {
+        return first + (int) ((long) (last - first) * worker / aWorkers.length);
+    }
+
+    /**
+     * Each worker in aWorkers[lo..hi-1] builds the weight adjustments of its chunk of first..last-1.
+     * Then the adjustments are added up pairwise (tree reduction),
+     * so aWorkers[lo] ends up with the total.
+     */
+    protected class WeightAdjustmentsTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int first;
+        final int last;
+        final int lo;
+        final int hi;
+
+        protected WeightAdjustmentsTask(int first, int last, int lo, int hi)
+        {
+            this.first = first;
+            this.last = last;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo == 1)
+            {
+                aWorkers[lo].resetWeightAdjustments();
+                aWorkers[lo].saveWeightAdjustments(firstExample(first, last, lo), firstExample(first, last, lo + 1));
+                return;
+            }
+
+            final int mid = (lo + hi) >>> 1;
+            invokeAll(new WeightAdjustmentsTask(first, last, lo, mid), new WeightAdjustmentsTask(first, last, mid, hi));
+            aWorkers[lo].addWeightAdjustments(aWorkers[mid]);
+        }
+    }
+
+    /**
+     * Each worker in aWorkers[lo..hi-1] builds the error function of its chunk of first..last-1
+     */
+    protected class ErrorFunctionTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int first;
+        final int last;
+        final int lo;
+        final int hi;
+
+        protected ErrorFunctionTask(int first, int last, int lo, int hi)
+        {
+            this.first = first;
+            this.last = last;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo == 1)
+            {
+                aWorkers[lo].constructErrorFunction(firstExample(first, last, lo), firstExample(first, last, lo + 1));
+                return;
+            }
+
+            final int mid = (lo + hi) >>> 1;
+            invokeAll(new ErrorFunctionTask(first, last, lo, mid), new ErrorFunctionTask(first, last, mid, hi));
+        }
+    }
+
+    protected void constructErrorFunction(int example)
+    {
+        saveDifferenceSquared(example, forwardPropagation(example).aCoords, 0);
+    }
+
+    /**
+     * Stores the difference squared of the given example
+     *
+     * @param example example
+     * @param aActual holds the example's actual output starting at offset
+     * @param offset start of the actual output
+     */
+    protected void saveDifferenceSquared(int example, double[] aActual, int offset)
+    {
+        final ExampleInfo exampleInfo = aExamples[example];
+        exampleInfo.differenceSquared = differenceSquared(exampleInfo.vExpected, aActual, offset);
+        vTotalDifferenceSquared.set(example, exampleInfo.differenceSquared);
+    }
+
+    /**
+     * Computes (vExpected - vActual).(vExpected - vActual) without allocating (vExpected - vActual)
+     *
+     * @param vExpected expected
+     * @param aActual holds vActual starting at offset
+     * @param offset start of vActual
+     * @return (vExpected - vActual).(vExpected - vActual)
+     */
+    private static double differenceSquared(NVector vExpected, double[] aActual, int offset)
+    {
+        double rslt = 0f;
+        for(int k=0; k<vExpected.size(); k++)
+        {
+            final double difference = vExpected.get(k) - aActual[offset + k];
+            rslt += difference * difference;
+        }
+        return rslt;
+    }
+
+    protected NVector forwardPropagation(int example)
+    {
+        return output(example, 0, aExamples[example].vExampleInput);
+    }
+
+    /**
+     * Find the actual output for the given example.
+     *
+     * Side effect: store stuff (induced local field, impulse function, etc) in the layer info
+     *
+     *
+     * @param example
+     * @param layer the example's layer
+     * @return output
+     */
+    protected NVector output(int example, int layer, NVector input)
+    {
+        LayorInfo layorInfo = aLayers[layer];
+
+        //save info for back propagation
+        if (input.size() != layorInfo.vInput.size() - 1)
+            throw new IllegalArgumentException("input size must be the number of weights minus the bias");
+        System.arraycopy(input.aCoords, 0, layorInfo.vInput.aCoords, 0, input.size()); //bias is already at end
+
+        constructInducedLocalField(layorInfo);
+        constructImpulseFunction(layorInfo);
+
+        if (layer < aLayers.length - 1)
+        {
+            return output(example, layer+1, aLayers[layer].vImpulseFunction);
+        }
+        else
+        {
+            final ExampleInfo exampleInfo = aExamples[example];
+            if (exampleInfo.vActual == null) exampleInfo.vActual = new NVector().setSize(layorInfo.vImpulseFunction.size());
+            System.arraycopy(layorInfo.vImpulseFunction.aCoords, 0, exampleInfo.vActual.aCoords, 0, layorInfo.vImpulseFunction.size());
+        }
+        return layorInfo.vImpulseFunction;
+    }
+
+    private void constructInducedLocalField(LayorInfo layorInfo)
+    {
+        //calculate v_k's
+        if (layorInfo.layer instanceof SingleLayerNeuralNetwork)
+        {
+            //one pass over the packed weight matrix
+            ((SingleLayerNeuralNetwork) layorInfo.layer).inducedLocalField(layorInfo.vInput, layorInfo.vInducedLocalField);
+            return;
+        }
+
+        for(int len=0; len<layorInfo.layer.getNumberOfNeurons(); len++)
+        {
+            layorInfo.vInducedLocalField.set(len, layorInfo.layer.getNeuron(len).rawoutput(layorInfo.vInput));
+        }
+    }
+
+    private void constructImpulseFunction(LayorInfo layorInfo)
+    {
+        //calculate y_k's aka output, and phi'(v_k)'s for the backward pass
+        constructImpulseFunction(layorInfo, layorInfo.vInducedLocalField.aCoords,
+                                 layorInfo.vImpulseFunction.aCoords, layorInfo.vDerivatives.aCoords, 1);
+    }
+
+    /**
+     * Applies the activation functions to count rows of induced local fields (one per example),
+     * in bulk when the layer's neurons share the network's function,
+     * and stores the derivatives of the network's function at the same time
+     * (of each neuron's own function when the network has none, see #checkDifferentiable).
+     *
+     * @param layorInfo layer
+     * @param aInducedLocalField row-major, one column per neuron
+     * @param aImpulseFunction where to store the y_k's, same layout
+     * @param aDerivatives where to store the phi'(v_k)'s, same layout
+     * @param count number of rows
+     */
+    private void constructImpulseFunction(LayorInfo layorInfo, double[] aInducedLocalField,
+                                          double[] aImpulseFunction, double[] aDerivatives, int count)
+    {
+        final int numberOfNeurons = layorInfo.layer.getNumberOfNeurons();
+        final int size = count * numberOfNeurons;
+
+        if (phi != null && layorInfo.layerPhi == phi)
+        {
+            //one pass for both
+            phi.applyWithDerivative(aInducedLocalField, 0, aImpulseFunction, 0, aDerivatives, 0, size);
+            return;
+        }
+        if (phi == null && layorInfo.layerPhi instanceof IActivationFunction.IDifferentiableFunction)
+        {
+            ((IActivationFunction.IDifferentiableFunction) layorInfo.layerPhi)
+                    .applyWithDerivative(aInducedLocalField, 0, aImpulseFunction, 0, aDerivatives, 0, size);
+            return;
+        }
+
+        if (layorInfo.layerPhi != null)
+        {
+            layorInfo.layerPhi.apply(aInducedLocalField, 0, aImpulseFunction, 0, size);
+        }
+        else
+        {
+            //index instead of iterate so no iterator is allocated
+            for(int k=0; k<numberOfNeurons; k++)
+            {
+                final IActivationFunction neuronPhi = layorInfo.layer.getNeuron(k).phi();
+                for(int pos=k; pos<size; pos+=numberOfNeurons)
+                    aImpulseFunction[pos] = neuronPhi.apply(aInducedLocalField[pos]);
+                //inference doesn't need the derivatives, training checks they exist
+                if (phi == null && neuronPhi instanceof IActivationFunction.IDifferentiableFunction)
+                    for(int pos=k; pos<size; pos+=numberOfNeurons)
+                        aDerivatives[pos] = ((IActivationFunction.IDifferentiableFunction) neuronPhi).derivative(aInducedLocalField[pos]);
+            }
+        }
+
+        //the gradients use the network's activation function
+        if (phi != null) phi.derivative(aInducedLocalField, 0, aDerivatives, 0, size);
+    }
+
+    /**
+     * Block version of #constructErrorFunction
+     *
+     * @param first first example of the block
+     * @param count number of examples in the block
+     */
+    protected void constructErrorFunctionBlock(int first, int count)
+    {
+        forwardPropagationBlock(first, count);
+        saveDifferenceSquaredBlock(first, count);
+    }
+
+    /**
+     * Block version of #saveDifferenceSquared.
+     * Assumes #forwardPropagationBlock was just called for the same block.
+     *
+     * @param first first example of the block
+     * @param count number of examples in the block
+     */
+    protected void saveDifferenceSquaredBlock(int first, int count)
+    {
+        final LayorInfo outputLayer = aLayers[aLayers.length - 1];
+        final int numberOfNeurons = outputLayer.layer.getNumberOfNeurons();
+
+        for(int b=0; b<count; b++)
+        {
+            saveDifferenceSquared(first + b, outputLayer.mImpulseFunction, b * numberOfNeurons);
+        }
+    }
+
+    /**
+     * Block version of #forwardPropagation.
+     * Finds the actual output of count examples at once, one matrix-matrix product per layer.
+     *
+     * Side effect: store stuff (block input, induced local field, impulse function) in the layer info
+     *
+     * @param first first example of the block
+     * @param count number of examples in the block
+     */
+    protected void forwardPropagationBlock(int first, int count)
+    {
+        //copy the examples into the first layer's input, tacking on the bias at the end
+        final LayorInfo firstLayer = aLayers[0];
+        final int inputStride = ((SingleLayerNeuralNetwork) firstLayer.layer).getNumberOfWeights();
+        for(int b=0; b<count; b++)
+        {
+            final NVector vExampleInput = aExamples[first + b].vExampleInput;
+            System.arraycopy(vExampleInput.aCoords, 0, firstLayer.mInput, b * inputStride, vExampleInput.size());
+            firstLayer.mInput[b * inputStride + inputStride - 1] = 1f;
+        }
+
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            final LayorInfo layorInfo = aLayers[layer];
+            final SingleLayerNeuralNetwork network = (SingleLayerNeuralNetwork) layorInfo.layer;
+            final int numberOfNeurons = network.getNumberOfNeurons();
+            final int numberOfWeights = network.getNumberOfWeights();
+
+            //calculate v_k's
+            Matrices.multiplyTransposed(
+                    layorInfo.mInput, numberOfWeights, count,
+                    network.aWeights, numberOfWeights, numberOfNeurons,
+                    numberOfWeights,
+                    layorInfo.mInducedLocalField, numberOfNeurons);
+
+            //calculate y_k's and phi'(v_k)'s
+            constructImpulseFunction(layorInfo, layorInfo.mInducedLocalField,
+                                     layorInfo.mImpulseFunction, layorInfo.mDerivatives, count);
+
+            if (layer < aLayers.length - 1)
+            {
+                //the y_k's are the next layer's input
+                final double[] mNextInput = aLayers[layer + 1].mInput;
+                final int nextStride = numberOfNeurons + 1;
+                for(int b=0; b<count; b++)
+                {
+                    System.arraycopy(layorInfo.mImpulseFunction, b * numberOfNeurons,
+                                     mNextInput, b * nextStride, numberOfNeurons);
+                    mNextInput[b * nextStride + numberOfNeurons] = 1f;
+                }
+            }
+        }
+
+        //save the actual outputs
+        final LayorInfo outputLayer = aLayers[aLayers.length - 1];
+        final int numberOfNeurons = outputLayer.layer.getNumberOfNeurons();
+        for(int b=0; b<count; b++)
+        {
+            final ExampleInfo exampleInfo = aExamples[first + b];
+            if (exampleInfo.vActual == null) exampleInfo.vActual = new NVector().setSize(numberOfNeurons);
+            System.arraycopy(outputLayer.mImpulseFunction, b * numberOfNeurons,
+                             exampleInfo.vActual.aCoords, 0, numberOfNeurons);
+        }
+    }
+
+    /**
+     * Block version of #constructGradients.
+     * Assumes #forwardPropagationBlock was just called for the same block.
+     *
+     * @param first first example of the block
+     * @param count number of examples in the block
+     */
+    protected void constructGradientsBlock(int first, int count)
+    {
+        //output layer: (oj - tj) * phi'_j(v^L_j)
+        final LayorInfo outputLayer = aLayers[aLayers.length - 1];
+        final int numberOfOutputs = outputLayer.layer.getNumberOfNeurons();
+        for(int b=0; b<count; b++)
+        {
+            final NVector vExpected = aExamples[first + b].vExpected;
+            for(int k=0; k<numberOfOutputs; k++)
+            {
+                final int pos = b * numberOfOutputs + k;
+                outputLayer.mGradients[pos] = (vExpected.get(k) - outputLayer.mImpulseFunction[pos])
+                        * outputLayer.mDerivatives[pos];
+            }
+        }
+
+        //hidden layers: phi'(v_j) * sum_k w_kj * gradient_k
+        for(int layer=aLayers.length - 2; layer>=0; layer--)
+        {
+            final LayorInfo layorInfo = aLayers[layer];
+            final LayorInfo nextLayer = aLayers[layer + 1];
+            final SingleLayerNeuralNetwork next = (SingleLayerNeuralNetwork) nextLayer.layer;
+            final int numberOfNeurons = layorInfo.layer.getNumberOfNeurons();
+
+            Matrices.multiply(
+                    nextLayer.mGradients, next.getNumberOfNeurons(), count, next.getNumberOfNeurons(),
+                    next.aWeights, next.getNumberOfWeights(), numberOfNeurons,
+                    layorInfo.mGradients, numberOfNeurons);
+
+            for(int pos=0; pos<count * numberOfNeurons; pos++)
+            {
+                layorInfo.mGradients[pos] = layorInfo.mDerivatives[pos]
+                        * layorInfo.mGradients[pos];
+            }
+        }
+    }
+
+    /**
+     * Block version of #saveWeightAdjustments.
+     * Assumes #constructGradientsBlock was just called for the same block.
+     *
+     * @param count number of examples in the block
+     */
+    protected void saveWeightAdjustmentsBlock(int count)
+    {
+        for(LayorInfo layorInfo:aLayers)
+        {
+            final SingleLayerNeuralNetwork network = (SingleLayerNeuralNetwork) layorInfo.layer;
+            final int numberOfNeurons = network.getNumberOfNeurons();
+            final int numberOfWeights = network.getNumberOfWeights();
+
+            Matrices.addTransposedProduct(
+                    eta,
+                    layorInfo.mGradients, numberOfNeurons, count, numberOfNeurons,
+                    layorInfo.mInput, numberOfWeights, numberOfWeights,
+                    layorInfo.aWeightAdjustmentRows);
+        }
+    }
+
+    protected void constructGradients(int example)
+    {
+       constructGradients(example, aLayers.length - 1);
+    }
+
+    /**
+     * Builds the gradients (aka deltas) of the given layer and every layer below it.
+     *
+     * Layers are visited from the output to the input, so by the time layer l is reached,
+     * the gradients of layer l+1 are already stored in its #LayorInfo.vGradients
+     * and each gradient is computed exactly once per example.
+     *
+     * @param example example
+     * @param layer the top-most layer to build
+     */
+    protected void constructGradients(int example, int layer)
+    {
+        for(; layer >= 0; layer--)
+        {
+            LayorInfo layorInfo = aLayers[layer];
+
+            for(int neuronPos=0; neuronPos<layorInfo.layer.getNumberOfNeurons(); neuronPos++)
+            {
+                layorInfo.vGradients.set(neuronPos, gradient(example, layer, neuronPos));
+            }
+        }
+    }
+
+    /**
+     * Gradient for the given example, layer, and neuron
+     *
+     * @warning for hidden layers, assumes the gradients of layer (layerLevel + 1)
+     * have already been stored (see #constructGradients)
+     *
+     * @param example example
+     * @param layerLevel layer level
+     * @param neuron neuron
+     * @return gradient value for the given example, layer, and neuron
+     */
+    protected double gradient(int example, int layerLevel, int neuron)
+    {
+        if (layerLevel == aLayers.length-1)
+        {
+            // (oj - tj) * phi'_j(v^L_j), phi' stored by the forward pass
             final double impulseFunction = aLayers[layerLevel].vImpulseFunction.get(neuron);
             return (aExamples[example].vExpected.get(neuron) - impulseFunction)
-                    * phi.derivative(inducedLocalField);
+                    * aLayers[layerLevel].vDerivatives.get(neuron);
         }
         else
         {
-             return phi.derivative( aLayers[layerLevel].vInducedLocalField.get(neuron))
+             return aLayers[layerLevel].vDerivatives.get(neuron)
                      * sumGradients(example, layerLevel + 1, neuron);
         }
     }
 
     /**
      * Find the sum of the gradients times the weights of the next layer
-     * for the current neuron
-     *
+     * for the current neuron.
      *
+     * Uses the gradients already stored in the next layer's #LayorInfo.vGradients
+     * instead of recomputing them.
      *
      * @param example
      * @param layerLevel layer level
@@ -422,7 +1616,7 @@ public class MultiLayerNetwork
         int neuronPos = 0;
         for(Neuron neuron:layorInfo.layer)
         {
-            rslt += neuron.getWeight(currentNeuron) * gradient(example, layerLevel, neuronPos++);
+            rslt += neuron.getWeight(currentNeuron) * layorInfo.vGradients.get(neuronPos++);
         }
         return rslt;
     }
@@ -438,21 +1632,14 @@ public class MultiLayerNetwork
         {
             LayorInfo layorInfo = aLayers[layer];
 
-            int neuronPos = 0;
-            for(Neuron neuron:layorInfo.layer)
+            for(int neuronPos=0; neuronPos<layorInfo.layer.getNumberOfNeurons(); neuronPos++)
             {
-                //iterate thru the neuron's weights
-                for(int weight=0; weight<neuron.getNumberOfWeights(); weight++)
-                {
-                    double weightAdjustment =
-                            eta * layorInfo.vGradients.get(neuronPos) * layorInfo.vInput.get(weight); //delta correction
-
-                    //save weight adjustment
-                    double curWeightAdjustment = layorInfo.aWeightAdjustments[neuronPos].get(weight);
-                    layorInfo.aWeightAdjustments[neuronPos].set(weight, curWeightAdjustment + weightAdjustment);
-                }
-
-                neuronPos++;
+                //delta correction: eta * gradient * input, added to the saved weight adjustments
+                final NVector vWeightAdjustments = layorInfo.aWeightAdjustments[neuronPos];
+                Vectors.axpy(eta * layorInfo.vGradients.get(neuronPos),
+                             layorInfo.vInput.aCoords, 0,
+                             vWeightAdjustments.aCoords, 0,
+                             vWeightAdjustments.size());
             }
 
             saveWeightAdjustments(layer - 1);
@@ -461,29 +1648,48 @@ public class MultiLayerNetwork
 
     protected void adjustWeights()
     {
+        numberUpdates++;
+        final int stateSize = optimizer.getStateSize();
+
         for(LayorInfo layorInfo:aLayers)
         {
+            if (layorInfo.aOptimizerState == null)
+                layorInfo.aOptimizerState = new double[stateSize * layorInfo.numberOfWeights];
+
             //iterate thru the neurons in the layer
-            int neuronPos = 0;
-            for(Neuron neuron:layorInfo.layer)
+            int stateOffset = 0;
+            for(int neuronPos=0; neuronPos<layorInfo.layer.getNumberOfNeurons(); neuronPos++)
             {
-                //iterate thru the neuron's weights
-                for(int weight=0; weight<neuron.getNumberOfWeights(); weight++)
-                {
-                    //adjust weights
-                    double momentum = alpha * layorInfo.aPrevWeights[neuronPos].get(weight);
-                    double curWeight = neuron.getWeight(weight);
-
-                    //backup previous weight
-                    layorInfo.aPrevWeights[neuronPos].set(weight, neuron.getWeight(weight));
-
-                    neuron.setWeight(weight,
-                                     curWeight
-                                     + momentum
-                                     + layorInfo.aWeightAdjustments[neuronPos].get(weight) // total delta weights
-                    );
-                }
-                neuronPos++;
+                //adjust weights with the total delta weights
+                final Neuron neuron = layorInfo.layer.getNeuron(neuronPos);
+                optimizer.step(neuron.aWeights, neuron.offset,
+                               layorInfo.aWeightAdjustments[neuronPos].aCoords, 0,
+                               layorInfo.aOptimizerState, stateOffset,
+                               neuron.getNumberOfWeights(), numberUpdates);
+                stateOffset += stateSize * neuron.getNumberOfWeights();
+            }
+        }
+    }
+
+    /**
+     * Adds the given network's weight adjustments to this network's weight adjustments.
+     * Both networks must have the same shape.
+     *
+     * @param network network
+     */
+    protected void addWeightAdjustments(MultiLayerNetwork network)
+    {
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            final NVector[] aWeightAdjustments = aLayers[layer].aWeightAdjustments;
+            final NVector[] aOtherAdjustments = network.aLayers[layer].aWeightAdjustments;
+
+            for(int neuronPos=0; neuronPos<aWeightAdjustments.length; neuronPos++)
+            {
+                final double[] aCoords = aWeightAdjustments[neuronPos].aCoords;
+                final double[] aOtherCoords = aOtherAdjustments[neuronPos].aCoords;
+                for(int weight=0; weight<aCoords.length; weight++)
+                    aCoords[weight] += aOtherCoords[weight];
             }
         }
     }
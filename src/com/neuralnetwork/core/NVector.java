@@ -46,10 +46,7 @@ public class NVector implements Iterable<Double>
      */
     public double dot(NVector input)
     {
-        double rslt=0;
-        for(int i=0; i<input.size(); i++)
-            rslt += aCoords[i] * input.aCoords[i];
-        return rslt;
+        return Vectors.dot(aCoords, 0, input.aCoords, 0, input.size());
     }
 
     public int size() { return aCoords.length; }
@@ -70,6 +67,20 @@ public class NVector implements Iterable<Double>
         return this;
     }
 
+    /**
+     * Copies the given vector's coordinates into this vector
+     *
+     * @warning assumes vector.size() <= this.size()!
+     *
+     * @param vector vector
+     * @return this
+     */
+    public NVector set(NVector vector)
+    {
+        System.arraycopy(vector.aCoords, 0, aCoords, 0, vector.aCoords.length);
+        return this;
+    }
+
     public double get(int i)
     {
         return this.aCoords[i];
@@ -91,9 +102,8 @@ public class NVector implements Iterable<Double>
 
     public NVector subtract(NVector vector)
     {
-        NVector rslt = new NVector(this);
-        for(int i=0; i<aCoords.length; i++)
-            rslt.aCoords[i] -= vector.aCoords[i];
+        NVector rslt = new NVector().setSize(aCoords.length);
+        Vectors.scaleAdd(aCoords, 0, -1, vector.aCoords, 0, rslt.aCoords, 0, aCoords.length);
         return rslt;
     }
 
@@ -106,10 +116,7 @@ public class NVector implements Iterable<Double>
      */
     public double dotProduct()
     {
-        double rslt = 0f;
-        for(int i=0; i<aCoords.length; i++)
-            rslt += aCoords[i] * aCoords[i];
-        return rslt;
+        return Vectors.dotProduct(aCoords, 0, aCoords.length);
     }
 
     /**
@@ -119,10 +126,7 @@ public class NVector implements Iterable<Double>
      */
     public double sumOfCoords()
     {
-        double rslt = 0f;
-        for(int i=0; i<aCoords.length; i++)
-            rslt += aCoords[i];
-        return rslt;
+        return Vectors.sum(aCoords, 0, aCoords.length);
     }
 
     public NVector concatenate(NVector weights)
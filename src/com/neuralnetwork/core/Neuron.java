@@ -2,30 +2,74 @@ package com.neuralnetwork.core;
 
 import com.neuralnetwork.core.interfaces.IActivationFunction;
 
+import java.util.Arrays;
+
 /**
  * By convention, the bias is at the _end_ of the weights list
  *
+ * The weights live in aWeights[offset .. offset + numberOfWeights).
+ * A standalone neuron owns its array. Once it is added to a {@link SingleLayerNeuralNetwork},
+ * it becomes a view into a row of the layer's weight matrix (see #bind), and can't join another layer.
  */
 public class Neuron
 {
-    NVector vWeights;
+    double[] aWeights;
+    int offset;
+    final int numberOfWeights;
     IActivationFunction phi;
+    /**
+     * Layer whose weight matrix #aWeights is, null while standalone
+     */
+    SingleLayerNeuralNetwork layer;
 
     public Neuron(IActivationFunction phi, NVector vWeights)
     {
-        this.vWeights = vWeights;
+        this.aWeights = vWeights.aCoords;
+        this.numberOfWeights = vWeights.size();
         this.phi = phi;
     }
 
     public Neuron(IActivationFunction phi, double... aWeights)
     {
-        this.vWeights = new NVector(aWeights);
+        this.aWeights = Arrays.copyOf(aWeights, aWeights.length);
+        this.numberOfWeights = aWeights.length;
         this.phi = phi;
     }
 
+    /**
+     * Copies the weights into aMatrix starting at offset
+     * and makes this neuron a view of that row from now on.
+     * A layer can move its own neurons to a new matrix, but a neuron can't be taken from another layer:
+     * that layer's matrix would go on with weights the neuron no longer sees.
+     *
+     * @param layer layer aMatrix belongs to
+     * @param aMatrix weight matrix
+     * @param offset start of this neuron's row
+     */
+    void bind(SingleLayerNeuralNetwork layer, double[] aMatrix, int offset)
+    {
+        if (this.layer != null && this.layer != layer)
+            throw new IllegalArgumentException("neuron already belongs to another layer");
+
+        System.arraycopy(this.aWeights, this.offset, aMatrix, offset, numberOfWeights);
+        this.aWeights = aMatrix;
+        this.offset = offset;
+        this.layer = layer;
+    }
+
+    /**
+     * @warning assumes input.size() <= #getNumberOfWeights()!
+     *
+     * @param input input
+     * @return W . input
+     */
     public double rawoutput(NVector input)
     {
-        return vWeights.dot(input);
+        final double[] aInput = input.aCoords;
+        double rslt=0;
+        for(int i=0; i<aInput.length; i++)
+            rslt += aWeights[offset + i] * aInput[i];
+        return rslt;
     }
 
     public double output(NVector input)
@@ -35,12 +79,12 @@ public class Neuron
 
     public double getWeight(int weight)
     {
-        return vWeights.get(weight);
+        return aWeights[offset + weight];
     }
 
     public int getNumberOfWeights()
     {
-        return vWeights.size();
+        return numberOfWeights;
     }
 
     public IActivationFunction phi()
@@ -48,24 +92,29 @@ public class Neuron
         return phi;
     }
 
+    /**
+     * @warning returns a copy: setting its coordinates doesn't change the neuron, use #setWeight
+     *
+     * @return a copy of the weights
+     */
     public NVector getWeights()
     {
-        return vWeights;
+        return new NVector(Arrays.copyOfRange(aWeights, offset, offset + numberOfWeights));
     }
 
     public void setWeight(int weight, double newWeight)
     {
-        vWeights.set(weight, newWeight);
+        aWeights[offset + weight] = newWeight;
     }
 
     @Override
     public String toString()
     {
-        String rslt = String.format("%6.6g", vWeights.get(0));
-        for(int i=1; i<vWeights.size(); ++i)
+        StringBuilder rslt = new StringBuilder(String.format("%6.6g", getWeight(0)));
+        for(int i=1; i<numberOfWeights; ++i)
         {
-            rslt += "  "+String.format("%6.6g", vWeights.get(i));
+            rslt.append("  ").append(String.format("%6.6g", getWeight(i)));
         }
-        return rslt;
+        return rslt.toString();
     }
 }
@@ -0,0 +1,187 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IOptimizer;
+
+/**
+ * Update rules for MultiLayerNetwork.Builder#setOptimizer.
+ *
+ * The adaptive ones (#RMSProp, #Adam) divide by the scale of the adjustments,
+ * so the network's eta has (almost) no effect on them: their own learning rate sets the step size.
+ */
+final public class Optimizers
+{
+    private Optimizers() {}
+
+    /**
+     * The network's original rule, and the default: w' = w + alpha * (previous weight) + adjustment.
+     * The state is the previous weight.
+     */
+    public static class WeightMomentum implements IOptimizer
+    {
+        private final double alpha;
+
+        public WeightMomentum(double alpha)
+        {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public int getStateSize() { return 1; }
+
+        @Override
+        public void step(double[] aWeights, int wOff, double[] aAdjustments, int adjOff,
+                         double[] aState, int stateOff, int n, int step)
+        {
+            Vectors.momentumStep(aWeights, wOff, alpha, aState, stateOff, aAdjustments, adjOff, n);
+        }
+    }
+
+    /**
+     * Gradient descent with (heavy ball) momentum:
+     * v' = mu * v + adjustment, w' = w + v'.
+     * mu = 0 is plain gradient descent.
+     */
+    public static class Momentum implements IOptimizer
+    {
+        protected final double mu;
+
+        public Momentum(double mu)
+        {
+            if (mu < 0 || mu >= 1)
+                throw new IllegalArgumentException("momentum must be in [0, 1)");
+            this.mu = mu;
+        }
+
+        @Override
+        public int getStateSize() { return 1; }
+
+        @Override
+        public void step(double[] aWeights, int wOff, double[] aAdjustments, int adjOff,
+                         double[] aState, int stateOff, int n, int step)
+        {
+            for(int i=0; i<n; i++)
+            {
+                final double velocity = mu * aState[stateOff + i] + aAdjustments[adjOff + i];
+                aState[stateOff + i] = velocity;
+                aWeights[wOff + i] += velocity;
+            }
+        }
+    }
+
+    /**
+     * Nesterov momentum, in the form that only needs the gradient at the current weights:
+     * v' = mu * v + adjustment, w' = w + mu * v' + adjustment.
+     */
+    public static class Nesterov extends Momentum
+    {
+        public Nesterov(double mu)
+        {
+            super(mu);
+        }
+
+        @Override
+        public void step(double[] aWeights, int wOff, double[] aAdjustments, int adjOff,
+                         double[] aState, int stateOff, int n, int step)
+        {
+            for(int i=0; i<n; i++)
+            {
+                final double adjustment = aAdjustments[adjOff + i];
+                final double velocity = mu * aState[stateOff + i] + adjustment;
+                aState[stateOff + i] = velocity;
+                aWeights[wOff + i] += mu * velocity + adjustment;
+            }
+        }
+    }
+
+    /**
+     * Divides each adjustment by the root of a moving average of its square:
+     * s' = decay * s + (1 - decay) * adjustment^2, w' = w + learningRate * adjustment / (sqrt(s') + epsilon).
+     */
+    public static class RMSProp implements IOptimizer
+    {
+        private final double learningRate;
+        private final double decay;
+        private final double epsilon;
+
+        public RMSProp(double learningRate)
+        {
+            this(learningRate, 0.9, 1e-8);
+        }
+
+        public RMSProp(double learningRate, double decay, double epsilon)
+        {
+            if (decay < 0 || decay >= 1)
+                throw new IllegalArgumentException("decay must be in [0, 1)");
+            this.learningRate = learningRate;
+            this.decay = decay;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public int getStateSize() { return 1; }
+
+        @Override
+        public void step(double[] aWeights, int wOff, double[] aAdjustments, int adjOff,
+                         double[] aState, int stateOff, int n, int step)
+        {
+            for(int i=0; i<n; i++)
+            {
+                final double adjustment = aAdjustments[adjOff + i];
+                final double meanSquare = decay * aState[stateOff + i] + (1 - decay) * adjustment * adjustment;
+                aState[stateOff + i] = meanSquare;
+                aWeights[wOff + i] += learningRate * adjustment / (Math.sqrt(meanSquare) + epsilon);
+            }
+        }
+    }
+
+    /**
+     * Adam: bias-corrected moving averages of the adjustment (m) and of its square (v),
+     * w' = w + learningRate * m^ / (sqrt(v^) + epsilon).
+     * State plane 0 is m, plane 1 is v.
+     */
+    public static class Adam implements IOptimizer
+    {
+        private final double learningRate;
+        private final double beta1;
+        private final double beta2;
+        private final double epsilon;
+
+        public Adam(double learningRate)
+        {
+            this(learningRate, 0.9, 0.999, 1e-8);
+        }
+
+        public Adam(double learningRate, double beta1, double beta2, double epsilon)
+        {
+            if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1)
+                throw new IllegalArgumentException("betas must be in [0, 1)");
+            this.learningRate = learningRate;
+            this.beta1 = beta1;
+            this.beta2 = beta2;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public int getStateSize() { return 2; }
+
+        @Override
+        public void step(double[] aWeights, int wOff, double[] aAdjustments, int adjOff,
+                         double[] aState, int stateOff, int n, int step)
+        {
+            //bias corrections, once per call instead of once per weight
+            final double correction1 = 1 - Math.pow(beta1, step);
+            final double correction2 = 1 - Math.pow(beta2, step);
+            final int vOff = stateOff + n;
+
+            for(int i=0; i<n; i++)
+            {
+                final double adjustment = aAdjustments[adjOff + i];
+                final double m = beta1 * aState[stateOff + i] + (1 - beta1) * adjustment;
+                final double v = beta2 * aState[vOff + i] + (1 - beta2) * adjustment * adjustment;
+                aState[stateOff + i] = m;
+                aState[vOff + i] = v;
+                aWeights[wOff + i] += learningRate * (m / correction1) / (Math.sqrt(v / correction2) + epsilon);
+            }
+        }
+    }
+}
@@ -8,6 +8,15 @@ import java.util.Iterator;
 public class SingleLayerNeuralNetwork implements INeuralNetwork<NVector,NVector>, Iterable<Neuron>
 {
     protected Neuron[] aNeurons;
+    /**
+     * Row-major weight matrix.
+     * Row k holds neuron k's weights (bias last) and each neuron in #aNeurons is a view of its row.
+     */
+    protected double[] aWeights;
+    /**
+     * Number of columns of #aWeights i.e., the number of weights per neuron
+     */
+    protected int numberOfWeights;
     /**
      * Used for scratch
      */
@@ -28,14 +37,33 @@ public class SingleLayerNeuralNetwork implements INeuralNetwork<NVector,NVector>
     @Override
     public NVector inducedLocalField(NVector input)
     {
-        int len=0;
+        return inducedLocalField(input, vLatestOutput);
+    }
 
-        for(Neuron neuron:aNeurons)
+    /**
+     * Same as #inducedLocalField(NVector) but saves the result in vRslt.
+     * This is a single pass over the weight matrix.
+     *
+     * @warning assumes input.size() <= the number of weights per neuron!
+     *
+     * @param input the input
+     * @param vRslt where to store v_k
+     * @return vRslt
+     */
+    public NVector inducedLocalField(NVector input, NVector vRslt)
+    {
+        final double[] aInput = input.aCoords;
+        final double[] aRslt = vRslt.aCoords;
+
+        for(int k=0, row=0; k<aNeurons.length; k++, row+=numberOfWeights)
         {
-            vLatestOutput.set(len++, neuron.rawoutput(input));
+            double rslt=0;
+            for(int i=0; i<aInput.length; i++)
+                rslt += aWeights[row + i] * aInput[i];
+            aRslt[k] = rslt;
         }
 
-        return vLatestOutput;
+        return vRslt;
     }
 
     /**
@@ -51,11 +79,12 @@ public class SingleLayerNeuralNetwork implements INeuralNetwork<NVector,NVector>
      */
     public NVector output(NVector input)
     {
-        int len=0;
+        inducedLocalField(input, vLatestOutput);
 
-        for(Neuron neuron:aNeurons)
+        final double[] aRslt = vLatestOutput.aCoords;
+        for(int k=0; k<aNeurons.length; k++)
         {
-            vLatestOutput.set(len++, neuron.output(input));
+            aRslt[k] = aNeurons[k].phi.apply(aRslt[k]);
         }
 
         return vLatestOutput;
@@ -63,8 +92,31 @@ public class SingleLayerNeuralNetwork implements INeuralNetwork<NVector,NVector>
 
     public int getNumberOfNeurons() { return this.aNeurons.length; }
 
+    /**
+     * Packs the neurons' weights into #aWeights.
+     * From now on, each neuron is a view of its row in the weight matrix.
+     *
+     * @param aNeurons neurons. They must all have the same number of weights
+     *                 and can't belong to another layer.
+     */
     public void setNeurons(Neuron... aNeurons)
     {
+        final int numberOfWeights = aNeurons.length > 0 ? aNeurons[0].getNumberOfWeights() : 0;
+        for(Neuron neuron:aNeurons)
+        {
+            if (neuron.getNumberOfWeights() != numberOfWeights)
+                throw new IllegalArgumentException("all neurons in a layer must have the same number of weights");
+            if (neuron.layer != null && neuron.layer != this)
+                throw new IllegalArgumentException("neuron already belongs to another layer");
+        }
+
+        this.numberOfWeights = numberOfWeights;
+        this.aWeights = new double[aNeurons.length * numberOfWeights];
+        for(int k=0; k<aNeurons.length; k++)
+        {
+            aNeurons[k].bind(this, aWeights, k * numberOfWeights);
+        }
+
         this.aNeurons = aNeurons;
         this.vLatestOutput = new NVector().setSize(aNeurons.length);
     }
@@ -96,4 +148,6 @@ public class SingleLayerNeuralNetwork implements INeuralNetwork<NVector,NVector>
 
     public Neuron getNeuron(int neuron) { return aNeurons[neuron]; }
 
+    public int getNumberOfWeights() { return numberOfWeights; }
+
 }
@@ -0,0 +1,323 @@
+package com.neuralnetwork.core;
+
+import java.util.Arrays;
+
+/**
+ * Dense n-dimensional array of doubles backed by a single flat double[].
+ *
+ * Element (i0, i1, ..., ik) lives at aData[offset + i0*stride0 + i1*stride1 + ... + ik].
+ * The last dimension is always contiguous (stride 1), so a row of the last dimension
+ * is a plain span of the backing array that loops can walk without bounds checks per row object.
+ *
+ * Views (#slice, #narrow, #reshape) share the backing array with the tensor they come from:
+ * writing through one is seen by the other, nothing is copied.
+ */
+public class Tensor
+{
+    final double[] aData;
+    final int offset;
+    final int[] aShape;
+    final int[] aStrides;
+
+    /**
+     * Allocates a contiguous tensor of zeros
+     *
+     * @param aShape size of each dimension
+     */
+    public Tensor(int... aShape)
+    {
+        this(new double[numberOfElements(aShape)], 0, aShape.clone(), contiguousStrides(aShape));
+    }
+
+    protected Tensor(double[] aData, int offset, int[] aShape, int[] aStrides)
+    {
+        if (aShape.length == 0)
+            throw new IllegalArgumentException("a tensor needs at least one dimension");
+        for(int size:aShape)
+            if (size < 0)
+                throw new IllegalArgumentException("sizes can't be negative: "+Arrays.toString(aShape));
+
+        this.aData = aData;
+        this.offset = offset;
+        this.aShape = aShape;
+        this.aStrides = aStrides;
+    }
+
+    /**
+     * Contiguous tensor over the given array, without copying it
+     *
+     * @param aData data in row-major order
+     * @param aShape size of each dimension
+     * @return tensor
+     */
+    public static Tensor wrap(double[] aData, int... aShape)
+    {
+        if (numberOfElements(aShape) > aData.length)
+            throw new IllegalArgumentException("shape "+Arrays.toString(aShape)+" doesn't fit in "+aData.length+" elements");
+        return new Tensor(aData, 0, aShape.clone(), contiguousStrides(aShape));
+    }
+
+    /**
+     * Copies rows into a new contiguous rows x columns tensor
+     *
+     * @param aRows rows, all the same length
+     * @return tensor
+     */
+    public static Tensor of(double[][] aRows)
+    {
+        final int columns = aRows.length > 0 ? aRows[0].length : 0;
+        Tensor tensor = new Tensor(aRows.length, columns);
+        for(int i=0; i<aRows.length; i++)
+        {
+            if (aRows[i].length != columns)
+                throw new IllegalArgumentException("rows must all have the same length");
+            System.arraycopy(aRows[i], 0, tensor.aData, i * columns, columns);
+        }
+        return tensor;
+    }
+
+    /**
+     * Copies channels of rows into a new contiguous channels x rows x columns tensor
+     *
+     * @param aChannels channels, all the same dimensions
+     * @return tensor
+     */
+    public static Tensor of(double[][][] aChannels)
+    {
+        final int rows = aChannels.length > 0 ? aChannels[0].length : 0;
+        final int columns = rows > 0 ? aChannels[0][0].length : 0;
+        Tensor tensor = new Tensor(aChannels.length, rows, columns);
+        for(int c=0; c<aChannels.length; c++)
+        {
+            if (aChannels[c].length != rows)
+                throw new IllegalArgumentException("channels must all have the same dimensions");
+            tensor.slice(c).set(of(aChannels[c]));
+        }
+        return tensor;
+    }
+
+    private static int numberOfElements(int[] aShape)
+    {
+        long n = 1;
+        for(int size:aShape)
+            n *= size;
+        if (n > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many elements: "+Arrays.toString(aShape));
+        return (int) n;
+    }
+
+    private static int[] contiguousStrides(int[] aShape)
+    {
+        final int[] aStrides = new int[aShape.length];
+        int stride = 1;
+        for(int dim=aShape.length - 1; dim>=0; dim--)
+        {
+            aStrides[dim] = stride;
+            stride *= aShape[dim];
+        }
+        return aStrides;
+    }
+
+    public int rank() { return aShape.length; }
+
+    public int size(int dim) { return aShape[dim]; }
+
+    public int[] shape() { return aShape.clone(); }
+
+    /**
+     * @param dim dimension
+     * @return distance in the backing array between two consecutive indices of the dimension
+     */
+    public int stride(int dim) { return aStrides[dim]; }
+
+    public int numberOfElements() { return numberOfElements(aShape); }
+
+    /**
+     * @return the backing array, shared with every view of it
+     */
+    public double[] data() { return aData; }
+
+    /**
+     * @return position of element (0, ..., 0) in #data()
+     */
+    public int offset() { return offset; }
+
+    /**
+     * @return position of the start of index i of the first dimension in #data(), e.g. the start of row i
+     */
+    public int offset(int i) { return offset + i * aStrides[0]; }
+
+    public int offset(int i, int j) { return offset + i * aStrides[0] + j * aStrides[1]; }
+
+    public int offset(int i, int j, int k) { return offset + i * aStrides[0] + j * aStrides[1] + k * aStrides[2]; }
+
+    public double get(int i) { return aData[offset + i * aStrides[0]]; }
+
+    public double get(int i, int j) { return aData[offset(i, j)]; }
+
+    public double get(int i, int j, int k) { return aData[offset(i, j, k)]; }
+
+    public Tensor set(int i, double value)
+    {
+        aData[offset + i * aStrides[0]] = value;
+        return this;
+    }
+
+    public Tensor set(int i, int j, double value)
+    {
+        aData[offset(i, j)] = value;
+        return this;
+    }
+
+    public Tensor set(int i, int j, int k, double value)
+    {
+        aData[offset(i, j, k)] = value;
+        return this;
+    }
+
+    /**
+     * Copies the elements of a tensor of the same shape into this one
+     *
+     * @param tensor tensor
+     * @return this
+     */
+    public Tensor set(Tensor tensor)
+    {
+        if (!Arrays.equals(aShape, tensor.aShape))
+            throw new IllegalArgumentException("shapes differ: "+Arrays.toString(aShape)+" and "+Arrays.toString(tensor.aShape));
+
+        if (isContiguous() && tensor.isContiguous())
+        {
+            System.arraycopy(tensor.aData, tensor.offset, aData, offset, numberOfElements());
+            return this;
+        }
+        //the last dimension is contiguous, so only tensors of rank 2 or more get here
+        for(int i=0; i<aShape[0]; i++)
+            slice(i).set(tensor.slice(i));
+        return this;
+    }
+
+    public Tensor fill(double value)
+    {
+        if (isContiguous())
+        {
+            Arrays.fill(aData, offset, offset + numberOfElements(), value);
+            return this;
+        }
+        //the last dimension is contiguous, so only tensors of rank 2 or more get here
+        for(int i=0; i<aShape[0]; i++)
+            slice(i).fill(value);
+        return this;
+    }
+
+    /**
+     * @return whether the elements are the span #data()[#offset() .. #offset() + #numberOfElements()) in row-major order
+     */
+    public boolean isContiguous()
+    {
+        int stride = 1;
+        for(int dim=aShape.length - 1; dim>=0; dim--)
+        {
+            if (aShape[dim] > 1 && aStrides[dim] != stride) return false;
+            stride *= aShape[dim];
+        }
+        return true;
+    }
+
+    /**
+     * View of index i of the first dimension, e.g. row i of a matrix or channel i of an image
+     *
+     * @param i index
+     * @return tensor with one dimension less
+     */
+    public Tensor slice(int i)
+    {
+        if (aShape.length == 1)
+            throw new IllegalArgumentException("can't slice a tensor of rank 1");
+        if (i < 0 || i >= aShape[0])
+            throw new IllegalArgumentException("no index "+i+" in a dimension of size "+aShape[0]);
+
+        return new Tensor(aData, offset(i),
+                          Arrays.copyOfRange(aShape, 1, aShape.length),
+                          Arrays.copyOfRange(aStrides, 1, aStrides.length));
+    }
+
+    /**
+     * View of the indices start..start+length-1 of a dimension, e.g. a window of an image
+     *
+     * @param dim dimension
+     * @param start first index
+     * @param length number of indices
+     * @return tensor of the same rank
+     */
+    public Tensor narrow(int dim, int start, int length)
+    {
+        if (start < 0 || length < 0 || start + length > aShape[dim])
+            throw new IllegalArgumentException("["+start+", "+(start+length)+") isn't in a dimension of size "+aShape[dim]);
+
+        final int[] aNarrowShape = aShape.clone();
+        aNarrowShape[dim] = length;
+        return new Tensor(aData, offset + start * aStrides[dim], aNarrowShape, aStrides.clone());
+    }
+
+    /**
+     * View of a contiguous tensor with another shape, e.g. a channels x rows x columns image as one long vector
+     *
+     * @param aShape new shape, with the same number of elements
+     * @return tensor
+     */
+    public Tensor reshape(int... aShape)
+    {
+        if (!isContiguous())
+            throw new IllegalArgumentException("only a contiguous tensor can be reshaped");
+        if (numberOfElements(aShape) != numberOfElements())
+            throw new IllegalArgumentException("can't reshape "+Arrays.toString(this.aShape)+" as "+Arrays.toString(aShape));
+        return new Tensor(aData, offset, aShape.clone(), contiguousStrides(aShape));
+    }
+
+    /**
+     * @return contiguous copy
+     */
+    public Tensor copy()
+    {
+        return new Tensor(aShape).set(this);
+    }
+
+    /**
+     * The elements in row-major order as a vector, e.g. to feed a feature map to a MultiLayerNetwork.
+     *
+     * When the tensor is exactly its backing array (as a tensor allocated by #Tensor(int...) or #wrap is)
+     * the vector shares it, without copying; otherwise the elements are copied.
+     *
+     * @return vector
+     */
+    public NVector toVector()
+    {
+        NVector vector = new NVector();
+        if (offset == 0 && aData.length == numberOfElements() && isContiguous())
+            vector.aCoords = aData;
+        else
+            vector.aCoords = copy().aData;
+        return vector;
+    }
+
+    /**
+     * @return copy of a tensor of rank 2 as rows
+     */
+    public double[][] toArray()
+    {
+        if (aShape.length != 2)
+            throw new IllegalArgumentException("only a tensor of rank 2 converts to rows");
+
+        final double[][] aRows = new double[aShape[0]][];
+        for(int i=0; i<aRows.length; i++)
+            aRows[i] = Arrays.copyOfRange(aData, offset(i), offset(i) + aShape[1]);
+        return aRows;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(aShape) + " " + toVector();
+    }
+}
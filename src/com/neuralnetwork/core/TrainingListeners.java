@@ -0,0 +1,258 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.ITrainingListener;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+final public class TrainingListeners
+{
+    private TrainingListeners() {}
+
+    /**
+     * Does nothing. The default.
+     */
+    public static class NoOpListener implements ITrainingListener
+    {
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond) {}
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond) {}
+    }
+
+    /**
+     * Passes every event on to each of the listeners, in order.
+     */
+    public static class AllOf implements ITrainingListener
+    {
+        private final ITrainingListener[] aListeners;
+
+        public AllOf(ITrainingListener... aListeners)
+        {
+            this.aListeners = aListeners.clone();
+        }
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            for(ITrainingListener listener : aListeners)
+                listener.epochFinished(epoch, error, elapsedNanos, examplesPerSecond);
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            for(ITrainingListener listener : aListeners)
+                listener.trainingFinished(epoch, error, elapsedNanos, examplesPerSecond);
+        }
+    }
+
+    /**
+     * Only passes on every nth epoch. The end of training is always passed on.
+     */
+    public static class EveryNEpochs implements ITrainingListener
+    {
+        private final int n;
+        private final ITrainingListener listener;
+
+        public EveryNEpochs(int n, ITrainingListener listener)
+        {
+            if (n <= 0)
+                throw new IllegalArgumentException("n must be positive");
+            this.n = n;
+            this.listener = listener;
+        }
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            if (epoch % n == 0)
+                listener.epochFinished(epoch, error, elapsedNanos, examplesPerSecond);
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            listener.trainingFinished(epoch, error, elapsedNanos, examplesPerSecond);
+        }
+    }
+
+    /**
+     * Passes on at most one epoch every given number of seconds.
+     * The end of training is always passed on.
+     */
+    public static class EveryTSeconds implements ITrainingListener
+    {
+        private final long periodNanos;
+        private final ITrainingListener listener;
+        private long nextNanos;
+
+        public EveryTSeconds(double seconds, ITrainingListener listener)
+        {
+            this.periodNanos = (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+            this.listener = listener;
+        }
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            if (epoch == 1) nextNanos = 0;
+            if (elapsedNanos >= nextNanos)
+            {
+                nextNanos = elapsedNanos + periodNanos;
+                listener.epochFinished(epoch, error, elapsedNanos, examplesPerSecond);
+            }
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            listener.trainingFinished(epoch, error, elapsedNanos, examplesPerSecond);
+        }
+    }
+
+    /**
+     * Logs to a PrintStream from its own thread so the training thread never waits on I/O.
+     *
+     * Events are stored as primitives in a fixed-size ring buffer.
+     * If the logging thread falls behind and the buffer is full, new events are dropped
+     * (and counted) instead of blocking the training thread.
+     * Call #close (or use try-with-resources) to log the remaining events and stop the logging thread.
+     */
+    public static class AsyncLogger implements ITrainingListener, AutoCloseable
+    {
+        private final PrintStream out;
+        private final int capacity;
+
+        /**
+         * Ring buffer. The training thread writes slot (head % capacity), the logging thread reads slot (tail % capacity)
+         */
+        private final int[] aEpochs;
+        private final double[] aErrors;
+        private final long[] aElapsedNanos;
+        private final double[] aExamplesPerSecond;
+        private final boolean[] aFinished;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private volatile boolean running = true;
+        private final Thread thread;
+
+        public AsyncLogger(PrintStream out)
+        {
+            this(out, 1024);
+        }
+
+        public AsyncLogger(PrintStream out, int capacity)
+        {
+            this.out = out;
+            this.capacity = capacity;
+            this.aEpochs = new int[capacity];
+            this.aErrors = new double[capacity];
+            this.aElapsedNanos = new long[capacity];
+            this.aExamplesPerSecond = new double[capacity];
+            this.aFinished = new boolean[capacity];
+
+            this.thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    drain();
+                }
+            }, AsyncLogger.class.getSimpleName());
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            offer(epoch, error, elapsedNanos, examplesPerSecond, false);
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            offer(epoch, error, elapsedNanos, examplesPerSecond, true);
+        }
+
+        /**
+         * @return number of events dropped because the buffer was full
+         */
+        public long getDropped()
+        {
+            return dropped.get();
+        }
+
+        /**
+         * Logs the remaining events and stops the logging thread.
+         * If interrupted while waiting, returns early with the interrupt flag set.
+         */
+        @Override
+        public void close()
+        {
+            running = false;
+            LockSupport.unpark(thread);
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void offer(int epoch, double error, long elapsedNanos, double examplesPerSecond, boolean finished)
+        {
+            final long h = head.get();
+            if (h - tail.get() >= capacity)
+            {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            final int slot = (int) (h % capacity);
+            aEpochs[slot] = epoch;
+            aErrors[slot] = error;
+            aElapsedNanos[slot] = elapsedNanos;
+            aExamplesPerSecond[slot] = examplesPerSecond;
+            aFinished[slot] = finished;
+            head.lazySet(h + 1); //publishes the slot
+
+            LockSupport.unpark(thread);
+        }
+
+        private void drain()
+        {
+            while(true)
+            {
+                final long t = tail.get();
+                if (t < head.get())
+                {
+                    final int slot = (int) (t % capacity);
+                    out.format("%s %d: error = %g, elapsed = %.3f s, examples/s = %.1f%n",
+                            aFinished[slot] ? "Finished at epoch" : "Epoch",
+                            aEpochs[slot],
+                            aErrors[slot],
+                            aElapsedNanos[slot] / 1e9,
+                            aExamplesPerSecond[slot]);
+                    tail.lazySet(t + 1); //frees the slot
+                }
+                else if (running)
+                {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                else if (t >= head.get()) //re-check: events may have been added before #close
+                {
+                    out.flush();
+                    return;
+                }
+            }
+        }
+    }
+}
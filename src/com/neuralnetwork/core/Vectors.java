@@ -0,0 +1,171 @@
+package com.neuralnetwork.core;
+
+/**
+ * Kernels for vectors stored in flat double[] arrays, and float[] arrays for {@link FVector}.
+ *
+ * The reductions (#dot, #dotProduct, #sum) use four independent accumulators.
+ * A single accumulator makes every addition wait on the previous one
+ * and stops the JIT from vectorizing the loop.
+ * The element-wise kernels (#axpy, #scaleAdd, #momentumStep) have no such dependency
+ * and compute exactly what the equivalent scalar loop computes.
+ * The float reductions accumulate in double.
+ *
+ * These are plain Java loops rather than jdk.incubator.vector kernels:
+ * the JDK this builds on ships that module, but as an incubator it must be added with
+ * --add-modules jdk.incubator.vector both to compile this class and to run anything that loads it,
+ * which every user of the library would inherit.
+ */
+final public class Vectors
+{
+    private Vectors() {}
+
+    /**
+     * @return a[aOff..aOff+n) . b[bOff..bOff+n)
+     */
+    public static double dot(final double[] a, final int aOff, final double[] b, final int bOff, final int n)
+    {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for(; i<=n-4; i+=4)
+        {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        //tail
+        for(; i<n; i++)
+            s0 += a[aOff + i] * b[bOff + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return a[aOff..aOff+n) . b[bOff..bOff+n), accumulated in double
+     */
+    public static double dot(final float[] a, final int aOff, final float[] b, final int bOff, final int n)
+    {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for(; i<=n-4; i+=4)
+        {
+            s0 += (double) a[aOff + i] * b[bOff + i];
+            s1 += (double) a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += (double) a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += (double) a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        //tail
+        for(; i<n; i++)
+            s0 += (double) a[aOff + i] * b[bOff + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return a[aOff..aOff+n) . a[aOff..aOff+n)
+     */
+    public static double dotProduct(final double[] a, final int aOff, final int n)
+    {
+        return dot(a, aOff, a, aOff, n);
+    }
+
+    /**
+     * @return a[aOff..aOff+n) . a[aOff..aOff+n), accumulated in double
+     */
+    public static double dotProduct(final float[] a, final int aOff, final int n)
+    {
+        return dot(a, aOff, a, aOff, n);
+    }
+
+    /**
+     * @return sum of a[aOff..aOff+n)
+     */
+    public static double sum(final double[] a, final int aOff, final int n)
+    {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for(; i<=n-4; i+=4)
+        {
+            s0 += a[aOff + i];
+            s1 += a[aOff + i + 1];
+            s2 += a[aOff + i + 2];
+            s3 += a[aOff + i + 3];
+        }
+        //tail
+        for(; i<n; i++)
+            s0 += a[aOff + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return sum of a[aOff..aOff+n), accumulated in double
+     */
+    public static double sum(final float[] a, final int aOff, final int n)
+    {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for(; i<=n-4; i+=4)
+        {
+            s0 += a[aOff + i];
+            s1 += a[aOff + i + 1];
+            s2 += a[aOff + i + 2];
+            s3 += a[aOff + i + 3];
+        }
+        //tail
+        for(; i<n; i++)
+            s0 += a[aOff + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * y += alpha * x
+     */
+    public static void axpy(final double alpha,
+                            final double[] x, final int xOff,
+                            final double[] y, final int yOff,
+                            final int n)
+    {
+        for(int i=0; i<n; i++)
+            y[yOff + i] += alpha * x[xOff + i];
+    }
+
+    /**
+     * z = x + alpha * y
+     */
+    public static void scaleAdd(final double[] x, final int xOff,
+                                final double alpha, final double[] y, final int yOff,
+                                final double[] z, final int zOff,
+                                final int n)
+    {
+        for(int i=0; i<n; i++)
+            z[zOff + i] = x[xOff + i] + alpha * y[yOff + i];
+    }
+
+    /**
+     * z = x + alpha * y, in single precision
+     */
+    public static void scaleAdd(final float[] x, final int xOff,
+                                final float alpha, final float[] y, final int yOff,
+                                final float[] z, final int zOff,
+                                final int n)
+    {
+        for(int i=0; i<n; i++)
+            z[zOff + i] = x[xOff + i] + alpha * y[yOff + i];
+    }
+
+    /**
+     * The backprop weight update, fused into one pass:
+     *     w' = w + alpha * prev + delta
+     *     prev' = w
+     */
+    public static void momentumStep(final double[] w, final int wOff,
+                                    final double alpha, final double[] prev, final int prevOff,
+                                    final double[] delta, final int deltaOff,
+                                    final int n)
+    {
+        for(int i=0; i<n; i++)
+        {
+            final double curWeight = w[wOff + i];
+            w[wOff + i] = curWeight + alpha * prev[prevOff + i] + delta[deltaOff + i];
+            prev[prevOff + i] = curWeight;
+        }
+    }
+}
@@ -4,8 +4,58 @@ public interface IActivationFunction
 {
     public double apply(double v);
 
+    /**
+     * Applies the function to aV[vOff..vOff+n)
+     *
+     * @param aV values
+     * @param vOff offset of the first value
+     * @param aRslt where to store the results
+     * @param rsltOff offset of the first result
+     * @param n number of values
+     */
+    default public void apply(double[] aV, int vOff, double[] aRslt, int rsltOff, int n)
+    {
+        for(int i=0; i<n; i++)
+            aRslt[rsltOff + i] = apply(aV[vOff + i]);
+    }
+
     public interface IDifferentiableFunction extends IActivationFunction
     {
         public double derivative(double v);
+
+        /**
+         * Array version of #derivative(double), see IActivationFunction#apply(double[], int, double[], int, int)
+         */
+        default public void derivative(double[] aV, int vOff, double[] aRslt, int rsltOff, int n)
+        {
+            for(int i=0; i<n; i++)
+                aRslt[rsltOff + i] = derivative(aV[vOff + i]);
+        }
+
+        /**
+         * Stores the function and its derivative at aV[vOff..vOff+n) in one pass.
+         * Functions whose derivative shares work with the function (e.g. the exp of a sigmoid)
+         * should override it to do that work once.
+         *
+         * @param aV values
+         * @param vOff offset of the first value
+         * @param aValues where to store the function values
+         * @param valuesOff offset of the first function value
+         * @param aDerivatives where to store the derivatives
+         * @param derivativesOff offset of the first derivative
+         * @param n number of values
+         */
+        default public void applyWithDerivative(double[] aV, int vOff,
+                                                double[] aValues, int valuesOff,
+                                                double[] aDerivatives, int derivativesOff,
+                                                int n)
+        {
+            for(int i=0; i<n; i++)
+            {
+                final double v = aV[vOff + i];
+                aValues[valuesOff + i] = apply(v);
+                aDerivatives[derivativesOff + i] = derivative(v);
+            }
+        }
     }
 }
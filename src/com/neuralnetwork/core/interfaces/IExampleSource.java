@@ -0,0 +1,33 @@
+package com.neuralnetwork.core.interfaces;
+
+import com.neuralnetwork.core.NVector;
+
+/**
+ * A stream of training examples (input, expected output).
+ *
+ * The trainer reads the examples one epoch at a time into buffers it owns,
+ * so the source never has to hold the whole data set in memory.
+ */
+public interface IExampleSource
+{
+    /**
+     * Rewinds to the start of the data set.
+     * Calling it twice with the same epoch must give the same order.
+     *
+     * @param epoch epoch about to start (starts at 1). Sources that shuffle use it to pick the order.
+     */
+    public void startEpoch(int epoch);
+
+    /**
+     * Copies the next example into the given vectors
+     *
+     * @param vInput where to store the input. Its size is #getInputSize().
+     * @param vExpected where to store the expected output. Its size is #getExpectedSize().
+     * @return false if there are no more examples in this epoch
+     */
+    public boolean next(NVector vInput, NVector vExpected);
+
+    public int getInputSize();
+
+    public int getExpectedSize();
+}
@@ -0,0 +1,34 @@
+package com.neuralnetwork.core.interfaces;
+
+/**
+ * Update rule applied to the weights once the adjustments of a batch are known.
+ *
+ * The optimizer keeps no per-weight state of its own: the network stores it
+ * in a flat double[] per layer, next to the layer's weights, and passes it back on every step.
+ */
+public interface IOptimizer
+{
+    /**
+     * @return number of doubles of state per weight (0 if none)
+     */
+    public int getStateSize();
+
+    /**
+     * Adjusts the weights aWeights[wOff..wOff+n)
+     *
+     * @param aWeights weights
+     * @param wOff offset of the first weight
+     * @param aAdjustments adjustments of the batch: eta times the sum over the examples of gradient times input.
+     *                     Adding them to the weights is plain gradient descent.
+     * @param adjOff offset of the first adjustment
+     * @param aState state of the weights: #getStateSize() planes of n doubles, plane s starting at stateOff + s*n.
+     *               All 0 before the first step.
+     * @param stateOff offset of the state
+     * @param n number of weights
+     * @param step number of steps so far, this one included (starts at 1)
+     */
+    public void step(double[] aWeights, int wOff,
+                     double[] aAdjustments, int adjOff,
+                     double[] aState, int stateOff,
+                     int n, int step);
+}
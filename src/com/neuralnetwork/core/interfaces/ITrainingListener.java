@@ -0,0 +1,25 @@
+package com.neuralnetwork.core.interfaces;
+
+/**
+ * Gets told about the progress of training.
+ *
+ * Called on the training thread, so implementations should return quickly.
+ */
+public interface ITrainingListener
+{
+    /**
+     * @param epoch epoch that just finished (starts at 1)
+     * @param error total error after the epoch
+     * @param elapsedNanos time since training started
+     * @param examplesPerSecond examples trained per second since training started
+     */
+    public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond);
+
+    /**
+     * @param epoch last epoch
+     * @param error final error
+     * @param elapsedNanos total training time
+     * @param examplesPerSecond examples trained per second
+     */
+    public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond);
+}
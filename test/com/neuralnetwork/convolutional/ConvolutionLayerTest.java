@@ -0,0 +1,150 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.ActivationFunctions;
+import com.neuralnetwork.core.NVector;
+import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Tensor;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ConvolutionLayerTest
+{
+    private static Tensor randomInput(Random r, int channels, int size)
+    {
+        final Tensor input = new Tensor(channels, size, size);
+        for(int c=0; c<channels; c++)
+            for(int i=0; i<size; i++)
+                for(int j=0; j<size; j++)
+                    input.set(c, i, j, r.nextDouble());
+        return input;
+    }
+
+    private static Neuron randomKernel(Random r, int numberWeights)
+    {
+        double[] weights = new double[numberWeights];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian() / 5;
+        return new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+    }
+
+    @Test
+    public void testSameAsConvolutionFunction()
+    {
+        final int inputSize = 60;
+        final int kernelSize = 5;
+        Random r = new Random(200012);
+        final Tensor input = randomInput(r, 1, inputSize);
+        Neuron kernel = randomKernel(r, kernelSize * kernelSize + 1);
+
+        FeatureMap.ConvolutionFunction mapFunction = new FeatureMap.ConvolutionFunction(kernel);
+        mapFunction.setReceptiveFieldSize(kernelSize * kernelSize);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize).setMapFunction(mapFunction));
+
+        ConvolutionLayer layer = new ConvolutionLayer(new ConvolutionLayer.Builder()
+                .setInputSize(inputSize)
+                .setReceptiveFieldSize(kernelSize * kernelSize)
+                .setKernels(kernel));
+
+        final Tensor expected = featureMap.output(input.slice(0)).getFeatureMap();
+        final Tensor actual = layer.output(input).getFeatureMap(0);
+        assertThat(layer.getOutputSize(), is(expected.size(0)));
+        for(int i=0; i<expected.size(0); i++)
+            for(int j=0; j<expected.size(1); j++)
+                assertThat(actual.get(i, j), is(expected.get(i, j)));
+    }
+
+    @Test
+    public void testChannelsStrideAndPadding()
+    {
+        final int inputSize = 41;
+        final int channels = 2;
+        final int kernelSize = 3;
+        final int stride = 2;
+        final int padding = 1;
+        Random r = new Random(200013);
+        final Tensor input = randomInput(r, channels, inputSize);
+        Neuron[] kernels = new Neuron[3];
+        for(int m=0; m<kernels.length; m++)
+            kernels[m] = randomKernel(r, channels * kernelSize * kernelSize + 1);
+
+        ConvolutionLayer layer = new ConvolutionLayer(new ConvolutionLayer.Builder()
+                .setInputSize(inputSize)
+                .setInputChannels(channels)
+                .setReceptiveFieldSize(kernelSize * kernelSize)
+                .setStride(stride)
+                .setPadding(padding)
+                .setKernels(kernels));
+        layer.output(input);
+
+        final int outputSize = (inputSize + 2 * padding - kernelSize) / stride + 1;
+        assertThat(layer.getOutputSize(), is(outputSize));
+        assertThat(layer.getNumberOfKernels(), is(kernels.length));
+
+        for(int m=0; m<kernels.length; m++)
+            for(int i=0; i<outputSize; i++)
+                for(int j=0; j<outputSize; j++)
+                {
+                    //same summation order as the layer: channel, row, column, then the bias
+                    double sum = 0;
+                    int w = 0;
+                    for(int c=0; c<channels; c++)
+                        for(int u=0; u<kernelSize; u++)
+                            for(int v=0; v<kernelSize; v++)
+                            {
+                                final int y = i * stride - padding + u;
+                                final int x = j * stride - padding + v;
+                                final double in = y < 0 || y >= inputSize || x < 0 || x >= inputSize ? 0 : input.get(c, y, x);
+                                sum += in * kernels[m].getWeight(w++);
+                            }
+                    sum += kernels[m].getWeight(w);
+
+                    assertThat(layer.getFeatureMap(m).get(i, j), is(kernels[m].phi().apply(sum)));
+                }
+    }
+
+    @Test
+    public void testFeedsSubSampling()
+    {
+        Random r = new Random(200014);
+        ConvolutionLayer layer = new ConvolutionLayer(new ConvolutionLayer.Builder()
+                .setInputSize(9)
+                .setInputChannels(2)
+                .setReceptiveFieldSize(2 * 2)
+                .setKernels(randomKernel(r, 2 * 4 + 1), randomKernel(r, 2 * 4 + 1)));
+        layer.output(randomInput(r, 2, 9));
+
+        FeatureMap.SubSamplingFunction subSampling = new FeatureMap.SubSamplingFunction(
+                new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 1.0, 0.0));
+        subSampling.setReceptiveFieldSize(2 * 2);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder()
+                .setInputSize(layer.getOutputSize())
+                .setMapFunction(subSampling));
+
+        final Tensor map = layer.getFeatureMap(1);
+        final Tensor subSampled = featureMap.output(map).getFeatureMap();
+        assertThat(subSampled.size(0), is(4));
+        assertThat(subSampled.get(1, 2), is(new ActivationFunctions.SigmoidUnityFunction().apply(
+                map.get(2, 4) + map.get(2, 5) + map.get(3, 4) + map.get(3, 5))));
+
+        //the maps are views of the layer's output, which the network input shares
+        final NVector vNetworkInput = layer.getFeatureMaps().toVector();
+        assertThat(vNetworkInput.size(), is(2 * 8 * 8));
+        assertThat(vNetworkInput.get(8 * 8 + 2 * 8 + 4), is(map.get(2, 4)));
+        map.set(2, 4, -1);
+        assertThat(vNetworkInput.get(8 * 8 + 2 * 8 + 4), is(-1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfWeights()
+    {
+        new ConvolutionLayer(new ConvolutionLayer.Builder()
+                .setInputSize(9)
+                .setInputChannels(2)
+                .setReceptiveFieldSize(2 * 2)
+                .setKernels(randomKernel(new Random(1), 4 + 1)));
+    }
+}
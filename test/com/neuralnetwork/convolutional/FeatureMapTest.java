@@ -1,10 +1,19 @@
 package com.neuralnetwork.convolutional;
 
 import com.neuralnetwork.core.ActivationFunctions;
+import com.neuralnetwork.core.MultiLayerNetwork;
+import com.neuralnetwork.core.NVector;
 import com.neuralnetwork.core.Neuron;
+import com.neuralnetwork.core.Optimizers;
+import com.neuralnetwork.core.SingleLayerNeuralNetwork;
+import com.neuralnetwork.core.Tensor;
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 public class FeatureMapTest
@@ -33,28 +42,28 @@ public class FeatureMapTest
         featureMap.output(input);
 
         //1 2 3 4 5 ... 24 25 26 27 28
-        assertThat(featureMap.aFeatureMap.length, is(2) );
+        assertThat(featureMap.tFeatureMap.size(0), is(2) );
 
         double o11 = input[0][0]*weights[0] + input[0][1]*weights[1]
                 + input[1][0]*weights[2] + input[1][1]*weights[3]
                 + weights[4];
         o11 = phi.apply(o11);
 
-        assertThat(featureMap.aFeatureMap[0][0], is(o11));
+        assertThat(featureMap.tFeatureMap.get(0, 0), is(o11));
 
         double o12 = input[0][1]*weights[0] + input[0][2]*weights[1]
                 + input[1][1]*weights[2] + input[1][2]*weights[3]
                 + weights[4];
         o12 = phi.apply(o12);
 
-        assertThat(featureMap.aFeatureMap[0][1], is(o12));
+        assertThat(featureMap.tFeatureMap.get(0, 1), is(o12));
 
         double o21 = input[1][0]*weights[0] + input[1][1]*weights[1]
                 + input[2][0]*weights[2] + input[2][1]*weights[3]
                 + weights[4];
         o21 = phi.apply(o21);
 
-        assertThat(featureMap.aFeatureMap[1][0], is(o21));
+        assertThat(featureMap.tFeatureMap.get(1, 0), is(o21));
     }
 
     @Test
@@ -82,25 +91,25 @@ public class FeatureMapTest
         featureMap.output(input);
 
         //1 2 3 4 5 ... 24 25 26 27 28
-        assertThat(featureMap.aFeatureMap.length, is(2) );
+        assertThat(featureMap.tFeatureMap.size(0), is(2) );
 
         double o11 = (1 + 2 + 5 + 6);
         o11 = o11 * weights[0] + weights[1];
         o11 = phi.apply(o11);
 
-        assertThat(featureMap.aFeatureMap[0][0], is(o11));
+        assertThat(featureMap.tFeatureMap.get(0, 0), is(o11));
 
         double o12 = (3 + 4 + 7 + 8);
         o12 = o12 * weights[0] + weights[1];
         o12 = phi.apply(o12);
 
-        assertThat(featureMap.aFeatureMap[0][1], is(o12));
+        assertThat(featureMap.tFeatureMap.get(0, 1), is(o12));
 
         double o21 = (9 + 10 + 13 + 14);
         o21 = o21 * weights[0] + weights[1];
         o21 = phi.apply(o21);
 
-        assertThat(featureMap.aFeatureMap[1][0], is(o21));
+        assertThat(featureMap.tFeatureMap.get(1, 0), is(o21));
 
     }
 
@@ -127,7 +136,7 @@ public class FeatureMapTest
                .setMapFunction(convolutionFunc);
         FeatureMap convolutionMap = new FeatureMap(builder);
 
-        final double[][] output = convolutionMap.output(input).getFeatureMap();
+        final Tensor output = convolutionMap.output(input).getFeatureMap();
 
         final double[] weights2 = {0.3, 0.4};
 
@@ -140,7 +149,7 @@ public class FeatureMapTest
                .setMapFunction(subsampFunc);
         FeatureMap featureMap = new FeatureMap(builder);
 
-        final double[][] rslt = featureMap.output(output).getFeatureMap();
+        final Tensor rslt = featureMap.output(output).getFeatureMap();
 
         final double o11 = phi.apply(
                            1*0.01 + 2*0.02 + 3*0.03
@@ -159,12 +168,603 @@ public class FeatureMapTest
                         + 10*0.04 + 11*0.05 + 12*0.06
                         + 14*0.07 + 15*0.08 + 16*0.09 + 0.1);
 
-        assertThat(o11, is(output[0][0]));
-        assertThat(o12, is(output[0][1]));
-        assertThat(o21, is(output[1][0]));
-        assertThat(o22, is(output[1][1]));
+        assertThat(o11, is(output.get(0, 0)));
+        assertThat(o12, is(output.get(0, 1)));
+        assertThat(o21, is(output.get(1, 0)));
+        assertThat(o22, is(output.get(1, 1)));
 
         final double r11 = phi.apply( (o11 + o12 + o21 + o22)*weights2[0] + weights2[1] );
-        assertThat(r11, is(rslt[0][0]));
+        assertThat(r11, is(rslt.get(0, 0)));
+    }
+
+    @Test
+    public void testConvolutionIm2col()
+    {
+        //big enough to be done in several strips
+        final int inputSize = 100;
+        final int kernelSize = 5;
+
+        Random r = new Random(100012);
+        final double[][] input = new double[inputSize][inputSize];
+        for(double[] row:input)
+            for(int j=0; j<row.length; j++)
+                row[j] = r.nextDouble();
+        double[] weights = new double[kernelSize * kernelSize + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian() / kernelSize;
+
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Neuron neuron = new Neuron(phi, weights);
+
+        FeatureMap.ConvolutionFunction windowFunc = new FeatureMap.ConvolutionFunction(neuron);
+        windowFunc.setReceptiveFieldSize(kernelSize * kernelSize);
+        FeatureMap windowMap = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize).setMapFunction(windowFunc));
+
+        FeatureMap.ConvolutionFunction im2colFunc = new FeatureMap.ConvolutionFunction(neuron).setIm2col(true);
+        im2colFunc.setReceptiveFieldSize(kernelSize * kernelSize);
+        FeatureMap im2colMap = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize).setMapFunction(im2colFunc));
+
+        assertThat(Im2col.stripRows(inputSize - kernelSize + 1, Im2col.patchSize(kernelSize)) < inputSize - kernelSize + 1, is(true));
+
+        final Tensor expected = windowMap.output(input).getFeatureMap();
+        final Tensor actual = im2colMap.output(input).getFeatureMap();
+        for(int i=0; i<expected.size(0); i++)
+            for(int j=0; j<expected.size(1); j++)
+                assertThat(actual.get(i, j), is(expected.get(i, j)));
+
+        //picks up new weights
+        neuron.setWeight(3, 0.5);
+        assertThat(im2colMap.output(input).getFeatureMap().get(7, 11), is(windowMap.output(input).getFeatureMap().get(7, 11)));
+    }
+
+    private static Tensor random(Random r, int rows, int columns)
+    {
+        final Tensor rslt = new Tensor(rows, columns);
+        for(int i=0; i<rows; i++)
+            for(int j=0; j<columns; j++)
+                rslt.set(i, j, r.nextDouble());
+        return rslt;
+    }
+
+    /**
+     * @return 1/2 the difference squared between the expected and the feature map of the input
+     */
+    private static double error(FeatureMap featureMap, Tensor input, Tensor expected)
+    {
+        final Tensor actual = featureMap.output(input).getFeatureMap();
+        double error = 0;
+        for(int i=0; i<expected.size(0); i++)
+            for(int j=0; j<expected.size(1); j++)
+                error += 0.5 * (expected.get(i, j) - actual.get(i, j)) * (expected.get(i, j) - actual.get(i, j));
+        return error;
+    }
+
+    /**
+     * The saved weight gradients and the input gradients are minus the derivatives of the error
+     *
+     * @param neuron shared neuron, null if the map function has none
+     */
+    private static void assertGradients(FeatureMap featureMap, Neuron neuron, Tensor input, Tensor expected)
+    {
+        final Tensor actual = featureMap.output(input).getFeatureMap();
+        final Tensor outputGradients = new Tensor(expected.size(0), expected.size(1));
+        for(int i=0; i<expected.size(0); i++)
+            for(int j=0; j<expected.size(1); j++)
+                outputGradients.set(i, j, expected.get(i, j) - actual.get(i, j));
+        featureMap.backpropagation(input, outputGradients);
+
+        final double h = 1e-6;
+        final double[] aWeightGradients = featureMap.mapFunction.weightGradients().clone();
+        for(int j=0; neuron != null && j<neuron.getNumberOfWeights(); j++)
+        {
+            final double weight = neuron.getWeight(j);
+            neuron.setWeight(j, weight + h);
+            final double plus = error(featureMap, input, expected);
+            neuron.setWeight(j, weight - h);
+            final double minus = error(featureMap, input, expected);
+            neuron.setWeight(j, weight);
+            assertEquals(-(plus - minus) / (2 * h), aWeightGradients[j], 1e-8);
+        }
+
+        final Tensor inputGradients = featureMap.getInputGradients();
+        for(int a=0; a<input.size(0); a++)
+            for(int b=0; b<input.size(1); b++)
+            {
+                final double in = input.get(a, b);
+                input.set(a, b, in + h);
+                final double plus = error(featureMap, input, expected);
+                input.set(a, b, in - h);
+                final double minus = error(featureMap, input, expected);
+                input.set(a, b, in);
+                assertEquals(-(plus - minus) / (2 * h), inputGradients.get(a, b), 1e-8);
+            }
+    }
+
+    /**
+     * A smaller input gets a whole map of its own, not the corner of the last one
+     */
+    @Test
+    public void testSmallerInput()
+    {
+        Random r = new Random(220021);
+        double[] weights = new double[3 * 3 + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian();
+        Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setReceptiveFieldSize(3 * 3)));
+        FeatureMap smallMap = new FeatureMap(new FeatureMap.Builder().setInputSize(5)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setReceptiveFieldSize(3 * 3)));
+
+        featureMap.output(random(r, 6, 6));
+        final Tensor small = random(r, 7, 7).narrow(0, 1, 5).narrow(1, 1, 5);
+        assertThat(featureMap.output(small).getFeatureMap().size(0), is(3));
+        assertSameMap(smallMap.output(small).getFeatureMap(), featureMap.getFeatureMap());
+
+        assertGradients(featureMap, neuron, small, random(r, 3, 3));
+        assertThat(featureMap.getInputGradients().size(0), is(5));
+    }
+
+    /**
+     * A batch is always of full size images, whatever the size of the last single input
+     */
+    @Test
+    public void testBatchAfterSmallerInput()
+    {
+        Random r = new Random(220022);
+        double[] weights = new double[3 * 3 + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian();
+        Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(8)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setReceptiveFieldSize(3 * 3)));
+
+        final Tensor images = new Tensor(2, 8, 8);
+        for(int i=0; i<images.data().length; i++)
+            images.data()[i] = r.nextDouble();
+        featureMap.output(random(r, 5, 5));
+
+        final Tensor batch = featureMap.outputBatch(images);
+        assertThat(batch.size(1), is(6));
+        for(int image=0; image<2; image++)
+            assertSameMap(featureMap.output(images.slice(image)).getFeatureMap(), batch.slice(image));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonSquareInput()
+    {
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(new Neuron(new ActivationFunctions.SigmoidUnityFunction(), new double[10]))
+                                                 .setReceptiveFieldSize(3 * 3)));
+        featureMap.output(new Tensor(6, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBackpropagationOtherInput()
+    {
+        Random r = new Random(220022);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(new Neuron(new ActivationFunctions.SigmoidUnityFunction(), new double[10]))
+                                                 .setReceptiveFieldSize(3 * 3)));
+        featureMap.output(random(r, 6, 6));
+        featureMap.backpropagation(random(r, 5, 5), new Tensor(4, 4));
+    }
+
+    @Test
+    public void testConvolutionBackpropagation()
+    {
+        Random r = new Random(210012);
+        final Tensor input = random(r, 6, 6);
+        final Tensor expected = random(r, 4, 4);
+        double[] weights = new double[3 * 3 + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian() / 3;
+
+        for(boolean im2col:new boolean[]{false, true})
+        {
+            Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+            FeatureMap.ConvolutionFunction mapFunction = new FeatureMap.ConvolutionFunction(neuron).setIm2col(im2col);
+            mapFunction.setReceptiveFieldSize(3 * 3);
+            assertGradients(new FeatureMap(new FeatureMap.Builder().setInputSize(6).setMapFunction(mapFunction)),
+                            neuron, input, expected);
+        }
+    }
+
+    @Test
+    public void testSubSamplingBackpropagation()
+    {
+        Random r = new Random(210013);
+        //a window of a bigger image
+        final Tensor input = random(r, 8, 8).narrow(0, 1, 6).narrow(1, 2, 6);
+        final Tensor expected = random(r, 3, 3);
+
+        Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.3, -0.4);
+        FeatureMap.SubSamplingFunction mapFunction = new FeatureMap.SubSamplingFunction(neuron);
+        mapFunction.setReceptiveFieldSize(2 * 2);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6).setMapFunction(mapFunction));
+        assertGradients(featureMap, neuron, input, expected);
+
+        //an optimizer that only adds the adjustments is the delta rule
+        Neuron other = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.3, -0.4);
+        FeatureMap.SubSamplingFunction otherFunction = new FeatureMap.SubSamplingFunction(other);
+        otherFunction.setReceptiveFieldSize(2 * 2);
+        FeatureMap otherMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6).setMapFunction(otherFunction));
+        otherFunction.aWeightGradients = mapFunction.aWeightGradients.clone();
+
+        featureMap.adjustWeights(0.5);
+        otherMap.adjustWeights(new Optimizers.WeightMomentum(0.0), 0.5);
+        assertThat(neuron.getWeight(0) == 0.3, is(false));
+        assertThat(other.getWeight(0), is(neuron.getWeight(0)));
+        assertThat(other.getWeight(1), is(neuron.getWeight(1)));
+        assertThat(mapFunction.aWeightGradients[0], is(0.0));
+        assertThat(otherFunction.aWeightGradients[1], is(0.0));
+    }
+
+    /**
+     * Convolution, subsampling and a fully connected layer trained together, online
+     */
+    @Test
+    public void testTrainConvolutionalNetwork()
+    {
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Random r = new Random(210014);
+
+        //vertical and horizontal bars
+        final Tensor vertical = new Tensor(6, 6);
+        final Tensor horizontal = new Tensor(6, 6);
+        for(int i=0; i<6; i++)
+        {
+            vertical.set(i, 2, 1);
+            horizontal.set(3, i, 1);
+        }
+        final Tensor[] aInputs = {vertical, horizontal};
+        final NVector[] aExpected = {new NVector(0.9), new NVector(0.1)};
+
+        double[] kernel = new double[3 * 3 + 1];
+        for(int j=0; j<kernel.length; j++)
+            kernel[j] = r.nextGaussian() / 3;
+        FeatureMap.ConvolutionFunction convolutionFunc = new FeatureMap.ConvolutionFunction(new Neuron(phi, kernel));
+        convolutionFunc.setReceptiveFieldSize(3 * 3);
+        FeatureMap convolutionMap = new FeatureMap(new FeatureMap.Builder().setInputSize(6).setMapFunction(convolutionFunc));
+
+        FeatureMap.SubSamplingFunction subsampFunc = new FeatureMap.SubSamplingFunction(new Neuron(phi, 0.25, 0.0));
+        subsampFunc.setReceptiveFieldSize(2 * 2);
+        FeatureMap subsampMap = new FeatureMap(new FeatureMap.Builder().setInputSize(4).setMapFunction(subsampFunc));
+
+        double[] weights = new double[2 * 2 + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian();
+        SingleLayerNeuralNetwork fullyConnected = new SingleLayerNeuralNetwork();
+        fullyConnected.setNeurons(new Neuron(phi, weights));
+        MultiLayerNetwork network = new MultiLayerNetwork(new MultiLayerNetwork.Builder()
+                .setLayers(fullyConnected)
+                .setGlobalActivationFunction(phi)
+                .setMomentumParam(0.0)
+                .setLearningParam(0.5));
+
+        //the network reads the subsampled map and writes the gradients of the map in place
+        final NVector vInput = subsampMap.getFeatureMap().toVector();
+        final Tensor outputGradients = new Tensor(2, 2);
+        final NVector vInputGradients = outputGradients.toVector();
+        double firstError = 0;
+        double error = 0;
+        for(int epoch=0; epoch<300; epoch++)
+        {
+            error = 0;
+            for(int example=0; example<aInputs.length; example++)
+            {
+                final Tensor convolution = convolutionMap.output(aInputs[example]).getFeatureMap();
+                subsampMap.output(convolution);
+
+                error += network.backpropagation(vInput, aExpected[example], vInputGradients);
+
+                subsampMap.backpropagation(convolution, outputGradients);
+                convolutionMap.backpropagation(aInputs[example], subsampMap.getInputGradients());
+                subsampMap.adjustWeights(0.5);
+                convolutionMap.adjustWeights(0.5);
+            }
+            if (epoch == 0) firstError = error;
+        }
+
+        assertThat(error < firstError / 10, is(true));
+        assertThat(error < 0.01, is(true));
+    }
+
+    private static void assertSameMap(Tensor expected, Tensor actual)
+    {
+        assertThat(actual.size(0), is(expected.size(0)));
+        for(int i=0; i<expected.size(0); i++)
+            for(int j=0; j<expected.size(1); j++)
+                assertThat(actual.get(i, j), is(expected.get(i, j)));
+    }
+
+    /**
+     * Every image of a batch, and every chunk of rows of the pool's threads,
+     * gets exactly what one image on one thread gets
+     */
+    @Test
+    public void testParallelBatch()
+    {
+        final int inputSize = 40;
+        final int numberImages = 5;
+        Random r = new Random(230012);
+        final Tensor images = new Tensor(numberImages, inputSize, inputSize);
+        for(int i=0; i<images.data().length; i++)
+            images.data()[i] = r.nextDouble();
+        double[] weights = new double[5 * 5 + 1];
+        for(int j=0; j<weights.length; j++)
+            weights[j] = r.nextGaussian() / 5;
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Neuron kernel = new Neuron(phi, weights);
+        Neuron scale = new Neuron(phi, 0.3, 0.4);
+        //shared by the feature maps below
+        final ForkJoinPool pool = new ForkJoinPool(3);
+
+        for(boolean im2col:new boolean[]{false, true})
+        {
+            FeatureMap.MapFunction serialFunc = new FeatureMap.ConvolutionFunction(kernel).setIm2col(im2col).setReceptiveFieldSize(5 * 5);
+            FeatureMap serial = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize).setMapFunction(serialFunc));
+            FeatureMap.MapFunction parallelFunc = new FeatureMap.ConvolutionFunction(kernel).setIm2col(im2col).setReceptiveFieldSize(5 * 5);
+            FeatureMap parallel = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize).setMapFunction(parallelFunc)
+                                                                         .setPool(pool));
+
+            final Tensor serialBatch = serial.outputBatch(images);
+            final Tensor parallelBatch = parallel.outputBatch(images);
+            for(int image=0; image<numberImages; image++)
+            {
+                final Tensor expected = serial.output(images.slice(image)).getFeatureMap();
+                assertSameMap(expected, serialBatch.slice(image));
+                assertSameMap(expected, parallelBatch.slice(image));
+                assertSameMap(expected, parallel.output(images.slice(image)).getFeatureMap());
+            }
+        }
+
+        FeatureMap serial = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize)
+                .setMapFunction(new FeatureMap.SubSamplingFunction(scale).setReceptiveFieldSize(2 * 2)));
+        FeatureMap parallel = new FeatureMap(new FeatureMap.Builder().setInputSize(inputSize)
+                .setMapFunction(new FeatureMap.SubSamplingFunction(scale).setReceptiveFieldSize(2 * 2))
+                .setParallelism(4));
+        final Tensor parallelBatch = parallel.outputBatch(images);
+        for(int image=0; image<numberImages; image++)
+            assertSameMap(serial.output(images.slice(image)).getFeatureMap(), parallelBatch.slice(image));
+        //only the pool the feature map started is shut down
+        parallel.close();
+        assertThat(parallel.pool.isShutdown(), is(true));
+
+        //the single image path keeps what backpropagation needs
+        parallel = new FeatureMap(new FeatureMap.Builder().setInputSize(10).setPool(pool)
+                .setMapFunction(new FeatureMap.ConvolutionFunction(kernel).setReceptiveFieldSize(5 * 5)));
+        assertGradients(parallel, kernel, images.slice(2).narrow(0, 3, 10).narrow(1, 7, 10), random(r, 6, 6));
+        parallel.close();
+        assertThat(pool.isShutdown(), is(false));
+        pool.shutdown();
+    }
+
+    /**
+     * @return sums of the k x k windows of the input, stride apart, added up in row order
+     */
+    private static Tensor windowSums(Tensor input, int k, int stride)
+    {
+        final int n = (input.size(0) - k) / stride + 1;
+        final Tensor sums = new Tensor(n, n);
+        for(int i=0; i<n; i++)
+            for(int j=0; j<n; j++)
+            {
+                double sum = 0;
+                for(int a=i * stride; a<i * stride + k; a++)
+                    for(int b=j * stride; b<j * stride + k; b++)
+                        sum += input.get(a, b);
+                sums.set(i, j, sum);
+            }
+        return sums;
+    }
+
+    @Test
+    public void testOverlappingSubSampling()
+    {
+        Random r = new Random(240011);
+        final Tensor input = random(r, 9, 9).narrow(0, 1, 7).narrow(1, 2, 7);
+        Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.3, -0.4);
+
+        FeatureMap.MapFunction mapFunction = new FeatureMap.SubSamplingFunction(neuron).setStride(2).setReceptiveFieldSize(3 * 3);
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(7).setMapFunction(mapFunction));
+        FeatureMap.MapFunction tableFunction = new FeatureMap.SubSamplingFunction(neuron).setStride(2).setSummedAreaTable(true)
+                                                                                        .setReceptiveFieldSize(3 * 3);
+        FeatureMap tableMap = new FeatureMap(new FeatureMap.Builder().setInputSize(7).setMapFunction(tableFunction));
+
+        final Tensor sums = windowSums(input, 3, 2);
+        final Tensor actual = featureMap.output(input).getFeatureMap();
+        final Tensor table = tableMap.output(input).getFeatureMap();
+        assertThat(actual.size(0), is(3));
+        for(int i=0; i<3; i++)
+            for(int j=0; j<3; j++)
+            {
+                final double expected = neuron.output(new NVector(sums.get(i, j), 1));
+                assertThat(actual.get(i, j), is(expected));
+                assertEquals(expected, table.get(i, j), 1e-12);
+            }
+
+        assertGradients(featureMap, neuron, input, random(r, 3, 3));
+        assertGradients(tableMap, neuron, input, random(r, 3, 3));
+    }
+
+    /**
+     * The summed-area table path gives (about) the same map as the default one, on one image and on a batch
+     */
+    @Test
+    public void testSummedAreaTableSubSampling()
+    {
+        Random r = new Random(240012);
+        final Tensor images = new Tensor(3, 12, 12);
+        for(int i=0; i<images.data().length; i++)
+            images.data()[i] = r.nextDouble();
+        Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.3, 0.4);
+
+        for(int stride:new int[]{0, 1})
+        {
+            FeatureMap direct = new FeatureMap(new FeatureMap.Builder().setInputSize(12)
+                    .setMapFunction(new FeatureMap.SubSamplingFunction(neuron).setStride(stride).setReceptiveFieldSize(4 * 4)));
+            FeatureMap table = new FeatureMap(new FeatureMap.Builder().setInputSize(12).setParallelism(2)
+                    .setMapFunction(new FeatureMap.SubSamplingFunction(neuron).setStride(stride).setSummedAreaTable(true)
+                                                                              .setReceptiveFieldSize(4 * 4)));
+
+            final Tensor batch = table.outputBatch(images);
+            for(int image=0; image<3; image++)
+            {
+                final Tensor expected = direct.output(images.slice(image)).getFeatureMap();
+                assertThat(batch.size(1), is(stride == 0 ? 3 : 9));
+                for(int i=0; i<expected.size(0); i++)
+                    for(int j=0; j<expected.size(1); j++)
+                        assertEquals(expected.get(i, j), batch.get(image, i, j), 1e-12);
+            }
+            table.close();
+        }
+    }
+
+    /**
+     * @return maxima of the k x k windows of the input, stride apart
+     */
+    private static Tensor windowMaxima(Tensor input, int k, int stride)
+    {
+        final int n = (input.size(0) - k) / stride + 1;
+        final Tensor maxima = new Tensor(n, n);
+        for(int i=0; i<n; i++)
+            for(int j=0; j<n; j++)
+            {
+                double max = Double.NEGATIVE_INFINITY;
+                for(int a=i * stride; a<i * stride + k; a++)
+                    for(int b=j * stride; b<j * stride + k; b++)
+                        max = Math.max(max, input.get(a, b));
+                maxima.set(i, j, max);
+            }
+        return maxima;
+    }
+
+    @Test
+    public void testMaxPooling()
+    {
+        Random r = new Random(240013);
+        final Tensor input = random(r, 15, 15).narrow(0, 2, 13).narrow(1, 1, 13);
+
+        final int[][] aCases = {
+                new int[]{2, 0}
+                ,new int[]{3, 1}
+                ,new int[]{3, 2}
+                ,new int[]{4, 3}
+                ,new int[]{2, 5}
+        };
+        for(int[] aCase:aCases)
+        {
+            final int k = aCase[0];
+            final int stride = aCase[1];
+            FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(13)
+                    .setMapFunction(new FeatureMap.MaxPoolingFunction().setStride(stride).setReceptiveFieldSize(k * k)));
+
+            assertSameMap(windowMaxima(input, k, stride > 0 ? stride : k), featureMap.output(input).getFeatureMap());
+        }
+
+        //each window's gradient goes to its maximum
+        FeatureMap featureMap = new FeatureMap(new FeatureMap.Builder().setInputSize(13)
+                .setMapFunction(new FeatureMap.MaxPoolingFunction().setStride(2).setReceptiveFieldSize(3 * 3)));
+        assertGradients(featureMap, null, input, random(r, 6, 6));
+        assertThat(featureMap.mapFunction.weightGradients().length, is(0));
+    }
+
+    @Test
+    public void testParallelMaxPooling()
+    {
+        Random r = new Random(240014);
+        final Tensor images = new Tensor(4, 20, 20);
+        for(int i=0; i<images.data().length; i++)
+            images.data()[i] = r.nextDouble();
+
+        FeatureMap serial = new FeatureMap(new FeatureMap.Builder().setInputSize(20)
+                .setMapFunction(new FeatureMap.MaxPoolingFunction().setStride(1).setReceptiveFieldSize(3 * 3)));
+        FeatureMap parallel = new FeatureMap(new FeatureMap.Builder().setInputSize(20).setParallelism(3)
+                .setMapFunction(new FeatureMap.MaxPoolingFunction().setStride(1).setReceptiveFieldSize(3 * 3)));
+
+        final Tensor parallelBatch = parallel.outputBatch(images);
+        for(int image=0; image<4; image++)
+        {
+            final Tensor expected = serial.output(images.slice(image)).getFeatureMap();
+            assertSameMap(windowMaxima(images.slice(image), 3, 1), expected);
+            assertSameMap(expected, parallelBatch.slice(image));
+        }
+        parallel.close();
+    }
+
+    /**
+     * The Fourier path gives the direct map up to rounding, on a view, split between threads,
+     * and after the weights change
+     */
+    @Test
+    public void testFftConvolution()
+    {
+        Random r = new Random(250011);
+        final Tensor input = random(r, 50, 50).narrow(0, 3, 40).narrow(1, 5, 40);
+
+        for(int k:new int[]{1, 3, 8, 15})
+        {
+            double[] weights = new double[k * k + 1];
+            for(int j=0; j<weights.length; j++)
+                weights[j] = r.nextGaussian() / k;
+            Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+
+            FeatureMap direct = new FeatureMap(new FeatureMap.Builder().setInputSize(40)
+                    .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setReceptiveFieldSize(k * k)));
+            FeatureMap fft = new FeatureMap(new FeatureMap.Builder().setInputSize(40)
+                    .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setFft(true).setReceptiveFieldSize(k * k)));
+            FeatureMap parallel = new FeatureMap(new FeatureMap.Builder().setInputSize(40).setParallelism(3)
+                    .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setFft(true).setReceptiveFieldSize(k * k)));
+
+            for(int update=0; update<2; update++)
+            {
+                final Tensor expected = direct.output(input).getFeatureMap();
+                final Tensor actual = fft.output(input).getFeatureMap();
+                final Tensor split = parallel.output(input).getFeatureMap();
+                assertThat(actual.size(0), is(40 - k + 1));
+                for(int i=0; i<expected.size(0); i++)
+                    for(int j=0; j<expected.size(1); j++)
+                    {
+                        assertEquals(expected.get(i, j), actual.get(i, j), 1e-12);
+                        assertEquals(expected.get(i, j), split.get(i, j), 1e-12);
+                    }
+
+                //the cached kernel transform must follow
+                neuron.setWeight(0, neuron.getWeight(0) + 0.5);
+                neuron.setWeight(k * k, neuron.getWeight(k * k) - 0.1);
+            }
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void testAutomaticFft()
+    {
+        Random r = new Random(250012);
+        final Tensor input = random(r, 64, 64);
+
+        for(int k:new int[]{3, 15})
+        {
+            double[] weights = new double[k * k + 1];
+            for(int j=0; j<weights.length; j++)
+                weights[j] = r.nextGaussian() / k;
+            Neuron neuron = new Neuron(new ActivationFunctions.SigmoidUnityFunction(), weights);
+
+            FeatureMap.ConvolutionFunction automaticFunc = new FeatureMap.ConvolutionFunction(neuron).setAutomaticFft(true);
+            FeatureMap automatic = new FeatureMap(new FeatureMap.Builder().setInputSize(64)
+                    .setMapFunction(automaticFunc.setReceptiveFieldSize(k * k)));
+            FeatureMap direct = new FeatureMap(new FeatureMap.Builder().setInputSize(64)
+                    .setMapFunction(new FeatureMap.ConvolutionFunction(neuron).setReceptiveFieldSize(k * k)));
+
+            final Tensor expected = direct.output(input).getFeatureMap();
+            final Tensor actual = automatic.output(input).getFeatureMap();
+            for(int i=0; i<expected.size(0); i++)
+                for(int j=0; j<expected.size(1); j++)
+                    assertEquals(expected.get(i, j), actual.get(i, j), 1e-12);
+
+            //small kernels stay on the direct path, large ones go through the transforms
+            assertThat(automaticFunc.aKernelRe != null, is(k == 15));
+        }
     }
 }
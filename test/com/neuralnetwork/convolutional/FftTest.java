@@ -0,0 +1,78 @@
+package com.neuralnetwork.convolutional;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class FftTest
+{
+    @Test
+    public void testSize()
+    {
+        assertThat(Fft.size(1), is(1));
+        assertThat(Fft.size(2), is(2));
+        assertThat(Fft.size(5), is(8));
+        assertThat(Fft.size(512), is(512));
+    }
+
+    /**
+     * Elements of width 3 against the definition, coordinate by coordinate, then back
+     */
+    @Test
+    public void testTransform()
+    {
+        Random r = new Random(250001);
+        final int n = 16;
+        final int width = 3;
+        final double[] aRe = new double[2 + n * width];
+        final double[] aIm = new double[2 + n * width];
+        for(int i=0; i<aRe.length; i++)
+        {
+            aRe[i] = r.nextGaussian();
+            aIm[i] = r.nextGaussian();
+        }
+        final double[] aOriginalRe = aRe.clone();
+        final double[] aOriginalIm = aIm.clone();
+
+        //a table for a bigger size works too
+        Fft.transform(aRe, aIm, 2, n, width, false, Fft.twiddles(64));
+        for(int f=0; f<n; f++)
+            for(int c=0; c<width; c++)
+            {
+                double re = 0;
+                double im = 0;
+                for(int x=0; x<n; x++)
+                {
+                    final double angle = -2 * Math.PI * f * x / n;
+                    final double xRe = aOriginalRe[2 + x * width + c];
+                    final double xIm = aOriginalIm[2 + x * width + c];
+                    re += xRe * Math.cos(angle) - xIm * Math.sin(angle);
+                    im += xRe * Math.sin(angle) + xIm * Math.cos(angle);
+                }
+                assertEquals(re, aRe[2 + f * width + c], 1e-12);
+                assertEquals(im, aIm[2 + f * width + c], 1e-12);
+            }
+
+        Fft.transform(aRe, aIm, 2, n, width, true, Fft.twiddles(n));
+        assertThat(aRe[0], is(aOriginalRe[0]));
+        for(int i=2; i<aRe.length; i++)
+        {
+            assertEquals(aOriginalRe[i], aRe[i] / n, 1e-14);
+            assertEquals(aOriginalIm[i], aIm[i] / n, 1e-14);
+        }
+    }
+
+    @Test
+    public void testIsFaster()
+    {
+        assertThat(Fft.isFaster(512, 512, 3), is(false));
+        assertThat(Fft.isFaster(512, 512, 15), is(true));
+        assertThat(Fft.isFaster(32, 32, 3), is(false));
+        //no output
+        assertThat(Fft.isFaster(8, 8, 9), is(false));
+    }
+}
@@ -0,0 +1,72 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.NVector;
+import com.neuralnetwork.core.Tensor;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class Im2colTest
+{
+    private final Tensor input = Tensor.wrap(new double[]{
+            1, 2, 3,
+            4, 5, 6,
+            7, 8, 9}, 3, 3);
+
+    @Test
+    public void testPatches()
+    {
+        double[] aPatches = new double[4 * Im2col.patchSize(2)];
+        Im2col.patches(input, 2, 0, 2, aPatches);
+
+        assertThat(new NVector(aPatches).toString(), is(new NVector(
+                1, 2, 4, 5, 1,
+                2, 3, 5, 6, 1,
+                4, 5, 7, 8, 1,
+                5, 6, 8, 9, 1).toString()));
+
+        //second output row only
+        double[] aStrip = new double[2 * Im2col.patchSize(2)];
+        Im2col.patches(input, 2, 1, 1, aStrip);
+        assertThat(new NVector(aStrip).toString(), is(new NVector(4, 5, 7, 8, 1, 5, 6, 8, 9, 1).toString()));
+    }
+
+    @Test
+    public void testPaddedPatches()
+    {
+        //two channels, stride 2 and one zero around the input: windows start at -1 and 1
+        final Tensor channels = Tensor.wrap(new double[]{
+                1, 2, 3,
+                4, 5, 6,
+                7, 8, 9,
+                -1, -2, -3,
+                -4, -5, -6,
+                -7, -8, -9}, 2, 3, 3);
+        assertThat(Im2col.outputSize(3, 2, 2, 1), is(2));
+
+        double[] aPatches = new double[4 * Im2col.patchSize(2, 2)];
+        Im2col.patches(channels, 2, 2, 1, 0, 2, aPatches);
+
+        assertThat(new NVector(aPatches).toString(), is(new NVector(
+                0, 0, 0, 1,  0, 0, 0, -1,  1,
+                0, 0, 2, 3,  0, 0, -2, -3, 1,
+                0, 4, 0, 7,  0, -4, 0, -7, 1,
+                5, 6, 8, 9,  -5, -6, -8, -9, 1).toString()));
+    }
+
+    @Test
+    public void testConvolve()
+    {
+        double[] aPatches = new double[4 * Im2col.patchSize(2)];
+        Im2col.patches(input, 2, 0, 2, aPatches);
+
+        //two kernels: sum of the window, and the bias alone
+        double[] aKernels = {1, 1, 1, 1, 0,
+                             0, 0, 0, 0, 3};
+        double[] aFields = new double[2 * 5];
+        Im2col.convolve(aKernels, 2, aPatches, 4, Im2col.patchSize(2), aFields, 5);
+
+        assertThat(new NVector(aFields).toString(), is(new NVector(12, 16, 24, 28, 0, 3, 3, 3, 3, 0).toString()));
+    }
+}
@@ -0,0 +1,72 @@
+package com.neuralnetwork.convolutional;
+
+import com.neuralnetwork.core.Tensor;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class PoolingTest
+{
+    @Test
+    public void testSummedAreaTable()
+    {
+        Random r = new Random(240001);
+        final Tensor input = new Tensor(10, 12);
+        for(int i=0; i<input.data().length; i++)
+            input.data()[i] = r.nextDouble();
+
+        //rows 3..8 of a view
+        final Tensor view = input.narrow(1, 2, 9);
+        final double[] aTable = new double[7 * 10];
+        Pooling.summedAreaTable(view, 3, 6, aTable);
+
+        for(int k=1; k<=4; k++)
+            for(int top=0; top + k<=6; top++)
+                for(int left=0; left + k<=9; left++)
+                {
+                    double sum = 0;
+                    for(int a=top; a<top + k; a++)
+                        for(int b=left; b<left + k; b++)
+                            sum += view.get(3 + a, b);
+                    assertEquals(sum, Pooling.windowSum(aTable, 10, top, left, k), 1e-12);
+                }
+    }
+
+    /**
+     * Windows of every size and stride, over elements of width 1 and 3, with steps between the elements
+     */
+    @Test
+    public void testSlidingMax()
+    {
+        Random r = new Random(240002);
+        final double[] aIn = new double[200];
+        for(int i=0; i<aIn.length; i++)
+            aIn[i] = r.nextGaussian();
+
+        for(int width:new int[]{1, 3})
+            for(int size=1; size<=5; size++)
+                for(int stride=1; stride<=6; stride++)
+                {
+                    final int inStep = width + 2;
+                    final int numberElements = 17;
+                    final int numberWindows = (numberElements - size) / stride + 1;
+                    final double[] aOut = new double[numberWindows * (width + 1)];
+                    final int scratchSize = Pooling.scratchSize(width, size, stride, numberWindows);
+                    Pooling.slidingMax(aIn, 5, inStep, width, size, stride, numberWindows,
+                                       aOut, 0, width + 1, new double[scratchSize], new double[scratchSize]);
+
+                    for(int w=0; w<numberWindows; w++)
+                        for(int c=0; c<width; c++)
+                        {
+                            double max = Double.NEGATIVE_INFINITY;
+                            for(int x=w * stride; x<w * stride + size; x++)
+                                max = Math.max(max, aIn[5 + x * inStep + c]);
+                            assertThat(aOut[w * (width + 1) + c], is(max));
+                        }
+                }
+    }
+}
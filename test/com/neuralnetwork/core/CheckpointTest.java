@@ -0,0 +1,184 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CheckpointTest
+{
+    private SingleLayerNeuralNetwork[] layers()
+    {
+        Random r = new Random(100012);
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        IActivationFunction phi2 = new ActivationFunctions.SigmoidFunction(2.0);
+
+        SingleLayerNeuralNetwork layer1 = new SingleLayerNeuralNetwork();
+        layer1.setNeurons(new Neuron(phi, r.nextGaussian(), r.nextGaussian(), r.nextGaussian()),
+                          new Neuron(phi, r.nextGaussian(), r.nextGaussian(), r.nextGaussian()),
+                          new Neuron(phi, r.nextGaussian(), r.nextGaussian(), r.nextGaussian()));
+        SingleLayerNeuralNetwork layer2 = new SingleLayerNeuralNetwork();
+        layer2.setNeurons(new Neuron(phi2, r.nextGaussian(), r.nextGaussian(), r.nextGaussian(), r.nextGaussian()));
+
+        return new SingleLayerNeuralNetwork[]{layer1, layer2};
+    }
+
+    private File tempFile() throws IOException
+    {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException
+    {
+        SingleLayerNeuralNetwork[] aLayers = layers();
+        File file = tempFile();
+        Checkpoint.save(file, aLayers);
+
+        SingleLayerNeuralNetwork[] aLoaded = Checkpoint.load(file);
+        assertThat(aLoaded.length, is(2));
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            assertThat(aLoaded[layer].getNumberOfNeurons(), is(aLayers[layer].getNumberOfNeurons()));
+            for(int k=0; k<aLayers[layer].getNumberOfNeurons(); k++)
+                for(int j=0; j<aLayers[layer].getNumberOfWeights(); j++)
+                    assertThat(aLoaded[layer].getNeuron(k).getWeight(j), is(aLayers[layer].getNeuron(k).getWeight(j)));
+        }
+
+        NVector input = new NVector(0.5, -0.25, 1);
+        assertThat(aLoaded[0].output(input).toString(), is(aLayers[0].output(input).toString()));
+        assertThat(aLoaded[1].getNeuron(0).phi().apply(1.0), is(aLayers[1].getNeuron(0).phi().apply(1.0)));
+    }
+
+    @Test
+    public void testMap() throws IOException
+    {
+        SingleLayerNeuralNetwork[] aLayers = layers();
+        File file = tempFile();
+        Checkpoint.save(file, aLayers);
+
+        CompiledNetwork mapped = Checkpoint.map(file);
+        CompiledNetwork compiled = CompiledNetwork.compile(aLayers);
+
+        NVector input = new NVector(0.5, -0.25);
+        assertThat(mapped.output(input).get(0), is(compiled.output(input).get(0)));
+    }
+
+    @Test
+    public void testFloat() throws IOException
+    {
+        SingleLayerNeuralNetwork[] aLayers = layers();
+        File doubles = tempFile();
+        File floats = tempFile();
+        Checkpoint.save(doubles, aLayers);
+        Checkpoint.save(floats, CompiledNetwork.Precision.FLOAT, aLayers);
+        assertThat(floats.length() < doubles.length(), is(true));
+
+        CompiledNetwork mapped = Checkpoint.map(floats);
+        CompiledNetwork compiled = CompiledNetwork.compile(CompiledNetwork.Precision.FLOAT, aLayers);
+        assertThat(mapped.getPrecision(), is(CompiledNetwork.Precision.FLOAT));
+
+        NVector input = new NVector(0.5, -0.25);
+        assertThat(mapped.output(input).get(0), is(compiled.output(input).get(0)));
+
+        SingleLayerNeuralNetwork[] aLoaded = Checkpoint.load(floats);
+        for(int layer=0; layer<aLayers.length; layer++)
+            for(int k=0; k<aLayers[layer].getNumberOfNeurons(); k++)
+                for(int j=0; j<aLayers[layer].getNumberOfWeights(); j++)
+                    assertThat(aLoaded[layer].getNeuron(k).getWeight(j), is((double) (float) aLayers[layer].getNeuron(k).getWeight(j)));
+    }
+
+    @Test
+    public void testAlignment() throws IOException
+    {
+        File file = tempFile();
+        Checkpoint.save(file, layers());
+        assertThat(file.length() % Checkpoint.ALIGNMENT, is(0L));
+    }
+
+    @Test
+    public void testFastSigmoid() throws IOException
+    {
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(new ActivationFunctions.FastSigmoidFunction(2.0, 1e-8), 0.5, -0.25, 1));
+        File file = tempFile();
+        Checkpoint.save(file, layer);
+
+        IActivationFunction phi = Checkpoint.load(file)[0].getNeuron(0).phi();
+        assertThat(phi instanceof ActivationFunctions.FastSigmoidFunction, is(true));
+        assertThat(((ActivationFunctions.FastSigmoidFunction) phi).getSlope(), is(2.0));
+        assertThat(((ActivationFunctions.FastSigmoidFunction) phi).getMaxError(), is(1e-8));
+        assertThat(phi.apply(0.75), is(layer.getNeuron(0).phi().apply(0.75)));
+    }
+
+    /**
+     * Neurons with equal but distinct activation functions are the same layer
+     */
+    @Test
+    public void testActivationPerNeuron() throws IOException
+    {
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.5, -0.25, 1),
+                         new Neuron(new ActivationFunctions.SigmoidUnityFunction(), 0.25, 0.5, -1));
+        File file = tempFile();
+        Checkpoint.save(file, layer);
+        assertThat(Checkpoint.load(file)[0].getNumberOfNeurons(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentActivations() throws IOException
+    {
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(new ActivationFunctions.FastSigmoidFunction(1.0), 0.5, -0.25, 1),
+                         new Neuron(new ActivationFunctions.FastSigmoidFunction(1.0, 1e-8), 0.25, 0.5, -1));
+        Checkpoint.save(tempFile(), layer);
+    }
+
+    /**
+     * A second layer whose number of weights doesn't match the first layer is rejected when read,
+     * not when it's run
+     */
+    @Test(expected = IOException.class)
+    public void testMismatchedLayers() throws IOException
+    {
+        File file = tempFile();
+        Checkpoint.save(file, layers());
+
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw");
+        raf.seek(Checkpoint.HEADER_SIZE + Checkpoint.LAYER_HEADER_SIZE + 4);
+        //little endian 3 instead of 4
+        raf.write(new byte[]{3, 0, 0, 0});
+        raf.close();
+        Checkpoint.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedVersion() throws IOException
+    {
+        File file = tempFile();
+        Checkpoint.save(file, layers());
+
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw");
+        raf.seek(4);
+        raf.write(new byte[]{(byte) (Checkpoint.VERSION + 1), 0, 0, 0});
+        raf.close();
+        Checkpoint.load(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotACheckpoint() throws IOException
+    {
+        File file = tempFile();
+        java.io.FileOutputStream out = new java.io.FileOutputStream(file);
+        out.write(new byte[64]);
+        out.close();
+        Checkpoint.load(file);
+    }
+}
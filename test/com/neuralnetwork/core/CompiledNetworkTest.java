@@ -0,0 +1,113 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class CompiledNetworkTest
+{
+    private MultiLayerNetwork network()
+    {
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer1 = new SingleLayerNeuralNetwork();
+        layer1.setNeurons(new Neuron(phi, 0.25, 0.75, 0.5),
+                          new Neuron(phi, -0.5, 0.1, 0.2));
+        SingleLayerNeuralNetwork layer2 = new SingleLayerNeuralNetwork();
+        layer2.setNeurons(new Neuron(phi, 0.10, -0.25, 0.3));
+
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder();
+        builder.setLearningParam(0.9)
+               .setMomentumParam(0.04)
+               .setGlobalActivationFunction(phi)
+               .setLayers(layer1, layer2);
+
+        return new MultiLayerNetwork(builder);
+    }
+
+    @Test
+    public void testOutput()
+    {
+        MultiLayerNetwork network = network();
+        CompiledNetwork compiled = network.compile();
+
+        NVector input = new NVector(-1, 2);
+        assertThat(compiled.output(input).get(0), is(network.output(input).get(0)));
+    }
+
+    @Test
+    public void testImmutable()
+    {
+        MultiLayerNetwork network = network();
+        NVector input = new NVector(-1, 2);
+        final double expected = network.output(input).get(0);
+
+        CompiledNetwork compiled = network.compile();
+        network.getLayer(1).layer.getNeuron(0).setWeight(0, 100);
+
+        assertThat(compiled.output(input).get(0), is(expected));
+    }
+
+    @Test
+    public void testFloatPrecision()
+    {
+        MultiLayerNetwork network = network();
+        CompiledNetwork compiled = network.compile(CompiledNetwork.Precision.FLOAT);
+
+        NVector input = new NVector(-1, 2);
+        final double expected = network.output(input).get(0);
+
+        assertEquals(expected, compiled.output(input).get(0), 1e-6);
+
+        FVector output = compiled.output(new FVector(input), new FVector().setSize(1), compiled.newScratch());
+        assertEquals(expected, output.get(0), 1e-6);
+    }
+
+    @Test
+    public void testConcurrentOutput() throws InterruptedException
+    {
+        final MultiLayerNetwork network = network();
+        final CompiledNetwork compiled = network.compile();
+
+        final int numberInputs = 1000;
+        final NVector[] aInputs = new NVector[numberInputs];
+        final double[] aExpected = new double[numberInputs];
+        Random r = new Random(100012);
+        for(int i=0; i<numberInputs; i++)
+        {
+            aInputs[i] = new NVector(r.nextGaussian(), r.nextGaussian());
+            aExpected[i] = network.output(aInputs[i]).get(0);
+        }
+
+        final AtomicInteger mismatches = new AtomicInteger();
+        Thread[] aThreads = new Thread[4];
+        for(int t=0; t<aThreads.length; t++)
+        {
+            aThreads[t] = new Thread() {
+                @Override
+                public void run()
+                {
+                    CompiledNetwork.Scratch scratch = compiled.newScratch();
+                    NVector output = new NVector().setSize(compiled.getOutputSize());
+                    for(int i=0; i<numberInputs; i++)
+                    {
+                        if (compiled.output(aInputs[i], output, scratch).get(0) != aExpected[i])
+                            mismatches.incrementAndGet();
+                        if (compiled.output(aInputs[i]).get(0) != aExpected[i])
+                            mismatches.incrementAndGet();
+                    }
+                }
+            };
+            aThreads[t].start();
+        }
+        for(Thread thread:aThreads)
+            thread.join();
+
+        assertThat(mismatches.get(), is(0));
+    }
+}
@@ -0,0 +1,178 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DatasetTest
+{
+    private File tempFile() throws IOException
+    {
+        File file = File.createTempFile("dataset", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private NVector[] examples(int numberExamples)
+    {
+        Random r = new Random(100012);
+        NVector[] aInputExpected = new NVector[2*numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector(r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble(), r.nextDouble());
+        }
+        return aInputExpected;
+    }
+
+    private MultiLayerNetwork network()
+    {
+        Random r = new Random(7);
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+
+        Neuron[] aHidden = new Neuron[4];
+        for(int i=0; i<aHidden.length; i++)
+            aHidden[i] = new Neuron(phi, r.nextGaussian(), r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+        Neuron[] aOutput = new Neuron[2];
+        for(int i=0; i<aOutput.length; i++)
+            aOutput[i] = new Neuron(phi, r.nextGaussian(), r.nextGaussian(), r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+        SingleLayerNeuralNetwork hidden = new SingleLayerNeuralNetwork();
+        hidden.setNeurons(aHidden);
+        SingleLayerNeuralNetwork output = new SingleLayerNeuralNetwork();
+        output.setNeurons(aOutput);
+
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder();
+        builder.setLearningParam(0.9)
+               .setMomentumParam(0.04)
+               .setIterations(3)
+               .setGlobalActivationFunction(phi)
+               .setLayers(hidden, output);
+        return new MultiLayerNetwork(builder);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        NVector[] aInputExpected = examples(5000);
+        File file = tempFile();
+        assertThat(Dataset.write(file, new ExampleSources.ArraySource(aInputExpected)), is(5000L));
+
+        Dataset.MappedSource source = new Dataset.MappedSource(file);
+        assertThat(source.getNumberOfExamples(), is(5000L));
+        assertThat(source.getInputSize(), is(3));
+        assertThat(source.getExpectedSize(), is(2));
+
+        NVector vInput = new NVector().setSize(3);
+        NVector vExpected = new NVector().setSize(2);
+        for(int epoch=1; epoch<=2; epoch++)
+        {
+            source.startEpoch(epoch);
+            int i = 0;
+            while(source.next(vInput, vExpected))
+            {
+                assertThat(vInput.toString(), is(aInputExpected[2*i].toString()));
+                assertThat(vExpected.get(1), is(aInputExpected[2*i+1].get(1)));
+                i++;
+            }
+            assertThat(i, is(5000));
+        }
+
+        source.read(1234, vInput, vExpected);
+        assertThat(vInput.get(2), is(aInputExpected[2*1234].get(2)));
+        assertThat(vExpected.get(0), is(aInputExpected[2*1234+1].get(0)));
+    }
+
+    @Test
+    public void testWriteReadFloat() throws IOException
+    {
+        NVector[] aInputExpected = examples(5000);
+        File doubles = tempFile();
+        File floats = tempFile();
+        Dataset.write(doubles, new ExampleSources.ArraySource(aInputExpected));
+        assertThat(Dataset.write(floats, new ExampleSources.ArraySource(aInputExpected), CompiledNetwork.Precision.FLOAT), is(5000L));
+        assertThat(floats.length() - Dataset.HEADER_SIZE, is((doubles.length() - Dataset.HEADER_SIZE) / 2));
+
+        Dataset.MappedSource source = new Dataset.MappedSource(floats);
+        assertThat(source.getNumberOfExamples(), is(5000L));
+
+        NVector vInput = new NVector().setSize(3);
+        NVector vExpected = new NVector().setSize(2);
+        source.startEpoch(1);
+        int i = 0;
+        while(source.next(vInput, vExpected))
+        {
+            for(int j=0; j<3; j++)
+                assertThat(vInput.get(j), is((double) (float) aInputExpected[2*i].get(j)));
+            for(int j=0; j<2; j++)
+                assertThat(vExpected.get(j), is((double) (float) aInputExpected[2*i+1].get(j)));
+            i++;
+        }
+        assertThat(i, is(5000));
+
+        source.read(1234, vInput, vExpected);
+        assertThat(vInput.get(2), is((double) (float) aInputExpected[2*1234].get(2)));
+    }
+
+    @Test
+    public void testTrainFromMappedFile() throws IOException
+    {
+        NVector[] aInputExpected = examples(50);
+        File file = tempFile();
+        Dataset.write(file, new ExampleSources.ArraySource(aInputExpected));
+
+        MultiLayerNetwork inMemory = network();
+        MultiLayerNetwork mapped = network();
+
+        inMemory.backpropagation(0, aInputExpected);
+        mapped.backpropagation(0, new Dataset.MappedSource(file), 8);
+
+        for(int k=0; k<2; k++)
+            for(int j=0; j<5; j++)
+                assertThat(mapped.getLayer(1).layer.getNeuron(k).getWeight(j),
+                        is(inMemory.getLayer(1).layer.getNeuron(k).getWeight(j)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotADataset() throws IOException
+    {
+        File file = tempFile();
+        FileWriter writer = new FileWriter(file);
+        for(int i=0; i<100; i++) writer.write("0 1 2\n");
+        writer.close();
+        new Dataset.MappedSource(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedVersion() throws IOException
+    {
+        File file = tempFile();
+        Dataset.write(file, new ExampleSources.ArraySource(examples(3)));
+
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw");
+        raf.seek(4);
+        raf.write(new byte[]{(byte) (Dataset.VERSION + 1), 0, 0, 0});
+        raf.close();
+        new Dataset.MappedSource(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSize() throws IOException
+    {
+        Dataset.Writer writer = new Dataset.Writer(tempFile(), 3, 2);
+        try
+        {
+            writer.append(new NVector(1, 2), new NVector(1, 2));
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IExampleSource;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ExampleSourcesTest
+{
+    /**
+     * Reads one epoch and returns the first input coordinate of each example
+     */
+    private List<Double> readEpoch(IExampleSource source, int epoch)
+    {
+        NVector input = new NVector().setSize(source.getInputSize());
+        NVector expected = new NVector().setSize(source.getExpectedSize());
+        List<Double> rslt = new ArrayList<Double>();
+
+        source.startEpoch(epoch);
+        while(source.next(input, expected))
+        {
+            assertThat(expected.get(0) + input.get(0), is(0.0));
+            rslt.add(input.get(0));
+        }
+        return rslt;
+    }
+
+    private IExampleSource generator(final int numberExamples)
+    {
+        return new ExampleSources.GeneratorSource(numberExamples, 2, 1) {
+            @Override
+            protected void generate(int epoch, long example, NVector vInput, NVector vExpected)
+            {
+                vInput.set(0, example).set(1, epoch);
+                vExpected.set(0, -example);
+            }
+        };
+    }
+
+    @Test
+    public void testArraySource()
+    {
+        IExampleSource source = new ExampleSources.ArraySource(
+                new NVector(1, 0), new NVector(-1),
+                new NVector(2, 0), new NVector(-2));
+
+        assertThat(readEpoch(source, 1).toString(), is("[1.0, 2.0]"));
+        assertThat(readEpoch(source, 2).toString(), is("[1.0, 2.0]"));
+    }
+
+    @Test
+    public void testGeneratorSource()
+    {
+        assertThat(readEpoch(generator(3), 1).toString(), is("[0.0, 1.0, 2.0]"));
+    }
+
+    @Test
+    public void testTextFileSource() throws IOException
+    {
+        File file = File.createTempFile("examples", ".txt");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write("# input input expected\n1 0 -1\n\n2.5\t0   -2.5\n");
+        writer.close();
+
+        IExampleSource source = new ExampleSources.TextFileSource(file, 2, 1);
+        assertThat(readEpoch(source, 1).toString(), is("[1.0, 2.5]"));
+        assertThat(readEpoch(source, 2).toString(), is("[1.0, 2.5]"));
+    }
+
+    @Test
+    public void testShuffledSource()
+    {
+        final int numberExamples = 100;
+        IExampleSource source = new ExampleSources.ShuffledSource(generator(numberExamples), 16, 100012);
+
+        List<Double> epoch1 = readEpoch(source, 1);
+        List<Double> epoch2 = readEpoch(source, 2);
+
+        //same epoch, same order
+        assertThat(readEpoch(source, 1), is(epoch1));
+        //different epochs, different orders
+        assertThat(epoch2, not(is(epoch1)));
+
+        //it's a permutation
+        List<Double> sorted = new ArrayList<Double>(epoch1);
+        Collections.sort(sorted);
+        assertThat(sorted, is(readEpoch(generator(numberExamples), 1)));
+        assertThat(sorted, not(is(epoch1)));
+    }
+}
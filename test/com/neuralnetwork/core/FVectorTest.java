@@ -0,0 +1,64 @@
+package com.neuralnetwork.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FVectorTest
+{
+    @Test
+    public void testConstructors() throws Exception
+    {
+        FVector a = new FVector().setSize(10);
+        assertThat(a.size(), is(10));
+
+        a = new FVector(new NVector(1, 2, 3));
+        assertThat(a.size(), is(3));
+        assertThat(a.get(0), is(1f));
+        assertThat(a.get(2), is(3f));
+
+        assertThat(a.toNVector().get(1), is(2.0));
+    }
+
+    @Test
+    public void testDot() throws Exception
+    {
+        FVector a = new FVector(1, 2, 3);
+        FVector b = new FVector(-3, -2, -1);
+
+        assertThat(a.dot(b), is(b.dot(a)));
+        assertThat(a.dot(b), is(-3.0-4.0-3.0));
+    }
+
+    @Test
+    public void testSubtract() throws Exception
+    {
+        FVector a = new FVector(-1,-2,-3);
+        FVector b = new FVector(3,2,1);
+
+        assertThat(a.subtract(b).toString(), is("[-4.00000  -4.00000  -4.00000]"));
+    }
+
+    @Test
+    public void testDotProductAndSum() throws Exception
+    {
+        FVector a = new FVector(1,2,3,4);
+        assertThat(a.dotProduct(), is(1+4+9+16.0));
+        assertThat(a.sumOfCoords(), is(1+2+3+4.0));
+    }
+
+    /**
+     * Sums are accumulated in double so they don't lose the small terms
+     */
+    @Test
+    public void testDoubleAccumulation() throws Exception
+    {
+        FVector a = new FVector().setSize(10001);
+        a.set(0, 1e8);
+        for(int i=1; i<a.size(); i++)
+            a.set(i, 1);
+
+        assertThat(a.sumOfCoords(), is(1e8 + 10000));
+    }
+}
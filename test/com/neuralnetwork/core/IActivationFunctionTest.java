@@ -81,6 +81,113 @@ public class IActivationFunctionTest
 
     }
 
+    /**
+     * Checks apply and derivative against the exact sigmoid on a fine grid covering the tables,
+     * their edges, and the saturated regions
+     */
+    private void assertWithinMaxError(double slope, double maxError)
+    {
+        ActivationFunctions.SigmoidFunction exact = new ActivationFunctions.SigmoidFunction(slope);
+        ActivationFunctions.FastSigmoidFunction fast = new ActivationFunctions.FastSigmoidFunction(slope, maxError);
+
+        double worstApply = 0;
+        double worstDerivative = 0;
+        for(double v=-60; v<=60; v+=0.000731)
+        {
+            worstApply = Math.max(worstApply, Math.abs(fast.apply(v) - exact.apply(v)));
+            worstDerivative = Math.max(worstDerivative, Math.abs(fast.derivative(v) - exact.derivative(v)));
+        }
+        assertThat(worstApply <= maxError, is(true));
+        assertThat(worstDerivative <= maxError, is(true));
+    }
+
+    @Test
+    public void testFastSigmoidFunctionError()
+    {
+        assertWithinMaxError(1.0, ActivationFunctions.FastSigmoidFunction.DEFAULT_MAX_ERROR);
+        assertWithinMaxError(1.0, 1e-3);
+        assertWithinMaxError(2.0, 1e-6);
+        assertWithinMaxError(0.5, 1e-9);
+    }
+
+    @Test
+    public void testFastSigmoidFunctionSaturation()
+    {
+        ActivationFunctions.FastSigmoidFunction sig = new ActivationFunctions.FastSigmoidFunction(1.0);
+
+        assertThat(sig.apply(0.0), is(0.5));
+        assertThat(sig.apply(45.0), is(1.0));
+        assertThat(sig.apply(-45.0), is(0.0));
+        assertThat(sig.apply(Double.POSITIVE_INFINITY), is(1.0));
+        assertThat(sig.apply(Double.NEGATIVE_INFINITY), is(0.0));
+        assertThat(sig.derivative(15.0), is(0.0));
+        assertThat(sig.derivative(-15.0), is(0.0));
+        assertThat(Double.isNaN(sig.apply(Double.NaN)), is(true));
+
+        //same 6 digits as the exact function
+        assertThat(output((IActivationFunction) sig, 5.0), is("0.993307"));
+        assertThat(output(sig, 3.0), is("0.045177"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastSigmoidFunctionTooPrecise()
+    {
+        new ActivationFunctions.FastSigmoidFunction(1.0, 1e-12);
+    }
+
+    @Test
+    public void testFastSigmoidFunctionTableSize()
+    {
+        //the smallest error fits at slope 1
+        new ActivationFunctions.FastSigmoidFunction(1.0, ActivationFunctions.FastSigmoidFunction.MIN_MAX_ERROR);
+        new ActivationFunctions.FastSigmoidFunction(1000.0, 1e-3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastSigmoidFunctionTableTooLarge()
+    {
+        new ActivationFunctions.FastSigmoidFunction(1000.0, 1e-8);
+    }
+
+    /**
+     * The array versions give exactly what the scalar versions give
+     */
+    private void assertArraysMatchScalar(IActivationFunction.IDifferentiableFunction f)
+    {
+        double[] aV = new double[400];
+        for(int i=0; i<aV.length; i++)
+            aV[i] = (i - 200) * 0.25 + 0.01;
+
+        double[] aValues = new double[aV.length + 1];
+        double[] aDerivatives = new double[aV.length + 2];
+        double[] aFusedValues = new double[aV.length + 1];
+        double[] aFusedDerivatives = new double[aV.length + 2];
+        f.apply(aV, 0, aValues, 1, aV.length);
+        f.derivative(aV, 0, aDerivatives, 2, aV.length);
+        f.applyWithDerivative(aV, 0, aFusedValues, 1, aFusedDerivatives, 2, aV.length);
+
+        for(int i=0; i<aV.length; i++)
+        {
+            assertThat(aValues[i + 1], is(f.apply(aV[i])));
+            assertThat(aDerivatives[i + 2], is(f.derivative(aV[i])));
+            assertThat(aFusedValues[i + 1], is(f.apply(aV[i])));
+            assertThat(aFusedDerivatives[i + 2], is(f.derivative(aV[i])));
+        }
+    }
+
+    @Test
+    public void testArrayFunctions()
+    {
+        assertArraysMatchScalar(new ActivationFunctions.SigmoidFunction(2.0));
+        assertArraysMatchScalar(new ActivationFunctions.SigmoidUnityFunction());
+        assertArraysMatchScalar(new ActivationFunctions.FastSigmoidFunction(1.5));
+
+        IActivationFunction threshold = new ActivationFunctions.ThresholdFunction();
+        double[] aRslt = new double[3];
+        threshold.apply(new double[]{-1, 0, 2}, 0, aRslt, 0, 3);
+        assertThat(new NVector(aRslt).toString(), is("[0.00000  1.00000  1.00000]"));
+    }
+
     private String output(IActivationFunction.IDifferentiableFunction f, double x)
     {
         return String.format("%.6f", f.derivative(x));
@@ -1,11 +1,15 @@
 package com.neuralnetwork.core;
 
 import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.IExampleSource;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 public class MultiLayerNetworkTest
@@ -205,6 +209,567 @@ public class MultiLayerNetworkTest
         assertThat(wo1, is(no.getWeight(0)));
     }
 
+    /**
+     * Tests that the gradients of a three-layer network are built
+     * from the gradients of the layer above it
+     */
+    @Test
+    public void testThreeLayerGradients()
+    {
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer1 = new SingleLayerNeuralNetwork();
+        layer1.setNeurons(new Neuron(phi, 0.25, 0.75, 0.5),
+                          new Neuron(phi, -0.5, 0.1, 0.2));
+        SingleLayerNeuralNetwork layer2 = new SingleLayerNeuralNetwork();
+        layer2.setNeurons(new Neuron(phi, 0.3, -0.2, 0.1),
+                          new Neuron(phi, 0.6, 0.4, -0.3));
+        SingleLayerNeuralNetwork layer3 = new SingleLayerNeuralNetwork();
+        layer3.setNeurons(new Neuron(phi, 0.7, -0.8, 0.05));
+
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder();
+        builder.setLearningParam(0.9)
+               .setMomentumParam(0.04)
+               .setGlobalActivationFunction(phi)
+               .setLayers(layer1, layer2, layer3);
+
+        MultiLayerNetwork network = new MultiLayerNetwork(builder);
+
+        NVector example = new NVector(-1,2);
+        NVector expected = new NVector(0.15);
+
+        network.setupExampleInfo(example, expected);
+        network.forwardPropagation(0);
+        network.constructGradients(0);
+
+        //calculate gradients manually
+        double[] v1 = {0.25*-1 + 0.75*2 + 0.5, -0.5*-1 + 0.1*2 + 0.2};
+        double[] y1 = {phi.apply(v1[0]), phi.apply(v1[1])};
+        double[] v2 = {0.3*y1[0] - 0.2*y1[1] + 0.1, 0.6*y1[0] + 0.4*y1[1] - 0.3};
+        double[] y2 = {phi.apply(v2[0]), phi.apply(v2[1])};
+        double v3 = 0.7*y2[0] - 0.8*y2[1] + 0.05;
+
+        double d3 = (expected.get(0) - phi.apply(v3)) * phi.derivative(v3);
+        double[] d2 = {phi.derivative(v2[0]) * 0.7 * d3, phi.derivative(v2[1]) * -0.8 * d3};
+        double[] d1 = {phi.derivative(v1[0]) * (0.3*d2[0] + 0.6*d2[1]),
+                       phi.derivative(v1[1]) * (-0.2*d2[0] + 0.4*d2[1])};
+
+        assertThat(round(network.aLayers[2].vGradients.get(0), 7), is(round(d3, 7)));
+        for(int i=0; i<2; i++)
+        {
+            assertThat(round(network.aLayers[1].vGradients.get(i), 7), is(round(d2[i], 7)));
+            assertThat(round(network.aLayers[0].vGradients.get(i), 7), is(round(d1[i], 7)));
+        }
+    }
+
+    /**
+     * Training in blocks of examples should give exactly the same weights
+     * as training one example at a time
+     */
+    @Test
+    public void testBlockBackpropagation()
+    {
+        final int[] aWidths = {3, 5, 4, 2};
+        final int numberExamples = 7;
+
+        Random r = new Random(100012);
+        NVector[] aInputExpected = new NVector[2*numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector(r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble(), r.nextDouble());
+        }
+
+        MultiLayerNetwork serial = randomNetwork(new Random(7), aWidths, 0, 0);
+        MultiLayerNetwork blocked = randomNetwork(new Random(7), aWidths, 3, 0);
+
+        serial.setupExampleInfo(aInputExpected);
+        blocked.setupExampleInfo(aInputExpected);
+
+        for(int iteration=0; iteration<5; iteration++)
+        {
+            assertThat(blocked.backpropagation(), is(serial.backpropagation()));
+        }
+
+        for(int layer=0; layer<aWidths.length-1; layer++)
+            for(int neuron=0; neuron<aWidths[layer+1]; neuron++)
+                for(int weight=0; weight<=aWidths[layer]; weight++)
+                    assertThat(blocked.getLayer(layer).layer.getNeuron(neuron).getWeight(weight),
+                            is(serial.getLayer(layer).layer.getNeuron(neuron).getWeight(weight)));
+    }
+
+    /**
+     * Training on several threads should give the same weights as training on one thread
+     * up to the order in which the weight adjustments are added
+     */
+    @Test
+    public void testParallelBackpropagation()
+    {
+        final int[] aWidths = {3, 5, 4, 2};
+        final int numberExamples = 11;
+
+        Random r = new Random(100012);
+        NVector[] aInputExpected = new NVector[2*numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector(r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble(), r.nextDouble());
+        }
+
+        MultiLayerNetwork serial = randomNetwork(new Random(7), aWidths, 0, 0);
+        MultiLayerNetwork parallel = randomNetwork(new Random(7), aWidths, 0, 4);
+        //on a pool shared with other networks
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        MultiLayerNetwork parallelBlocked = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths)
+                .setBlockSize(2)
+                .setPool(pool));
+
+        serial.setupExampleInfo(aInputExpected);
+        parallel.setupExampleInfo(aInputExpected);
+        parallelBlocked.setupExampleInfo(aInputExpected);
+
+        for(int iteration=0; iteration<5; iteration++)
+        {
+            final double error = serial.backpropagation();
+            assertEquals(error, parallel.backpropagation(), 1e-12);
+            assertEquals(error, parallelBlocked.backpropagation(), 1e-12);
+        }
+
+        for(int layer=0; layer<aWidths.length-1; layer++)
+            for(int neuron=0; neuron<aWidths[layer+1]; neuron++)
+                for(int weight=0; weight<=aWidths[layer]; weight++)
+                {
+                    final double expected = serial.getLayer(layer).layer.getNeuron(neuron).getWeight(weight);
+                    assertEquals(expected, parallel.getLayer(layer).layer.getNeuron(neuron).getWeight(weight), 1e-12);
+                    assertEquals(expected, parallelBlocked.getLayer(layer).layer.getNeuron(neuron).getWeight(weight), 1e-12);
+                }
+
+        //only the pool the network started is shut down
+        parallel.close();
+        parallelBlocked.close();
+        assertThat(parallel.pool.isShutdown(), is(true));
+        assertThat(pool.isShutdown(), is(false));
+        pool.shutdown();
+    }
+
+    /**
+     * Streaming the examples in chunks should give exactly the same weights
+     * as having them all in memory
+     */
+    @Test
+    public void testStreamingBackpropagation()
+    {
+        final int[] aWidths = {3, 5, 2};
+        final int numberExamples = 7;
+
+        Random r = new Random(100012);
+        NVector[] aInputExpected = new NVector[2*numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector(r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble(), r.nextDouble());
+        }
+
+        MultiLayerNetwork inMemory = randomNetwork(new Random(7), aWidths, 0, 0);
+        MultiLayerNetwork streaming = randomNetwork(new Random(7), aWidths, 0, 0);
+
+        inMemory.setupExampleInfo(aInputExpected);
+        IExampleSource source = new ExampleSources.ArraySource(aInputExpected);
+        streaming.setupExampleBuffers(source, 3);
+
+        for(int epoch=1; epoch<=5; epoch++)
+        {
+            assertEquals(inMemory.backpropagation(), streaming.backpropagation(source, epoch, 0), 1e-12);
+        }
+
+        for(int layer=0; layer<aWidths.length-1; layer++)
+            for(int neuron=0; neuron<aWidths[layer+1]; neuron++)
+                for(int weight=0; weight<=aWidths[layer]; weight++)
+                    assertThat(streaming.getLayer(layer).layer.getNeuron(neuron).getWeight(weight),
+                            is(inMemory.getLayer(layer).layer.getNeuron(neuron).getWeight(weight)));
+    }
+
+    /**
+     * A batch as big as the data set is full batch
+     */
+    @Test
+    public void testBatchSizeOfAllExamples()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 10);
+
+        MultiLayerNetwork fullBatch = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        MultiLayerNetwork batched = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(10));
+        fullBatch.setupExampleInfo(aInputExpected);
+        batched.setupExampleInfo(aInputExpected);
+
+        for(int epoch=1; epoch<=3; epoch++)
+            assertThat(batched.backpropagation(), is(fullBatch.backpropagation()));
+        assertSameWeights(fullBatch, batched);
+    }
+
+    /**
+     * Online training adjusts the weights after every example,
+     * like a full batch epoch over each example in turn
+     */
+    @Test
+    public void testOnlineTraining()
+    {
+        final int[] aWidths = {3, 4, 2};
+        final int numberExamples = 5;
+        NVector[] aInputExpected = randomExamples(new Random(100012), numberExamples);
+
+        MultiLayerNetwork oneAtATime = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        MultiLayerNetwork online = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(1));
+        online.setupExampleInfo(aInputExpected);
+
+        for(int epoch=1; epoch<=3; epoch++)
+        {
+            for(int i=0; i<numberExamples; i++)
+            {
+                oneAtATime.setupExampleInfo(aInputExpected[2*i], aInputExpected[2*i+1]);
+                oneAtATime.backpropagation();
+            }
+            online.backpropagation();
+        }
+        assertSameWeights(oneAtATime, online);
+
+        //mini-batches of 2 with a parallel pool, carrying over the last example of each epoch
+        MultiLayerNetwork serial = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(2));
+        MultiLayerNetwork parallel = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(2).setParallelism(2));
+        serial.setupExampleInfo(aInputExpected);
+        parallel.setupExampleInfo(aInputExpected);
+        for(int epoch=1; epoch<=3; epoch++)
+            assertEquals(serial.backpropagation(), parallel.backpropagation(), 1e-12);
+        parallel.close();
+    }
+
+    @Test
+    public void testShuffle()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 20);
+
+        MultiLayerNetwork shuffled = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(4).setShuffle(3));
+        MultiLayerNetwork same = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(4).setShuffle(3));
+        MultiLayerNetwork unshuffled = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setBatchSize(4));
+        shuffled.setupExampleInfo(aInputExpected);
+        same.setupExampleInfo(aInputExpected);
+        unshuffled.setupExampleInfo(aInputExpected);
+
+        for(int epoch=1; epoch<=3; epoch++)
+        {
+            final double error = shuffled.backpropagation();
+            assertThat(same.backpropagation(), is(error));
+            assertThat(unshuffled.backpropagation() == error, is(false));
+        }
+        assertSameWeights(shuffled, same);
+    }
+
+    /**
+     * Without the evaluation pass, the error of an epoch is the error of the weights it started with
+     */
+    @Test
+    public void testTrainingPassError()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 10);
+
+        MultiLayerNetwork exact = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        MultiLayerNetwork everyThird = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setEvaluationInterval(3));
+        exact.setupExampleInfo(aInputExpected);
+        everyThird.setupExampleInfo(aInputExpected);
+
+        double errorBefore = exact.evaluate();
+        for(int epoch=1; epoch<=6; epoch++)
+        {
+            final double error = everyThird.backpropagation(epoch, 0);
+            final double exactError = exact.backpropagation();
+            assertThat(error, is(epoch % 3 == 0 ? exactError : errorBefore));
+            errorBefore = exactError;
+        }
+        assertSameWeights(exact, everyThird);
+    }
+
+    @Test
+    public void testEvaluationExamples()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 10);
+        NVector[] aHeldOut = randomExamples(new Random(5), 4);
+
+        MultiLayerNetwork network = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths).setEvaluationExamples(aHeldOut));
+        MultiLayerNetwork reference = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        network.setupExampleInfo(aInputExpected);
+
+        for(int epoch=1; epoch<=3; epoch++)
+        {
+            final double error = network.backpropagation();
+
+            reference.setupExampleInfo(aInputExpected);
+            reference.backpropagation();
+            reference.setupExampleInfo(aHeldOut);
+            assertThat(error, is(reference.evaluate()));
+        }
+    }
+
+    /**
+     * Early stopping is decided on the exact error, even when it's only measured to confirm
+     */
+    @Test
+    public void testEarlyStoppingWithoutEvaluation()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 10);
+
+        final double[] aFinished = new double[2];
+        MultiLayerNetwork network = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths)
+                .setEvaluationInterval(0)
+                .setIterations(10000)
+                .setTrainingListener(new TrainingListeners.NoOpListener() {
+                    @Override
+                    public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+                    {
+                        aFinished[0] = epoch;
+                        aFinished[1] = error;
+                    }
+                }));
+
+        network.setupExampleInfo(aInputExpected);
+        final double errorBound = network.evaluate() * 0.8;
+        network.backpropagation(errorBound, aInputExpected);
+
+        assertThat(aFinished[0] < 10000, is(true));
+        assertThat(aFinished[1] <= errorBound, is(true));
+        assertThat(aFinished[1], is(network.evaluate()));
+    }
+
+    /**
+     * The forward pass stores phi' so the backward pass never evaluates it
+     */
+    @Test
+    public void testDerivativesCachedByForwardPass()
+    {
+        final int[] aCalls = new int[1];
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction() {
+            @Override
+            public double derivative(double v)
+            {
+                aCalls[0]++;
+                return super.derivative(v);
+            }
+        };
+
+        for(int blockSize : new int[]{0, 4})
+        {
+            SingleLayerNeuralNetwork hidden = new SingleLayerNeuralNetwork();
+            hidden.setNeurons(new Neuron(phi, 0.1, -0.2, 0.3), new Neuron(phi, -0.4, 0.5, 0.6));
+            SingleLayerNeuralNetwork output = new SingleLayerNeuralNetwork();
+            output.setNeurons(new Neuron(phi, 0.7, -0.8, 0.9));
+
+            MultiLayerNetwork network = new MultiLayerNetwork(new MultiLayerNetwork.Builder()
+                    .setMomentumParam(0.05)
+                    .setLearningParam(0.5)
+                    .setGlobalActivationFunction(phi)
+                    .setLayers(hidden, output)
+                    .setBlockSize(blockSize));
+            network.setupExampleInfo(new NVector(1, 0), new NVector(1), new NVector(0, 1), new NVector(0));
+            network.backpropagation();
+        }
+        assertThat(aCalls[0], is(0));
+    }
+
+    private MultiLayerNetwork sigmoidNetwork(IActivationFunction.IDifferentiableFunction phi, boolean distinctFunctions,
+                                             int blockSize)
+    {
+        IActivationFunction.IDifferentiableFunction phi2 = distinctFunctions ? new ActivationFunctions.SigmoidUnityFunction() : phi;
+        SingleLayerNeuralNetwork hidden = new SingleLayerNeuralNetwork();
+        hidden.setNeurons(new Neuron(phi, 0.1, -0.2, 0.3), new Neuron(phi2, -0.4, 0.5, 0.6));
+        SingleLayerNeuralNetwork output = new SingleLayerNeuralNetwork();
+        output.setNeurons(new Neuron(phi, 0.7, -0.8, 0.9));
+
+        return new MultiLayerNetwork(new MultiLayerNetwork.Builder()
+                .setMomentumParam(0.05)
+                .setLearningParam(0.5)
+                .setGlobalActivationFunction(distinctFunctions ? null : phi)
+                .setLayers(hidden, output)
+                .setBlockSize(blockSize));
+    }
+
+    /**
+     * Without a global activation function, the gradients use each neuron's own,
+     * shared by the layer or not
+     */
+    @Test
+    public void testNoGlobalActivationFunction()
+    {
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        for(int blockSize : new int[]{0, 4})
+        {
+            MultiLayerNetwork global = sigmoidNetwork(phi, false, blockSize);
+            MultiLayerNetwork own = sigmoidNetwork(phi, true, blockSize);
+            NVector[] aInputExpected = {new NVector(1, 0), new NVector(1), new NVector(0, 1), new NVector(0)};
+            global.setupExampleInfo(aInputExpected);
+            own.setupExampleInfo(aInputExpected);
+
+            for(int iteration=0; iteration<3; iteration++)
+                assertThat(own.backpropagation(), is(global.backpropagation()));
+            for(int layer=0; layer<2; layer++)
+                for(int neuron=0; neuron<global.getLayer(layer).layer.getNumberOfNeurons(); neuron++)
+                    for(int weight=0; weight<3; weight++)
+                        assertThat(own.getLayer(layer).layer.getNeuron(neuron).getWeight(weight),
+                                is(global.getLayer(layer).layer.getNeuron(neuron).getWeight(weight)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoDerivative()
+    {
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(new ActivationFunctions.ThresholdFunction(), 0.25, 0.75, 0.5));
+        MultiLayerNetwork network = new MultiLayerNetwork(new MultiLayerNetwork.Builder()
+                .setMomentumParam(0.05)
+                .setLearningParam(0.5)
+                .setLayers(layer));
+
+        //inference works without derivatives
+        network.output(new NVector(-1, 2));
+
+        network.setupExampleInfo(new NVector(-1, 2), new NVector(1));
+        network.backpropagation();
+    }
+
+    /**
+     * Once set up, the forward pass shouldn't allocate anything
+     */
+    @Test
+    public void testOutputDoesNotAllocate()
+    {
+        final int[] aWidths = {8, 16, 16, 4};
+        MultiLayerNetwork network = randomNetwork(new Random(7), aWidths, 0, 0);
+
+        final NVector input = new NVector(0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8);
+        final NVector output = new NVector().setSize(aWidths[aWidths.length - 1]);
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        //warm up
+        for(int i=0; i<20000; i++)
+            network.output(input, output);
+
+        //cost of measuring
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for(int i=0; i<1000; i++)
+            network.output(input, output);
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertThat(allocated, is(0L));
+        assertThat(output.get(0), is(network.output(input).get(0)));
+    }
+
+    private MultiLayerNetwork randomNetwork(Random r, int[] aWidths, int blockSize, int parallelism)
+    {
+        return new MultiLayerNetwork(randomBuilder(r, aWidths)
+                .setBlockSize(blockSize)
+                .setParallelism(parallelism));
+    }
+
+    /**
+     * The input gradients are minus the derivatives of the error (1/2 the difference squared) with respect to the input,
+     * and the step adjusts the weights like a full batch epoch over the example alone
+     */
+    @Test
+    public void testInputGradients()
+    {
+        final int[] aWidths = {3, 4, 2};
+        NVector[] aInputExpected = randomExamples(new Random(100012), 3);
+
+        MultiLayerNetwork frozen = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        MultiLayerNetwork stepped = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+        MultiLayerNetwork epochs = new MultiLayerNetwork(randomBuilder(new Random(7), aWidths));
+
+        final NVector vInput = aInputExpected[0];
+        final NVector vExpected = aInputExpected[1];
+        NVector vInputGradients = new NVector().setSize(vInput.size());
+        final double differenceSquared = stepped.backpropagation(vInput, vExpected, vInputGradients);
+        assertThat(differenceSquared, is(frozen.output(vInput).subtract(vExpected).dotProduct()));
+
+        final double h = 1e-6;
+        for(int k=0; k<vInput.size(); k++)
+        {
+            NVector vPlus = new NVector(vInput.aCoords.clone());
+            vPlus.set(k, vInput.get(k) + h);
+            NVector vMinus = new NVector(vInput.aCoords.clone());
+            vMinus.set(k, vInput.get(k) - h);
+            final double derivative = (0.5 * frozen.output(vPlus).subtract(vExpected).dotProduct()
+                                     - 0.5 * frozen.output(vMinus).subtract(vExpected).dotProduct()) / (2 * h);
+            assertEquals(-derivative, vInputGradients.get(k), 1e-8);
+        }
+
+        epochs.setupExampleInfo(vInput, vExpected);
+        epochs.backpropagation();
+        assertSameWeights(epochs, stepped);
+
+        //later steps carry the optimizer state over like epochs do
+        for(int i=1; i<3; i++)
+        {
+            stepped.backpropagation(aInputExpected[2*i], aInputExpected[2*i+1], vInputGradients);
+            epochs.setupExampleInfo(aInputExpected[2*i], aInputExpected[2*i+1]);
+            epochs.backpropagation();
+        }
+        assertSameWeights(epochs, stepped);
+    }
+
+    private MultiLayerNetwork.Builder randomBuilder(Random r, int[] aWidths)
+    {
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+
+        SingleLayerNeuralNetwork[] aLayers = new SingleLayerNeuralNetwork[aWidths.length - 1];
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            Neuron[] aNeurons = new Neuron[aWidths[layer+1]];
+            for(int neuron=0; neuron<aNeurons.length; neuron++)
+            {
+                double[] aWeights = new double[aWidths[layer] + 1];
+                for(int weight=0; weight<aWeights.length; weight++)
+                    aWeights[weight] = r.nextGaussian();
+                aNeurons[neuron] = new Neuron(phi, aWeights);
+            }
+            aLayers[layer] = new SingleLayerNeuralNetwork();
+            aLayers[layer].setNeurons(aNeurons);
+        }
+
+        return new MultiLayerNetwork.Builder()
+                .setMomentumParam(0.05)
+                .setLearningParam(0.5)
+                .setGlobalActivationFunction(phi)
+                .setLayers(aLayers);
+    }
+
+    private NVector[] randomExamples(Random r, int numberExamples)
+    {
+        NVector[] aInputExpected = new NVector[2*numberExamples];
+        for(int i=0; i<numberExamples; i++)
+        {
+            aInputExpected[2*i] = new NVector(r.nextGaussian(), r.nextGaussian(), r.nextGaussian());
+            aInputExpected[2*i+1] = new NVector(r.nextDouble(), r.nextDouble());
+        }
+        return aInputExpected;
+    }
+
+    private void assertSameWeights(MultiLayerNetwork expected, MultiLayerNetwork actual)
+    {
+        for(int layer=0; layer<expected.numberLayers; layer++)
+            for(int neuron=0; neuron<expected.getLayer(layer).layer.getNumberOfNeurons(); neuron++)
+                for(int weight=0; weight<expected.getLayer(layer).layer.getNeuron(neuron).getNumberOfWeights(); weight++)
+                    assertThat(actual.getLayer(layer).layer.getNeuron(neuron).getWeight(weight),
+                            is(expected.getLayer(layer).layer.getNeuron(neuron).getWeight(weight)));
+    }
+
     private String round(double num, int precision)
     {
         return String.format("%"+precision+"g", num);
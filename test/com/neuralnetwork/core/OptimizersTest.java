@@ -0,0 +1,140 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IOptimizer;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class OptimizersTest
+{
+    @Test
+    public void testWeightMomentum()
+    {
+        double[] w = {0, 1, 2};
+        double[] state = {0, 0.5, -1};
+        new Optimizers.WeightMomentum(0.1).step(w, 1, new double[]{0.25, 0.125}, 0, state, 1, 2, 1);
+
+        assertThat(w[1], is(1 + 0.1 * 0.5 + 0.25));
+        assertThat(w[2], is(2 + 0.1 * -1 + 0.125));
+        assertThat(state[1], is(1.0));
+        assertThat(state[2], is(2.0));
+    }
+
+    @Test
+    public void testMomentumAndNesterov()
+    {
+        double[] w = {1};
+        double[] state = new double[1];
+        IOptimizer momentum = new Optimizers.Momentum(0.5);
+        momentum.step(w, 0, new double[]{1}, 0, state, 0, 1, 1);
+        momentum.step(w, 0, new double[]{1}, 0, state, 0, 1, 2);
+        //v = 1, then 1.5
+        assertThat(w[0], is(3.5));
+        assertThat(state[0], is(1.5));
+
+        w[0] = 1;
+        state[0] = 0;
+        IOptimizer nesterov = new Optimizers.Nesterov(0.5);
+        nesterov.step(w, 0, new double[]{1}, 0, state, 0, 1, 1);
+        nesterov.step(w, 0, new double[]{1}, 0, state, 0, 1, 2);
+        //1 + (0.5 + 1) + (0.75 + 1)
+        assertThat(w[0], is(4.25));
+        assertThat(state[0], is(1.5));
+    }
+
+    @Test
+    public void testRMSProp()
+    {
+        double[] w = {1, 1};
+        double[] state = new double[2];
+        new Optimizers.RMSProp(0.01, 0.9, 0).step(w, 0, new double[]{4, -0.001}, 0, state, 0, 2, 1);
+
+        //the step is the same size whatever the scale of the adjustment
+        assertEquals(1 + 0.01 / Math.sqrt(0.1), w[0], 1e-15);
+        assertEquals(1 - 0.01 / Math.sqrt(0.1), w[1], 1e-15);
+        assertEquals(1.6, state[0], 1e-15);
+    }
+
+    @Test
+    public void testAdam()
+    {
+        double[] w = {1, 1};
+        double[] state = new double[4];
+        IOptimizer adam = new Optimizers.Adam(0.01, 0.9, 0.999, 0);
+        adam.step(w, 0, new double[]{4, -0.001}, 0, state, 0, 2, 1);
+
+        //after bias correction, the first step is learningRate times the sign of the adjustment
+        assertEquals(1.01, w[0], 1e-15);
+        assertEquals(0.99, w[1], 1e-15);
+        assertEquals(0.4, state[0], 1e-15);
+        assertEquals(0.016, state[2], 1e-15);
+
+        adam.step(w, 0, new double[]{4, -0.001}, 0, state, 0, 2, 2);
+        assertEquals(1.02, w[0], 1e-15);
+    }
+
+    private int epochsToReach(IOptimizer optimizer, double eta, double errorBound)
+    {
+        Random r = new Random(100012);
+        ActivationFunctions.SigmoidUnityFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        final int[] aWidths = {2, 6, 1};
+
+        SingleLayerNeuralNetwork[] aLayers = new SingleLayerNeuralNetwork[aWidths.length - 1];
+        for(int layer=0; layer<aLayers.length; layer++)
+        {
+            Neuron[] aNeurons = new Neuron[aWidths[layer+1]];
+            for(int neuron=0; neuron<aNeurons.length; neuron++)
+            {
+                double[] aWeights = new double[aWidths[layer] + 1];
+                for(int weight=0; weight<aWeights.length; weight++)
+                    aWeights[weight] = r.nextGaussian();
+                aNeurons[neuron] = new Neuron(phi, aWeights);
+            }
+            aLayers[layer] = new SingleLayerNeuralNetwork();
+            aLayers[layer].setNeurons(aNeurons);
+        }
+
+        final int[] aEpochs = new int[1];
+        MultiLayerNetwork network = new MultiLayerNetwork(new MultiLayerNetwork.Builder()
+                .setLearningParam(eta)
+                .setMomentumParam(0.0)
+                .setOptimizer(optimizer)
+                .setIterations(100000)
+                .setGlobalActivationFunction(phi)
+                .setLayers(aLayers)
+                .setTrainingListener(new TrainingListeners.NoOpListener() {
+                    @Override
+                    public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+                    {
+                        aEpochs[0] = epoch;
+                    }
+                }));
+
+        //xor
+        network.backpropagation(errorBound,
+                new NVector(0, 0), new NVector(0.1),
+                new NVector(0, 1), new NVector(0.9),
+                new NVector(1, 0), new NVector(0.9),
+                new NVector(1, 1), new NVector(0.1));
+        return aEpochs[0];
+    }
+
+    /**
+     * On xor the default rule needs over a thousand epochs
+     */
+    @Test
+    public void testConvergence()
+    {
+        final double errorBound = 0.01;
+        final int epochs = epochsToReach(null, 0.5, errorBound);
+
+        assertThat(epochsToReach(new Optimizers.Momentum(0.9), 0.5, errorBound) < epochs / 5, is(true));
+        assertThat(epochsToReach(new Optimizers.Nesterov(0.9), 0.5, errorBound) < epochs / 5, is(true));
+        assertThat(epochsToReach(new Optimizers.RMSProp(0.01), 1, errorBound) < epochs / 2, is(true));
+        assertThat(epochsToReach(new Optimizers.Adam(0.05), 1, errorBound) < epochs / 10, is(true));
+    }
+}
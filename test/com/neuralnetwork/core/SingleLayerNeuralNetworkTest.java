@@ -0,0 +1,86 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SingleLayerNeuralNetworkTest
+{
+    @Test
+    public void testWeightMatrix()
+    {
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Neuron n1 = new Neuron(phi, 1, 2, 3);
+        Neuron n2 = new Neuron(phi, 4, 5, 6);
+
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(n1, n2);
+
+        //weights are packed row by row
+        assertThat(layer.getNumberOfWeights(), is(3));
+        for(int i=0; i<6; i++)
+            assertThat(layer.aWeights[i], is((double) i + 1));
+
+        //neurons are views of their row
+        n2.setWeight(1, -5);
+        assertThat(layer.aWeights[4], is(-5.0));
+        assertThat(layer.getNeuron(1).getWeight(1), is(-5.0));
+        assertThat(n1.getWeight(2), is(3.0));
+    }
+
+    @Test
+    public void testOutput()
+    {
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(phi, 0.25, 0.75, 0.5),
+                         new Neuron(phi, -0.5, 0.1, 0.2));
+
+        NVector input = new NVector(-1, 2, 1);
+
+        NVector v = new NVector(layer.inducedLocalField(input));
+        assertThat(v.get(0), is(layer.getNeuron(0).rawoutput(input)));
+        assertThat(v.get(1), is(layer.getNeuron(1).rawoutput(input)));
+
+        NVector y = layer.output(input);
+        assertThat(y.get(0), is(phi.apply(v.get(0))));
+        assertThat(y.get(1), is(phi.apply(v.get(1))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRaggedNeurons()
+    {
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(phi, 1, 2, 3), new Neuron(phi, 1, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeuronInTwoLayers()
+    {
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Neuron neuron = new Neuron(phi, 1, 2, 3);
+        new SingleLayerNeuralNetwork().setNeurons(neuron);
+        new SingleLayerNeuralNetwork().setNeurons(neuron);
+    }
+
+    /**
+     * A layer can take its own neurons again, they move to the new matrix
+     */
+    @Test
+    public void testSetNeuronsAgain()
+    {
+        IActivationFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        Neuron n1 = new Neuron(phi, 1, 2, 3);
+        Neuron n2 = new Neuron(phi, 4, 5, 6);
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(n1, n2);
+        layer.setNeurons(n2, n1);
+
+        n1.setWeight(0, -1);
+        assertThat(layer.aWeights[3], is(-1.0));
+        assertThat(layer.aWeights[0], is(4.0));
+    }
+}
@@ -0,0 +1,127 @@
+package com.neuralnetwork.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TensorTest
+{
+    private static Tensor counting(int... aShape)
+    {
+        Tensor tensor = new Tensor(aShape);
+        for(int i=0; i<tensor.data().length; i++)
+            tensor.data()[i] = i;
+        return tensor;
+    }
+
+    @Test
+    public void testLayout()
+    {
+        Tensor tensor = counting(2, 3, 4);
+
+        assertThat(tensor.rank(), is(3));
+        assertThat(tensor.numberOfElements(), is(24));
+        assertThat(tensor.stride(0), is(12));
+        assertThat(tensor.stride(1), is(4));
+        assertThat(tensor.stride(2), is(1));
+        assertThat(tensor.isContiguous(), is(true));
+        assertThat(tensor.get(1, 2, 3), is(23.0));
+        assertThat(tensor.offset(1, 1, 0), is(16));
+
+        tensor.set(0, 1, 2, -1);
+        assertThat(tensor.data()[6], is(-1.0));
+    }
+
+    @Test
+    public void testViews()
+    {
+        Tensor tensor = counting(2, 3, 4);
+
+        //channel 1, rows 1..2, columns 1..2
+        Tensor window = tensor.slice(1).narrow(0, 1, 2).narrow(1, 1, 2);
+        assertThat(window.rank(), is(2));
+        assertThat(window.offset(), is(17));
+        assertThat(window.get(0, 0), is(17.0));
+        assertThat(window.get(1, 1), is(22.0));
+        assertThat(window.isContiguous(), is(false));
+        assertThat(tensor.slice(1).isContiguous(), is(true));
+
+        //no copy
+        window.set(1, 0, -1);
+        assertThat(tensor.get(1, 2, 1), is(-1.0));
+
+        assertThat(window.toVector().toString(), is(new NVector(17, 18, -1, 22).toString()));
+        assertThat(window.copy().isContiguous(), is(true));
+
+        window.fill(0);
+        assertThat(tensor.get(1, 1, 1), is(0.0));
+        assertThat(tensor.get(1, 1, 3), is(19.0));
+
+        Tensor other = counting(2, 2);
+        window.set(other);
+        assertThat(tensor.get(1, 2, 2), is(3.0));
+    }
+
+    @Test
+    public void testReshape()
+    {
+        Tensor tensor = counting(2, 3, 4);
+        Tensor matrix = tensor.reshape(6, 4);
+        assertThat(matrix.get(5, 3), is(23.0));
+
+        matrix.set(0, 0, -1);
+        assertThat(tensor.get(0, 0, 0), is(-1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReshapeView()
+    {
+        counting(4, 4).narrow(1, 0, 2).reshape(8);
+    }
+
+    @Test
+    public void testToVector()
+    {
+        Tensor tensor = counting(2, 3);
+
+        //the whole backing array is shared
+        NVector vector = tensor.toVector();
+        vector.set(4, -1);
+        assertThat(tensor.get(1, 1), is(-1.0));
+
+        //a view is copied
+        NVector row = tensor.slice(1).toVector();
+        row.set(0, -2);
+        assertThat(tensor.get(1, 0), is(3.0));
+        assertThat(row.size(), is(3));
+    }
+
+    @Test
+    public void testRows()
+    {
+        final double[][] aRows = {
+                new double[]{1, 2, 3}
+                ,new double[]{4, 5, 6}
+        };
+        Tensor tensor = Tensor.of(aRows);
+        assertThat(tensor.get(1, 2), is(6.0));
+        assertThat(tensor.toArray()[1][0], is(4.0));
+        assertThat(tensor.narrow(1, 1, 2).toArray()[0].length, is(2));
+
+        Tensor channels = Tensor.of(new double[][][]{aRows, aRows});
+        assertThat(channels.get(1, 0, 2), is(3.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNarrowOutside()
+    {
+        new Tensor(3, 3).narrow(0, 2, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapTooSmall()
+    {
+        Tensor.wrap(new double[5], 2, 3);
+    }
+}
@@ -0,0 +1,163 @@
+package com.neuralnetwork.core;
+
+import com.neuralnetwork.core.interfaces.IActivationFunction;
+import com.neuralnetwork.core.interfaces.ITrainingListener;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TrainingListenersTest
+{
+    /**
+     * Records the epochs it's told about
+     */
+    static class RecordingListener implements ITrainingListener
+    {
+        List<Integer> epochs = new ArrayList<Integer>();
+        int finishedEpoch;
+        double finishedError;
+
+        @Override
+        public void epochFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            epochs.add(epoch);
+        }
+
+        @Override
+        public void trainingFinished(int epoch, double error, long elapsedNanos, double examplesPerSecond)
+        {
+            finishedEpoch = epoch;
+            finishedError = error;
+        }
+    }
+
+    @Test
+    public void testEveryNEpochs()
+    {
+        RecordingListener recorder = new RecordingListener();
+        ITrainingListener listener = new TrainingListeners.EveryNEpochs(3, recorder);
+
+        for(int epoch=1; epoch<=10; epoch++)
+            listener.epochFinished(epoch, 0, 0, 0);
+        listener.trainingFinished(11, 0.5, 0, 0);
+
+        assertThat(recorder.epochs.toString(), is("[3, 6, 9]"));
+        assertThat(recorder.finishedEpoch, is(11));
+    }
+
+    @Test
+    public void testEveryTSeconds()
+    {
+        RecordingListener recorder = new RecordingListener();
+        ITrainingListener listener = new TrainingListeners.EveryTSeconds(1.0, recorder);
+
+        final long second = 1000000000L;
+        listener.epochFinished(1, 0, second / 10, 0);
+        listener.epochFinished(2, 0, second / 2, 0);
+        listener.epochFinished(3, 0, second + second / 10, 0);
+        listener.epochFinished(4, 0, 2 * second, 0);
+        listener.epochFinished(5, 0, 2 * second + second / 5, 0);
+
+        assertThat(recorder.epochs.toString(), is("[1, 3, 5]"));
+    }
+
+    @Test
+    public void testAllOf()
+    {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        ITrainingListener listener = new TrainingListeners.AllOf(first, second);
+
+        listener.epochFinished(1, 0, 0, 0);
+        listener.epochFinished(2, 0, 0, 0);
+        listener.trainingFinished(3, 0.5, 0, 0);
+
+        assertThat(first.epochs.toString(), is("[1, 2]"));
+        assertThat(second.epochs.toString(), is("[1, 2]"));
+        assertThat(first.finishedEpoch, is(3));
+        assertThat(second.finishedEpoch, is(3));
+    }
+
+    @Test
+    public void testAsyncLogger()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrainingListeners.AsyncLogger logger = new TrainingListeners.AsyncLogger(new PrintStream(bytes), 4))
+        {
+            for(int epoch=1; epoch<=3; epoch++)
+                logger.epochFinished(epoch, 0.25, 1000, 10);
+            logger.trainingFinished(3, 0.125, 2000, 20);
+
+            //the buffer holds all 4 events so nothing is dropped
+            assertThat(logger.getDropped(), is(0L));
+        }
+
+        //closing logged the remaining events
+        String[] aLines = bytes.toString().split("\\r?\\n");
+        assertThat(aLines.length, is(4));
+        assertThat(aLines[0].startsWith("Epoch 1:"), is(true));
+        assertThat(aLines[3].startsWith("Finished at epoch 3:"), is(true));
+    }
+
+    @Test
+    public void testNetworkCallsListener()
+    {
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(phi, 0.25, 0.75, 0.5));
+
+        RecordingListener recorder = new RecordingListener();
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder()
+                .setLearningParam(0.9)
+                .setMomentumParam(0.04)
+                .setGlobalActivationFunction(phi)
+                .setLayers(layer)
+                .setIterations(5)
+                .setTrainingListener(recorder);
+
+        MultiLayerNetwork network = new MultiLayerNetwork(builder);
+        network.backpropagation(0, new NVector(-1, 2), new NVector(0.25));
+
+        assertThat(recorder.epochs.toString(), is("[1, 2, 3, 4, 5]"));
+        assertThat(recorder.finishedEpoch, is(6));
+        assertThat(recorder.finishedError, is(network.vTotalDifferenceSquared.sumOfCoords()));
+    }
+
+    @Test
+    public void testDebugOutputKeepsListener()
+    {
+        IActivationFunction.IDifferentiableFunction phi = new ActivationFunctions.SigmoidUnityFunction();
+        SingleLayerNeuralNetwork layer = new SingleLayerNeuralNetwork();
+        layer.setNeurons(new Neuron(phi, 0.25, 0.75, 0.5));
+
+        RecordingListener recorder = new RecordingListener();
+        MultiLayerNetwork.Builder builder = new MultiLayerNetwork.Builder()
+                .setLearningParam(0.9)
+                .setMomentumParam(0.04)
+                .setGlobalActivationFunction(phi)
+                .setLayers(layer)
+                .setIterations(2)
+                .setTrainingListener(recorder)
+                .setDebugOutput(true);
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try
+        {
+            new MultiLayerNetwork(builder).backpropagation(0, new NVector(-1, 2), new NVector(0.25));
+        }
+        finally
+        {
+            System.setOut(stdout);
+        }
+
+        assertThat(recorder.epochs.toString(), is("[1, 2]"));
+        assertThat(recorder.finishedEpoch, is(3));
+    }
+}
@@ -0,0 +1,86 @@
+package com.neuralnetwork.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class VectorsTest
+{
+    /**
+     * Sizes around the unrolling factor, to check the tail
+     */
+    private static final int[] aSizes = {0, 1, 3, 4, 5, 7, 8, 9, 17};
+
+    @Test
+    public void testDotAndSum()
+    {
+        for(int n:aSizes)
+        {
+            double[] a = new double[n + 2];
+            double[] b = new double[n + 1];
+            double dot = 0, sum = 0;
+            for(int i=0; i<n; i++)
+            {
+                a[i + 2] = i + 1;
+                b[i + 1] = 2 * i - 3;
+                dot += (i + 1) * (2 * i - 3);
+                sum += i + 1;
+            }
+
+            assertThat(Vectors.dot(a, 2, b, 1, n), is(dot));
+            assertThat(Vectors.sum(a, 2, n), is(sum));
+        }
+    }
+
+    @Test
+    public void testFloatDotAndSum()
+    {
+        for(int n:aSizes)
+        {
+            float[] a = new float[n + 2];
+            float[] b = new float[n + 1];
+            double dot = 0, sum = 0;
+            for(int i=0; i<n; i++)
+            {
+                a[i + 2] = i + 1;
+                b[i + 1] = 2 * i - 3;
+                dot += (i + 1) * (2 * i - 3);
+                sum += i + 1;
+            }
+
+            assertThat(Vectors.dot(a, 2, b, 1, n), is(dot));
+            assertThat(Vectors.dotProduct(a, 2, n), is(Vectors.dot(a, 2, a, 2, n)));
+            assertThat(Vectors.sum(a, 2, n), is(sum));
+        }
+    }
+
+    @Test
+    public void testAxpyAndScaleAdd()
+    {
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = {10, 20, 30, 40, 50};
+
+        Vectors.axpy(2, x, 1, y, 0, 3);
+        assertThat(new NVector(y).toString(), is("[14.0000  26.0000  38.0000  40.0000  50.0000]"));
+
+        double[] z = new double[5];
+        Vectors.scaleAdd(y, 0, -1, x, 0, z, 0, 5);
+        assertThat(new NVector(z).toString(), is("[13.0000  24.0000  35.0000  36.0000  45.0000]"));
+    }
+
+    @Test
+    public void testMomentumStep()
+    {
+        double[] w = {1, 2};
+        double[] prev = {0.5, -1};
+        double[] delta = {0.25, 0.125};
+
+        Vectors.momentumStep(w, 0, 0.1, prev, 0, delta, 0, 2);
+
+        assertThat(w[0], is(1 + 0.1 * 0.5 + 0.25));
+        assertThat(w[1], is(2 + 0.1 * -1 + 0.125));
+        assertThat(prev[0], is(1.0));
+        assertThat(prev[1], is(2.0));
+    }
+}